@@ -210,4 +210,15 @@ public @interface BugPattern {
    */
   public boolean generateExamplesFromTestCases() default true;
 
+  /**
+   * Whether the check needs attributed trees, i.e. symbols and types.
+   *
+   * <p>Checks that only look at the syntax of the source should set this to false.  They are then
+   * run on each file as soon as it has been parsed, rather than after it has been attributed,
+   * giving faster feedback, and are run even if the compilation has errors.  Before attribution,
+   * {@code @SuppressWarnings} annotations on declarations are recognized by name, and custom
+   * suppression annotations aren't recognized.
+   */
+  public boolean requiresAttribution() default true;
+
 }
@@ -19,26 +19,83 @@ package com.google.errorprone;
 import com.google.common.base.Function;
 import com.google.common.collect.ImmutableSet;
 import com.google.errorprone.internal.NonDelegatingClassLoader;
+import com.google.errorprone.scanner.BuiltInCheckerSuppliers;
+import com.google.errorprone.scanner.ScannerSupplier;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import org.apache.tools.ant.AntClassLoader;
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.taskdefs.compilers.DefaultCompilerAdapter;
 
 /**
  * Adapts the error-prone compiler to be used in an Ant build.
+ *
+ * <p>Error Prone and javac are loaded in an isolated classloader.  Since loading them and warming
+ * them up is expensive, the loader is reused by all the {@code <javac>} tasks in the build that
+ * load Error Prone from the same classpath; up to {@link #MAX_CACHED_LOADERS} loaders are kept.
+ * Setting the property {@code errorprone.cacheClassLoader} to {@code false} loads Error Prone
+ * afresh for every task.
+ *
  * @author alexeagle@google.com (Alex Eagle)
  */
 public class ErrorProneAntCompilerAdapter extends DefaultCompilerAdapter {
   public static class AntRunner implements Function<String[], Boolean> {
+    // Shared by all the compilations run in this runner's classloader.
+    private final ScannerSupplier checks = BuiltInCheckerSuppliers.defaultChecks();
+
     @Override
     public Boolean apply(String[] args) {
-      return ErrorProneCompiler.compile(args).isOK();
+      return ErrorProneCompiler.builder().report(checks).build().run(args).isOK();
     }
   }
 
+  /** The property that disables reuse of Error Prone's classloader when set to false. */
+  static final String CACHE_CLASSLOADER_PROPERTY = "errorprone.cacheClassLoader";
+
+  /** The maximum number of classloaders kept for reuse, evicting the least recently used. */
+  static final int MAX_CACHED_LOADERS = 4;
+
+  /**
+   * A runner loaded in an isolated classloader, and the number of compilations using it.  Guarded
+   * by {@link #runners}.
+   */
+  private static final class CachedRunner {
+    final Function<String[], Boolean> runner;
+    int users = 0;
+    boolean evicted = false;
+
+    CachedRunner(Function<String[], Boolean> runner) {
+      this.runner = runner;
+    }
+  }
+
+  // Runners loaded in isolated classloaders, keyed by the classpath of the loader.  (Keyed by
+  // strings rather than URLs, since URL#equals may resolve host names.)  An evicted runner's
+  // classloader is closed once no compilation is using it, to release its open jar files.
+  private static final Map<List<String>, CachedRunner> runners =
+      new LinkedHashMap<List<String>, CachedRunner>(
+          MAX_CACHED_LOADERS, 0.75f, /* accessOrder= */ true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<String>, CachedRunner> eldest) {
+          if (size() <= MAX_CACHED_LOADERS) {
+            return false;
+          }
+          CachedRunner evicted = eldest.getValue();
+          evicted.evicted = true;
+          if (evicted.users == 0) {
+            closeLoader(evicted.runner);
+          }
+          return true;
+        }
+      };
+
   @Override
   public boolean execute() throws BuildException {
     ClassLoader originalLoader = ErrorProneCompiler.class.getClassLoader();
@@ -59,16 +116,61 @@ public class ErrorProneAntCompilerAdapter extends DefaultCompilerAdapter {
       throw new BuildException("Unexpected ClassLoader: " + originalLoader.getClass());
     }
 
-    ClassLoader loader = NonDelegatingClassLoader.create(
-        ImmutableSet.<String>of(Function.class.getName()), urls, originalLoader);
-
     String[] args = setupModernJavacCommand().getArguments();
 
+    if ("false".equals(getProject().getProperty(CACHE_CLASSLOADER_PROPERTY))) {
+      Function<String[], Boolean> runner = createRunner(urls, originalLoader);
+      try {
+        return runner.apply(args);
+      } finally {
+        closeLoader(runner);
+      }
+    }
+    List<String> key = new ArrayList<>();
+    for (URL url : urls) {
+      key.add(url.toString());
+    }
+    CachedRunner cached;
+    synchronized (runners) {
+      cached = runners.get(key);
+      if (cached == null) {
+        cached = new CachedRunner(createRunner(urls, originalLoader));
+        runners.put(key, cached);
+      }
+      cached.users++;
+    }
+    try {
+      return cached.runner.apply(args);
+    } finally {
+      synchronized (runners) {
+        if (--cached.users == 0 && cached.evicted) {
+          closeLoader(cached.runner);
+        }
+      }
+    }
+  }
+
+  /** Closes the isolated classloader that {@code runner} was loaded in. */
+  private static void closeLoader(Function<String[], Boolean> runner) {
+    ClassLoader loader = runner.getClass().getClassLoader();
+    if (loader instanceof URLClassLoader) {
+      try {
+        ((URLClassLoader) loader).close();
+      } catch (IOException e) {
+        // Closing only releases the loader's jar files early; they are released on finalization
+        // anyway.
+      }
+    }
+  }
+
+  private static Function<String[], Boolean> createRunner(URL[] urls, ClassLoader parent) {
+    ClassLoader loader = NonDelegatingClassLoader.create(
+        ImmutableSet.<String>of(Function.class.getName()), urls, parent);
     try {
       Class<?> runnerClass = Class.forName(AntRunner.class.getName(), true, loader);
       @SuppressWarnings("unchecked")
       Function<String[], Boolean> runner = (Function<String[], Boolean>) runnerClass.newInstance();
-      return runner.apply(args);
+      return runner;
     } catch (ReflectiveOperationException e) {
       throw new LinkageError("Unable to create runner.", e);
     }
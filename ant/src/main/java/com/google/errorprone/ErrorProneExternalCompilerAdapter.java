@@ -17,8 +17,13 @@
 package com.google.errorprone;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.tools.Diagnostic;
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.Project;
 import org.apache.tools.ant.taskdefs.compilers.DefaultCompilerAdapter;
@@ -31,11 +36,28 @@ import org.apache.tools.ant.util.LoaderUtils;
 
 /**
  * Ant component to launch an external javac with error-prone enabled.
+ *
+ * <p>By default a new JVM is forked for each task.  Setting {@code workers} to a positive number
+ * instead runs compilations in long-lived {@link ErrorProneWorker} JVMs, keeping up to that many
+ * idle workers for each distinct JVM configuration for reuse by later tasks in the build.
+ *
+ * <p>Setting {@code classDataSharingArchive} to an archive built by {@link
+ * ClassDataSharingArchive} starts the forked JVMs with it, which shortens their startup.  The
+ * archive is first checked against the forked JVMs' command line, and a warning logged if they
+ * can't use it, e.g. because it was built with the jars at other paths.
  */
 public class ErrorProneExternalCompilerAdapter extends DefaultCompilerAdapter {
+  // Whether JVMs started with a command line can use an archive, keyed by the command line and
+  // the archive's path and modification time, so the archive is only checked once per build.
+  private static final Map<List<Object>, Boolean> usableArchives =
+      new ConcurrentHashMap<List<Object>, Boolean>();
+
   private Path classpath;
   private String memoryStackSize;
   private List<Argument> jvmArgs = new ArrayList<Argument>();
+  private int workers = 0;
+  private int workerMaxRequests = 0;
+  private File classDataSharingArchive;
 
   public void setClasspath(Path classpath) {
     this.classpath = classpath;
@@ -57,6 +79,27 @@ public class ErrorProneExternalCompilerAdapter extends DefaultCompilerAdapter {
     this.memoryStackSize = memoryStackSize;
   }
 
+  /** Sets the number of idle forked compiler JVMs to keep for reuse; 0 forks one per task. */
+  public void setWorkers(int workers) {
+    this.workers = workers;
+  }
+
+  /**
+   * Sets the number of compilations after which a worker JVM is replaced by a fresh one; 0 (the
+   * default) reuses workers indefinitely.
+   */
+  public void setWorkerMaxRequests(int workerMaxRequests) {
+    this.workerMaxRequests = workerMaxRequests;
+  }
+
+  /**
+   * Sets the class-data-sharing archive to start forked JVMs with.  JVMs run without it, with a
+   * warning, if it is missing or was built for a different JVM or classpath.
+   */
+  public void setClassDataSharingArchive(File classDataSharingArchive) {
+    this.classDataSharingArchive = classDataSharingArchive;
+  }
+
   public Argument createJvmArg() {
     Argument arg = new Argument();
     jvmArgs.add(arg);
@@ -98,6 +141,23 @@ public class ErrorProneExternalCompilerAdapter extends DefaultCompilerAdapter {
         cmd.createArgument().setPath(classpath);
       }
 
+      if (classDataSharingArchive != null && isUsable(cmd.getCommandline())) {
+        for (String arg : ClassDataSharingArchive.jvmArgs(classDataSharingArchive)) {
+          cmd.createArgument().setValue(arg);
+        }
+      }
+
+      if (workers > 0) {
+        Commandline javacCmd = new Commandline();
+        setupModernJavacCommandlineSwitches(javacCmd);
+        logAndAddFilesToCompile(javacCmd);
+        cmd.createArgument().setValue(ErrorProneWorker.class.getName());
+        if (workerMaxRequests > 0) {
+          cmd.createArgument().setValue(ErrorProneWorker.MAX_REQUESTS_FLAG + workerMaxRequests);
+        }
+        return compileInWorker(cmd.getCommandline(), javacCmd.getArguments());
+      }
+
       cmd.createArgument().setValue(ErrorProneCompiler.class.getName());
       setupModernJavacCommandlineSwitches(cmd);
       int firstFile = cmd.size();
@@ -110,6 +170,76 @@ public class ErrorProneExternalCompilerAdapter extends DefaultCompilerAdapter {
     }
   }
 
+  /**
+   * Returns whether JVMs started with {@code javaCommand} can use the class-data-sharing archive,
+   * warning if they can't, since they would otherwise silently run without it.
+   */
+  private boolean isUsable(String[] javaCommand) {
+    List<Object> key = new ArrayList<Object>(Arrays.asList(javaCommand));
+    key.add(classDataSharingArchive.getAbsolutePath());
+    key.add(classDataSharingArchive.lastModified());
+    Boolean usable = usableArchives.get(key);
+    if (usable == null) {
+      try {
+        usable = ClassDataSharingArchive.isUsable(
+            classDataSharingArchive, Arrays.asList(javaCommand));
+      } catch (IOException e) {
+        usable = false;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new BuildException("Interrupted checking " + classDataSharingArchive, e, location);
+      }
+      usableArchives.put(key, usable);
+      if (!usable) {
+        attributes.log(
+            "Class-data-sharing archive " + classDataSharingArchive + " can't be used by the"
+                + " forked compilers' JVM and classpath, so they will start without it; rebuild it"
+                + " where the compiler is installed, with ClassDataSharingArchive",
+            Project.MSG_WARN);
+      }
+    }
+    return usable;
+  }
+
+  private boolean compileInWorker(String[] workerCommand, String[] args) {
+    ErrorProneWorkerPool pool = ErrorProneWorkerPool.instance();
+    ErrorProneWorkerPool.Worker worker;
+    try {
+      worker = pool.acquire(Arrays.asList(workerCommand), getProject().getBaseDir());
+    } catch (IOException e) {
+      throw new BuildException("Unable to start Error Prone worker", e, location);
+    }
+    // A worker that fails mid-request is in an unknown state, so isn't reused.
+    boolean reusable = false;
+    try {
+      ErrorProneWorker.Response response = worker.compile(Arrays.asList(args));
+      reusable = !response.willExit();
+      for (ErrorProneWorker.WorkerDiagnostic diagnostic : response.diagnostics()) {
+        attributes.log(diagnostic.format(), logLevel(diagnostic.kind()));
+      }
+      if (!response.output().isEmpty()) {
+        attributes.log(response.output(), Project.MSG_WARN);
+      }
+      return response.exitCode() == 0;
+    } catch (IOException e) {
+      throw new BuildException("Error Prone worker failed", e, location);
+    } finally {
+      pool.release(worker, reusable ? workers : 0);
+    }
+  }
+
+  private static int logLevel(Diagnostic.Kind kind) {
+    switch (kind) {
+      case ERROR:
+        return Project.MSG_ERR;
+      case WARNING:
+      case MANDATORY_WARNING:
+        return Project.MSG_WARN;
+      default:
+        return Project.MSG_INFO;
+    }
+  }
+
   private void addResourceSource(Path classpath, String resource) {
     final File f = LoaderUtils.getResourceSource(
         ErrorProneExternalCompilerAdapter.class.getClassLoader(),
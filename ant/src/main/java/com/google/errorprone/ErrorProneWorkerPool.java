@@ -0,0 +1,156 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone;
+
+import com.google.common.collect.ImmutableList;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A pool of forked {@link ErrorProneWorker} processes, shared by all the tasks in an Ant build.
+ *
+ * <p>Workers are keyed by the command line that starts them and their working directory, so a
+ * task only reuses a worker started with the same JVM options and classpath.  Idle workers are
+ * stopped when the Ant JVM exits.
+ */
+final class ErrorProneWorkerPool {
+
+  /** A forked worker process. */
+  static final class Worker {
+    private final List<String> key;
+    private final Process process;
+    private final DataOutputStream requests;
+    private final DataInputStream responses;
+
+    private Worker(List<String> key, Process process) {
+      this.key = key;
+      this.process = process;
+      this.requests = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+      this.responses = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+    }
+
+    /** Runs a compilation in the worker. */
+    ErrorProneWorker.Response compile(List<String> args) throws IOException {
+      ErrorProneWorker.writeRequest(requests, args);
+      requests.flush();
+      return ErrorProneWorker.readResponse(responses);
+    }
+
+    boolean isAlive() {
+      try {
+        process.exitValue();
+        return false;
+      } catch (IllegalThreadStateException e) {
+        return true;
+      }
+    }
+
+    void stop() {
+      try {
+        // the worker exits once its input is closed
+        requests.close();
+      } catch (IOException e) {
+        // the worker has already exited
+      }
+      process.destroy();
+    }
+  }
+
+  private static final ErrorProneWorkerPool INSTANCE = new ErrorProneWorkerPool();
+
+  static ErrorProneWorkerPool instance() {
+    return INSTANCE;
+  }
+
+  private final Map<List<String>, Deque<Worker>> idle = new HashMap<>();
+
+  private ErrorProneWorkerPool() {
+    Runtime.getRuntime().addShutdownHook(new Thread("error-prone-worker-pool-shutdown") {
+      @Override
+      public void run() {
+        stopAll();
+      }
+    });
+  }
+
+  /**
+   * Returns an idle worker started by {@code command} in {@code directory}, starting a new one if
+   * there is none.
+   */
+  Worker acquire(List<String> command, File directory) throws IOException {
+    List<String> key = ImmutableList.<String>builder()
+        .add(directory.getAbsolutePath())
+        .addAll(command)
+        .build();
+    synchronized (idle) {
+      Deque<Worker> workers = idle.get(key);
+      while (workers != null && !workers.isEmpty()) {
+        Worker worker = workers.pop();
+        if (worker.isAlive()) {
+          return worker;
+        }
+      }
+    }
+    Process process = new ProcessBuilder(command)
+        .directory(directory)
+        .redirectError(ProcessBuilder.Redirect.INHERIT)
+        .start();
+    return new Worker(key, process);
+  }
+
+  /**
+   * Returns {@code worker} to the pool, or stops it if {@code maxIdle} workers started by the same
+   * command are already idle.
+   */
+  void release(Worker worker, int maxIdle) {
+    synchronized (idle) {
+      Deque<Worker> workers = idle.get(worker.key);
+      if (workers == null) {
+        workers = new ArrayDeque<>();
+        idle.put(worker.key, workers);
+      }
+      if (workers.size() < maxIdle) {
+        workers.push(worker);
+        return;
+      }
+    }
+    worker.stop();
+  }
+
+  private void stopAll() {
+    List<Worker> toStop = new ArrayList<>();
+    synchronized (idle) {
+      for (Deque<Worker> workers : idle.values()) {
+        toStop.addAll(workers);
+      }
+      idle.clear();
+    }
+    for (Worker worker : toStop) {
+      worker.stop();
+    }
+  }
+}
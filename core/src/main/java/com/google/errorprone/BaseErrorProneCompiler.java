@@ -44,16 +44,19 @@ public class BaseErrorProneCompiler {
   private final PrintWriter errOutput;
   private final String compilerName;
   private final ScannerSupplier scannerSupplier;
+  private final FindingListener findingListener;
 
   private BaseErrorProneCompiler(
       String compilerName,
       PrintWriter errOutput,
       DiagnosticListener<? super JavaFileObject> diagnosticListener,
-      ScannerSupplier scannerSupplier) {
+      ScannerSupplier scannerSupplier,
+      FindingListener findingListener) {
     this.errOutput = errOutput;
     this.compilerName = compilerName;
     this.diagnosticListener = diagnosticListener;
     this.scannerSupplier = checkNotNull(scannerSupplier, "scannerSupplier must not be null");
+    this.findingListener = findingListener;
   }
 
   /** Returns a {@link BaseErrorProneCompiler} builder. */
@@ -67,10 +70,11 @@ public class BaseErrorProneCompiler {
     private PrintWriter errOutput = new PrintWriter(System.err, true);
     private String compilerName = "javac (with error-prone)";
     private ScannerSupplier scannerSupplier;
+    private FindingListener findingListener = null;
 
     public BaseErrorProneCompiler build() {
       return new BaseErrorProneCompiler(
-          compilerName, errOutput, diagnosticListener, scannerSupplier);
+          compilerName, errOutput, diagnosticListener, scannerSupplier, findingListener);
     }
 
     public Builder named(String compilerName) {
@@ -92,6 +96,15 @@ public class BaseErrorProneCompiler {
       this.scannerSupplier = scannerSupplier;
       return this;
     }
+
+    /**
+     * Reports each finding to {@code listener} as it is found, in addition to reporting it as a
+     * diagnostic.  Findings are not reported in patch mode.
+     */
+    public Builder listenToFindings(FindingListener listener) {
+      this.findingListener = listener;
+      return this;
+    }
   }
 
   public Result run(String[] args) {
@@ -161,15 +174,23 @@ public class BaseErrorProneCompiler {
     ErrorProneOptions epOptions = ErrorProneOptions.processArgs(newArgs);
 
     argv = epOptions.getRemainingArgs();
+    if (epOptions.sharedClasspathCache()) {
+      argv = Arrays.copyOf(argv, argv.length + 1);
+      argv[argv.length - 1] = ClasspathIndexCache.JAVAC_FLAG;
+      ClasspathIndexCache.instance().beforeCompilation(context);
+    }
 
     if (diagnosticListener != null) {
       context.put(DiagnosticListener.class, diagnosticListener);
     }
+    if (findingListener != null) {
+      context.put(FindingListener.class, findingListener);
+    }
     MaskedClassLoader.preRegisterFileManager(context);
 
     setupMessageBundle(context);
     MultiTaskListener.instance(context)
-        .add(new ErrorProneAnalyzer(scannerSupplier, epOptions, context));
+        .add(ErrorProneAnalyzer.createForCompilation(scannerSupplier, epOptions, context));
 
     return argv;
   }
@@ -189,6 +210,10 @@ public class BaseErrorProneCompiler {
       errOutput.println(e.getMessage());
       errOutput.flush();
       return Result.CMDERR;
+    } finally {
+      ErrorProneAnalyzer.afterCompilation(context);
+      ErrorPronePlugins.afterCompilation(context);
+      ClasspathIndexCache.afterCompilation(context);
     }
   }
 
@@ -212,20 +237,25 @@ public class BaseErrorProneCompiler {
       return Result.CMDERR;
     }
 
-    JavacTool tool = JavacTool.create();
-    JavacTaskImpl task =
-        (JavacTaskImpl)
-            tool.getTask(
-                errOutput, fileManager, null, Arrays.asList(argv), null, javaFileObjects, context);
-    if (processors != null) {
-      task.setProcessors(processors);
-    }
     try {
+      JavacTool tool = JavacTool.create();
+      JavacTaskImpl task =
+          (JavacTaskImpl)
+              tool.getTask(
+                  errOutput, fileManager, null, Arrays.asList(argv), null, javaFileObjects,
+                  context);
+      if (processors != null) {
+        task.setProcessors(processors);
+      }
       return task.doCall();
     } catch (InvalidCommandLineOptionException e) {
       errOutput.println(e.getMessage());
       errOutput.flush();
       return Result.CMDERR;
+    } finally {
+      ErrorProneAnalyzer.afterCompilation(context);
+      ErrorPronePlugins.afterCompilation(context);
+      ClasspathIndexCache.afterCompilation(context);
     }
   }
 
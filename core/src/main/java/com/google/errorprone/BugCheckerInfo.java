@@ -26,6 +26,7 @@ import com.google.errorprone.BugPattern.Suppressibility;
 import com.google.errorprone.BugPatternValidator;
 import com.google.errorprone.ValidationException;
 import com.google.errorprone.bugpatterns.BugChecker;
+import com.google.errorprone.bugpatterns.threadsafety.StatelessCheckerVerifier;
 import com.google.errorprone.matchers.Description;
 import com.sun.source.tree.Tree;
 import java.io.Serializable;
@@ -98,6 +99,18 @@ public class BugCheckerInfo implements Serializable {
    */
   private final Set<Class<? extends Annotation>> customSuppressionAnnotations;
 
+  /**
+   * Whether the check needs symbols and types. Corresponds to the {@code requiresAttribution}
+   * attribute from its {@code BugPattern}.
+   */
+  private final boolean requiresAttribution;
+
+  /**
+   * Whether instances of the checker hold no mutable state, so that one instance may be shared.
+   * Computed by {@link StatelessCheckerVerifier}.
+   */
+  private final boolean stateless;
+
   public static BugCheckerInfo create(Class<? extends BugChecker> checker) {
     BugPattern pattern = checkNotNull(checker.getAnnotation(BugPattern.class));
     try {
@@ -123,6 +136,8 @@ public class BugCheckerInfo implements Serializable {
     } else {
       customSuppressionAnnotations = Collections.<Class<? extends Annotation>>emptySet();
     }
+    requiresAttribution = pattern.requiresAttribution();
+    stateless = StatelessCheckerVerifier.isStateless(checker);
   }
 
   private static final String URL_FORMAT = "http://errorprone.info/bugpattern/%s";
@@ -199,6 +214,22 @@ public class BugCheckerInfo implements Serializable {
     return customSuppressionAnnotations;
   }
 
+  /**
+   * Returns whether the check needs attributed trees, or may instead be run as soon as a file has
+   * been parsed.
+   */
+  public boolean requiresAttribution() {
+    return requiresAttribution;
+  }
+
+  /**
+   * Returns whether instances of the checker hold no mutable state, so that a single instance may
+   * be shared by concurrent and successive compilations.
+   */
+  public boolean isStateless() {
+    return stateless;
+  }
+
   public Class<? extends BugChecker> checkerClass() {
     return checker;
   }
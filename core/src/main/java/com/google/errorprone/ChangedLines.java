@@ -0,0 +1,268 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableRangeSet;
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeSet;
+import com.google.common.collect.TreeRangeSet;
+import com.google.common.io.CharStreams;
+import com.google.errorprone.matchers.Description;
+import com.sun.source.tree.Tree;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import com.sun.tools.javac.util.JCDiagnostic.DiagnosticPosition;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+import javax.tools.JavaFileObject;
+
+/**
+ * The lines changed in each source file, for analyses that only report findings on changed code.
+ *
+ * <p>Changes are read either from a unified diff, such as the output of {@code git diff -U0}, or
+ * from lines of the form {@code <path>:<ranges>}, where the ranges are a comma-separated list of
+ * line numbers and inclusive line ranges, e.g. {@code src/Foo.java:3,10-12}.  Paths may be
+ * relative to any enclosing directory of the source files; the {@code b/} prefix of paths in
+ * diffs produced by git is dropped.
+ *
+ * <p>Source files that aren't mentioned have no changed lines.
+ */
+public final class ChangedLines {
+
+  private static final Pattern HUNK =
+      Pattern.compile("^@@ -\\d+(?:,\\d+)? \\+(\\d+)(?:,(\\d+))? @@");
+  private static final Pattern ENTRY =
+      Pattern.compile("^(.+):(\\d+(?:-\\d+)?(?:,\\d+(?:-\\d+)?)*)$");
+
+  private final ImmutableMap<Path, ImmutableRangeSet<Integer>> changes;
+
+  private ChangedLines(ImmutableMap<Path, ImmutableRangeSet<Integer>> changes) {
+    this.changes = changes;
+  }
+
+  /** Reads the changed lines from {@code file}. */
+  public static ChangedLines load(Path file) throws IOException {
+    return parse(Files.readAllLines(file, UTF_8));
+  }
+
+  /**
+   * Returns the lines changed since {@code HEAD} in the git repository containing {@code dir}.
+   * Untracked files that aren't ignored are entirely changed.
+   */
+  public static ChangedLines fromGit(File dir) throws IOException {
+    Map<Path, RangeSet<Integer>> changes = new LinkedHashMap<>();
+    // Set the prefixes explicitly, since diff.noprefix or diff.mnemonicPrefix would change them.
+    parseInto(
+        git(dir, "diff", "--no-color", "--no-ext-diff", "--src-prefix=a/", "--dst-prefix=b/",
+            "-U0", "HEAD"),
+        changes);
+    // Like the diff, list the untracked files of the whole repository relative to its root.
+    for (String name :
+        git(dir, "ls-files", "--others", "--exclude-standard", "--full-name", ":/")) {
+      if (!name.isEmpty()) {
+        changesTo(changes, name).add(Range.<Integer>atLeast(1));
+      }
+    }
+    return build(changes);
+  }
+
+  private static List<String> git(File dir, String... args) throws IOException {
+    List<String> command = new ArrayList<>();
+    command.add("git");
+    command.addAll(Arrays.asList(args));
+    Process process =
+        new ProcessBuilder(command).directory(dir).redirectErrorStream(true).start();
+    List<String> output =
+        CharStreams.readLines(new InputStreamReader(process.getInputStream(), UTF_8));
+    try {
+      if (process.waitFor() != 0) {
+        throw new IOException("git " + args[0] + " failed: " + output);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    }
+    return output;
+  }
+
+  /** Parses changed lines from a unified diff, or from {@code <path>:<ranges>} entries. */
+  public static ChangedLines parse(List<String> lines) {
+    Map<Path, RangeSet<Integer>> changes = new LinkedHashMap<>();
+    parseInto(lines, changes);
+    return build(changes);
+  }
+
+  private static void parseInto(List<String> lines, Map<Path, RangeSet<Integer>> changes) {
+    boolean diff = false;
+    // The changes to the file of the current section of a diff, or null if it was deleted.
+    RangeSet<Integer> current = null;
+    String previous = "";
+    for (String line : lines) {
+      String header = previous;
+      previous = line;
+      if (line.startsWith("diff ") || line.startsWith("--- ")) {
+        diff = true;
+      } else if (line.startsWith("+++ ") && header.startsWith("--- ")) {
+        diff = true;
+        String name = line.substring("+++ ".length());
+        int tab = name.indexOf('\t');
+        if (tab != -1) {
+          // Drop the timestamp.
+          name = name.substring(0, tab);
+        }
+        if (name.equals("/dev/null")) {
+          current = null;
+          continue;
+        }
+        if (name.startsWith("b/")) {
+          name = name.substring("b/".length());
+        }
+        current = changesTo(changes, name);
+      } else if (line.startsWith("@@ ")) {
+        Matcher hunk = HUNK.matcher(line);
+        if (current == null || !hunk.find()) {
+          continue;
+        }
+        int start = Integer.parseInt(hunk.group(1));
+        int count = hunk.group(2) != null ? Integer.parseInt(hunk.group(2)) : 1;
+        if (count > 0) {
+          current.add(Range.closed(start, start + count - 1));
+        } else {
+          // Lines were only removed, after line start; the lines on either side changed.
+          current.add(Range.closed(Math.max(start, 1), start + 1));
+        }
+      } else if (!diff) {
+        Matcher entry = ENTRY.matcher(line.trim());
+        if (!entry.matches()) {
+          continue;
+        }
+        RangeSet<Integer> ranges = changesTo(changes, entry.group(1));
+        for (String range : Splitter.on(',').split(entry.group(2))) {
+          int dash = range.indexOf('-');
+          ranges.add(
+              dash == -1
+                  ? Range.singleton(Integer.parseInt(range))
+                  : Range.closed(
+                      Integer.parseInt(range.substring(0, dash)),
+                      Integer.parseInt(range.substring(dash + 1))));
+        }
+      }
+    }
+  }
+
+  private static ChangedLines build(Map<Path, RangeSet<Integer>> changes) {
+    ImmutableMap.Builder<Path, ImmutableRangeSet<Integer>> result = ImmutableMap.builder();
+    for (Map.Entry<Path, RangeSet<Integer>> entry : changes.entrySet()) {
+      result.put(entry.getKey(), ImmutableRangeSet.copyOf(entry.getValue()));
+    }
+    return new ChangedLines(result.build());
+  }
+
+  private static RangeSet<Integer> changesTo(Map<Path, RangeSet<Integer>> changes, String name) {
+    Path path = Paths.get(name).normalize();
+    RangeSet<Integer> ranges = changes.get(path);
+    if (ranges == null) {
+      ranges = TreeRangeSet.create();
+      changes.put(path, ranges);
+    }
+    return ranges;
+  }
+
+  /** Returns the lines changed in {@code file}, or null if it wasn't changed. */
+  @Nullable
+  public ImmutableRangeSet<Integer> forFile(JavaFileObject file) {
+    String name = file.toUri().getPath();
+    if (name == null) {
+      name = file.getName();
+    }
+    Path path = Paths.get(name).normalize();
+    for (Map.Entry<Path, ImmutableRangeSet<Integer>> entry : changes.entrySet()) {
+      if (path.endsWith(entry.getKey())) {
+        return entry.getValue();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * The changed lines of a single compilation unit.  While one is in the analysis context, the
+   * {@link com.google.errorprone.scanner.Scanner} skips the methods and classes that contain no
+   * changed lines.
+   */
+  public static final class Scope {
+    private final RangeSet<Integer> lines;
+    private final JCCompilationUnit compilation;
+
+    public Scope(RangeSet<Integer> lines, JCCompilationUnit compilation) {
+      this.lines = checkNotNull(lines);
+      this.compilation = checkNotNull(compilation);
+    }
+
+    /** Returns true if {@code tree} spans a changed line, or if its extent is unknown. */
+    public boolean intersects(Tree tree) {
+      if (compilation.endPositions == null) {
+        return true;
+      }
+      JCTree node = (JCTree) tree;
+      int start = node.getStartPosition();
+      int end = node.getEndPosition(compilation.endPositions);
+      if (start < 0 || end < start) {
+        return true;
+      }
+      return !lines.subRangeSet(Range.closed(lineNumber(start), lineNumber(end))).isEmpty();
+    }
+
+    /** Returns true if {@code position} is on a changed line. */
+    public boolean contains(DiagnosticPosition position) {
+      int pos = position.getPreferredPosition();
+      return pos < 0 || lines.contains(lineNumber(pos));
+    }
+
+    private int lineNumber(int pos) {
+      return (int) compilation.getLineMap().getLineNumber(pos);
+    }
+
+    /** Returns a listener that forwards to {@code listener} the descriptions on changed lines. */
+    public DescriptionListener filter(final DescriptionListener listener) {
+      return new DescriptionListener() {
+        @Override
+        public void onDescribed(Description description) {
+          if (contains((DiagnosticPosition) description.node)) {
+            listener.onDescribed(description);
+          }
+        }
+      };
+    }
+  }
+}
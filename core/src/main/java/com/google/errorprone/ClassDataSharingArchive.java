@@ -0,0 +1,271 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.StandardSystemProperty.JAVA_CLASS_PATH;
+import static com.google.common.base.StandardSystemProperty.JAVA_HOME;
+import static com.google.common.base.StandardSystemProperty.JAVA_SPECIFICATION_VERSION;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds and benchmarks an application class-data-sharing archive for the Error Prone compiler.
+ *
+ * <p>Most of the time taken by a short compilation goes to loading and verifying the classes of
+ * javac, Guava and Error Prone itself.  A class-data-sharing archive holds those classes
+ * pre-parsed, so that JVMs started with {@link #jvmArgs} map them from the archive instead.
+ *
+ * <p>The archive is built from the classes loaded by a representative compilation with the
+ * default checks, and is only valid for the JVM and classpath it was built with, which it records
+ * as absolute paths; JVMs started with {@link #jvmArgs} and a stale archive silently run without
+ * it, so {@link #isUsable} checks an archive against a command line first.  The JVMs used to build
+ * the archive are started with the same JVM arguments and classpath as this one, so the archive
+ * should be built where the compiler is installed, by running this as the compiler will be run,
+ * e.g. {@code java -Xbootclasspath/p:<javac jar> -classpath <compiler jar>
+ * com.google.errorprone.ClassDataSharingArchive <archive>}.  An archive built elsewhere, e.g. on a
+ * build machine, can't be used once the jars are copied to other paths.
+ *
+ * <p>Usage: {@code ClassDataSharingArchive <archive> [--benchmark <runs>]}
+ *
+ * <p>With {@code --benchmark}, instead times that many cold compilations with an existing archive
+ * and with the JVM's default class-data sharing, which only covers the JDK's own classes.
+ */
+public final class ClassDataSharingArchive {
+
+  private static final String BENCHMARK_FLAG = "--benchmark";
+
+  /** A compilation exercising a cross-section of the default checks. */
+  private static final ImmutableList<String> SAMPLE_SOURCE =
+      ImmutableList.of(
+          "package sample;",
+          "import java.util.ArrayList;",
+          "import java.util.HashMap;",
+          "import java.util.List;",
+          "import java.util.Map;",
+          "import java.util.Objects;",
+          "public class Sample implements Comparable<Sample> {",
+          "  private final String name;",
+          "  private final List<Integer> values = new ArrayList<>();",
+          "  public Sample(String name) {",
+          "    this.name = Objects.requireNonNull(name);",
+          "  }",
+          "  public Map<String, Integer> count(Iterable<String> words) {",
+          "    Map<String, Integer> counts = new HashMap<>();",
+          "    for (String word : words) {",
+          "      Integer count = counts.get(word);",
+          "      counts.put(word, count == null ? 1 : count + 1);",
+          "    }",
+          "    return counts;",
+          "  }",
+          "  public int sum() {",
+          "    int sum = 0;",
+          "    for (int i = 0; i < values.size(); i++) {",
+          "      sum += values.get(i);",
+          "    }",
+          "    return sum;",
+          "  }",
+          "  @Override",
+          "  public int compareTo(Sample other) {",
+          "    return name.compareTo(other.name);",
+          "  }",
+          "  @Override",
+          "  public boolean equals(Object obj) {",
+          "    return obj instanceof Sample && name.equals(((Sample) obj).name);",
+          "  }",
+          "  @Override",
+          "  public int hashCode() {",
+          "    return name.hashCode();",
+          "  }",
+          "  @Override",
+          "  public String toString() {",
+          "    StringBuilder sb = new StringBuilder(name);",
+          "    synchronized (values) {",
+          "      sb.append(values);",
+          "    }",
+          "    return String.format(\"%s (%d)\", sb, sum());",
+          "  }",
+          "}");
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    if (args.length == 1) {
+      build(Paths.get(args[0]));
+    } else if (args.length == 3 && args[1].equals(BENCHMARK_FLAG)) {
+      benchmark(Paths.get(args[0]), Integer.parseInt(args[2]));
+    } else {
+      System.err.println("Usage: ClassDataSharingArchive <archive> [--benchmark <runs>]");
+      System.exit(2);
+    }
+  }
+
+  /** Returns the JVM arguments that use {@code archive} if it is valid, or else ignore it. */
+  public static ImmutableList<String> jvmArgs(File archive) {
+    return ImmutableList.<String>builder()
+        .addAll(unlockArgs())
+        .add("-Xshare:auto")
+        .add("-XX:SharedArchiveFile=" + archive.getAbsolutePath())
+        .build();
+  }
+
+  /** Before JDK 10, application class-data sharing is a commercial feature of the Oracle JDK. */
+  private static ImmutableList<String> unlockArgs() {
+    String version = JAVA_SPECIFICATION_VERSION.value();
+    return version.startsWith("1.") || version.equals("9")
+        ? ImmutableList.of("-XX:+UnlockCommercialFeatures", "-XX:+UseAppCDS")
+        : ImmutableList.<String>of();
+  }
+
+  /**
+   * Returns whether JVMs started with {@code javaCommand}, the java executable followed by JVM
+   * arguments such as the bootclasspath and classpath, can use {@code archive}.  Runs a JVM that
+   * requires the archive, which fails if the archive is missing or was built for a different JVM
+   * or classpath.
+   */
+  public static boolean isUsable(File archive, List<String> javaCommand)
+      throws IOException, InterruptedException {
+    if (!archive.isFile()) {
+      return false;
+    }
+    List<String> command = new ArrayList<>(javaCommand);
+    command.addAll(unlockArgs());
+    command.add("-Xshare:on");
+    command.add("-XX:SharedArchiveFile=" + archive.getAbsolutePath());
+    command.add("-version");
+    Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+    ByteStreams.copy(process.getInputStream(), ByteStreams.nullOutputStream());
+    return process.waitFor() == 0;
+  }
+
+  /**
+   * Builds an archive of the classes loaded by compiling {@link #SAMPLE_SOURCE}, and checks that
+   * it can be used by JVMs started like this one.
+   */
+  static void build(Path archive) throws IOException, InterruptedException {
+    Path workDir = Files.createTempDirectory("error-prone-cds");
+    Path classList = workDir.resolve("classlist");
+    List<String> trace = new ArrayList<>(unlockArgs());
+    trace.add("-XX:DumpLoadedClassList=" + classList);
+    run(compileCommand(workDir, trace));
+
+    List<String> dump = javaCommand(unlockArgs());
+    dump.add("-Xshare:dump");
+    dump.add("-XX:SharedClassListFile=" + classList);
+    dump.add("-XX:SharedArchiveFile=" + archive.toAbsolutePath());
+    dump.add("-version");
+    run(dump);
+    if (!isUsable(archive.toFile(), javaCommand(ImmutableList.<String>of()))) {
+      throw new IOException("The JVM rejected the archive it built: " + archive);
+    }
+    System.err.printf(
+        "Archived %d classes in %s%n", Files.readAllLines(classList, UTF_8).size(), archive);
+  }
+
+  /**
+   * Prints the median time of {@code runs} cold compilations with the archive and with the
+   * default {@code -Xshare:auto}, without it.
+   */
+  static void benchmark(Path archive, int runs) throws IOException, InterruptedException {
+    checkArgument(runs > 0, "runs must be positive but was %s", runs);
+    // Otherwise, both configurations would silently run without the archive.
+    if (!isUsable(archive.toFile(), javaCommand(ImmutableList.<String>of()))) {
+      throw new IOException("The archive can't be used by this JVM and classpath: " + archive);
+    }
+    Path workDir = Files.createTempDirectory("error-prone-cds");
+    List<String> shared = jvmArgs(archive.toFile());
+    // The baseline is what a JVM does by default: share the JDK's classes if it can.  Comparing
+    // against -Xshare:off would also credit the archive with sharing the JDK's classes.
+    List<String> defaultSharing = ImmutableList.of("-Xshare:auto");
+    long[] withArchive = new long[runs];
+    long[] withoutArchive = new long[runs];
+    // Interleave the runs so that both configurations see the same disk cache and machine load.
+    for (int i = 0; i < runs; i++) {
+      withArchive[i] = time(compileCommand(workDir, shared));
+      withoutArchive[i] = time(compileCommand(workDir, defaultSharing));
+    }
+    long median = median(withArchive);
+    long baseline = median(withoutArchive);
+    System.out.printf(
+        "Median of %d cold compilations: %d ms with the archive, %d ms with the default (%.1f%%)%n",
+        runs, median, baseline, 100.0 * (baseline - median) / baseline);
+  }
+
+  private static List<String> compileCommand(Path workDir, List<String> jvmArgs)
+      throws IOException {
+    Path source = workDir.resolve("sample/Sample.java");
+    Path output = workDir.resolve("classes");
+    Files.createDirectories(source.getParent());
+    Files.createDirectories(output);
+    Files.write(source, SAMPLE_SOURCE, UTF_8);
+    List<String> command = javaCommand(jvmArgs);
+    command.add(ErrorProneCompiler.class.getName());
+    command.add("-d");
+    command.add(output.toString());
+    command.add(source.toString());
+    return command;
+  }
+
+  /**
+   * Returns a command running a JVM like this one, with the same arguments and classpath, e.g.
+   * to put javac on the bootclasspath, and additionally {@code jvmArgs}.
+   */
+  private static List<String> javaCommand(List<String> jvmArgs) {
+    List<String> command = new ArrayList<>();
+    command.add(Paths.get(JAVA_HOME.value(), "bin", "java").toString());
+    for (String arg : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+      if (!arg.startsWith("-XX:SharedArchiveFile=") && !arg.startsWith("-Xshare:")) {
+        command.add(arg);
+      }
+    }
+    command.addAll(jvmArgs);
+    command.add("-classpath");
+    command.add(JAVA_CLASS_PATH.value());
+    return command;
+  }
+
+  private static void run(List<String> command) throws IOException, InterruptedException {
+    int exitCode = new ProcessBuilder(command).inheritIO().start().waitFor();
+    if (exitCode != 0) {
+      throw new IOException(String.format("Command exited with %d: %s", exitCode, command));
+    }
+  }
+
+  private static long time(List<String> command) throws IOException, InterruptedException {
+    long start = System.nanoTime();
+    run(command);
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+  }
+
+  private static long median(long[] times) {
+    long[] sorted = times.clone();
+    Arrays.sort(sorted);
+    return sorted[sorted.length / 2];
+  }
+
+  private ClassDataSharingArchive() {}
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.auto.value.AutoValue;
+import com.sun.tools.javac.file.ZipFileIndex;
+import com.sun.tools.javac.file.ZipFileIndexCache;
+import com.sun.tools.javac.util.Context;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import javax.tools.JavaFileManager;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+
+/**
+ * Shares the indexes of classpath jars between the compilations in a JVM, so that a long-lived
+ * process such as an {@link ErrorProneWorker} doesn't re-read the central directory of every jar
+ * for every compilation.
+ *
+ * <p>The indexes themselves are javac's, in its JVM-wide {@link ZipFileIndexCache}, which javac
+ * only uses when passed {@link #JAVAC_FLAG}.  This class bounds the number of jars indexed,
+ * evicting the least recently used, drops the index of any jar whose size or modification time
+ * has changed since a compilation recorded it, and counts how often a compilation reuses the index
+ * of a jar on its classpath rather than indexing it afresh.  Symbols are not shared, since javac's
+ * symbols belong to a single compilation.
+ *
+ * <p>The bound is on the number of jars, not on the memory their indexes use, which grows with
+ * the number of entries in each jar: javac doesn't expose the size of an index.  A classpath of
+ * many large jars may need a lower bound than {@link #DEFAULT_MAX_ARCHIVES}.
+ *
+ * <p>Compilations sharing indexes may run concurrently.  An index is only dropped while no such
+ * compilation is running, since it may be in use: a compilation that finds an out of date index
+ * waits for the running compilations to finish, and indexes in excess of the bound are dropped by
+ * the last compilation to finish.
+ */
+public final class ClasspathIndexCache {
+
+  /** The javac flag that makes it share zip indexes through {@link ZipFileIndexCache}. */
+  static final String JAVAC_FLAG = "-XDuseOptimizedZip";
+
+  /** The default maximum number of jars whose indexes are retained. */
+  static final int DEFAULT_MAX_ARCHIVES = 1024;
+
+  private static final ClasspathIndexCache INSTANCE =
+      new ClasspathIndexCache(ZipFileIndexCache.getSharedInstance());
+
+  private static final StandardLocation[] CLASSPATH_LOCATIONS = {
+    StandardLocation.PLATFORM_CLASS_PATH, StandardLocation.CLASS_PATH
+  };
+
+  /** A marker for compilations that use the cache. */
+  private static final Context.Key<ClasspathIndexCache> KEY = new Context.Key<>();
+
+  /** The jars that were indexed when a compilation that uses the cache started. */
+  private static final Context.Key<Set<File>> INDEXED_BEFORE = new Context.Key<>();
+
+  /** Returns the cache shared by all compilations in this JVM. */
+  public static ClasspathIndexCache instance() {
+    return INSTANCE;
+  }
+
+  /** Identifies a version of a jar by its size and modification time. */
+  @AutoValue
+  abstract static class ArchiveVersion {
+    static ArchiveVersion of(File file) {
+      return new AutoValue_ClasspathIndexCache_ArchiveVersion(file.length(), file.lastModified());
+    }
+
+    abstract long size();
+
+    abstract long lastModified();
+  }
+
+  private final ZipFileIndexCache indexes;
+  // Held for reading by each running compilation, and for writing while dropping indexes.
+  private final ReadWriteLock inUse = new ReentrantReadWriteLock();
+  // The jars on the classpaths of previous compilations, least recently used first.  Kept in
+  // insertion order, and re-inserted when used, so that checking an index for staleness doesn't
+  // count as a use.
+  private final LinkedHashMap<File, ArchiveVersion> archives = new LinkedHashMap<>();
+  private int maxArchives = DEFAULT_MAX_ARCHIVES;
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  ClasspathIndexCache(ZipFileIndexCache indexes) {
+    this.indexes = indexes;
+  }
+
+  /**
+   * Sets the maximum number of jars, of any size, whose indexes are retained between compilations.
+   * Excess indexes are dropped once no compilation is running.
+   */
+  public void setMaxArchives(int maxArchives) {
+    checkArgument(maxArchives >= 0, "maxArchives must not be negative but was %s", maxArchives);
+    synchronized (this) {
+      this.maxArchives = maxArchives;
+    }
+    evictExcessIfIdle();
+  }
+
+  /**
+   * Prepares for a compilation in {@code context} that shares indexes, dropping any that are out
+   * of date.  Must be followed by {@link #afterCompilation} on the same thread.
+   */
+  void beforeCompilation(Context context) {
+    List<File> stale = new ArrayList<>();
+    synchronized (this) {
+      for (ZipFileIndex index : indexes.getZipFileIndexes()) {
+        File file = index.getZipFile();
+        // An index that hasn't been recorded yet, e.g. because the compilation that opened it is
+        // still running, can't be out of date.
+        ArchiveVersion version = archives.get(file);
+        if (version != null && !version.equals(ArchiveVersion.of(file))) {
+          stale.add(file);
+        }
+      }
+    }
+    if (!stale.isEmpty()) {
+      // Wait for the compilations that may be using the stale indexes to finish.
+      inUse.writeLock().lock();
+      try {
+        synchronized (this) {
+          for (File file : stale) {
+            evict(file);
+          }
+        }
+      } finally {
+        inUse.writeLock().unlock();
+      }
+    }
+    inUse.readLock().lock();
+    context.put(KEY, this);
+    context.put(INDEXED_BEFORE, indexedJars());
+  }
+
+  /**
+   * Records the jars used by the compilation in {@code context}, if it shared indexes, and evicts
+   * indexes in excess of the bound if no other compilation is running.
+   */
+  static void afterCompilation(Context context) {
+    ClasspathIndexCache cache = context.get(KEY);
+    if (cache == null) {
+      return;
+    }
+    try {
+      JavaFileManager fileManager = context.get(JavaFileManager.class);
+      if (fileManager instanceof StandardJavaFileManager) {
+        cache.record(jars((StandardJavaFileManager) fileManager), context.get(INDEXED_BEFORE));
+      }
+    } finally {
+      cache.inUse.readLock().unlock();
+    }
+    cache.evictExcessIfIdle();
+  }
+
+  private static List<File> jars(StandardJavaFileManager fileManager) {
+    List<File> jars = new ArrayList<>();
+    for (StandardLocation location : CLASSPATH_LOCATIONS) {
+      Iterable<? extends File> path = fileManager.getLocation(location);
+      if (path == null) {
+        continue;
+      }
+      for (File file : path) {
+        if (file.isFile()) {
+          jars.add(file);
+        }
+      }
+    }
+    return jars;
+  }
+
+  /** Returns the jars that javac currently has indexes for. */
+  private Set<File> indexedJars() {
+    Set<File> jars = new HashSet<>();
+    for (ZipFileIndex index : indexes.getZipFileIndexes()) {
+      jars.add(index.getZipFile());
+    }
+    return jars;
+  }
+
+  /**
+   * Records the jars on the classpath of a compilation.  A jar that javac has an index for counts
+   * as a hit if it was already indexed when the compilation started, in {@code indexedBefore},
+   * and as a miss otherwise; jars that javac never opened count as neither.
+   */
+  synchronized void record(Iterable<File> jars, Set<File> indexedBefore) {
+    Set<File> indexedAfter = indexedJars();
+    for (File jar : jars) {
+      archives.remove(jar);
+      archives.put(jar, ArchiveVersion.of(jar));
+      if (indexedAfter.contains(jar)) {
+        if (indexedBefore.contains(jar)) {
+          hits++;
+        } else {
+          misses++;
+        }
+      }
+    }
+  }
+
+  /** Drops the indexes in excess of the bound, unless a compilation is running. */
+  void evictExcessIfIdle() {
+    if (!inUse.writeLock().tryLock()) {
+      return;
+    }
+    try {
+      synchronized (this) {
+        evictExcess();
+      }
+    } finally {
+      inUse.writeLock().unlock();
+    }
+  }
+
+  private void evictExcess() {
+    Iterator<File> leastRecentlyUsed = archives.keySet().iterator();
+    while (archives.size() > maxArchives) {
+      File file = leastRecentlyUsed.next();
+      leastRecentlyUsed.remove();
+      indexes.removeFromCache(file);
+      evictions++;
+    }
+  }
+
+  private void evict(File file) {
+    archives.remove(file);
+    indexes.removeFromCache(file);
+    evictions++;
+  }
+
+  /**
+   * The number of times a compilation reused the index of a jar on its classpath that was already
+   * indexed when it started.
+   */
+  public synchronized long hits() {
+    return hits;
+  }
+
+  /**
+   * The number of times a compilation indexed a jar on its classpath that was not indexed when it
+   * started.  A jar first indexed by another compilation running at the same time also counts as a
+   * miss.
+   */
+  public synchronized long misses() {
+    return misses;
+  }
+
+  /** The number of indexes dropped, because they were out of date or exceeded the bound. */
+  public synchronized long evictions() {
+    return evictions;
+  }
+
+  /** The number of jars currently indexed. */
+  public synchronized int size() {
+    return archives.size();
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format(
+        "%d jars indexed, %d hits, %d misses, %d evictions", archives.size(), hits, misses,
+        evictions);
+  }
+}
@@ -22,9 +22,19 @@ import static com.google.common.base.Verify.verify;
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
 import com.google.common.base.Throwables;
+import com.google.common.collect.RangeSet;
+import com.google.errorprone.apply.DescriptionBasedDiff;
+import com.google.errorprone.apply.DiffNotApplicableException;
+import com.google.errorprone.apply.FixMerger;
+import com.google.errorprone.apply.FsFileDestination;
+import com.google.errorprone.apply.PatchFileDestination;
+import com.google.errorprone.apply.SourceFile;
+import com.google.errorprone.matchers.Description;
+import com.google.errorprone.matchers.Finding;
 import com.google.errorprone.scanner.ErrorProneScannerTransformer;
 import com.google.errorprone.scanner.Scanner;
 import com.google.errorprone.scanner.ScannerSupplier;
+import com.google.errorprone.util.CompilationUnitTokens;
 import com.sun.source.tree.CompilationUnitTree;
 import com.sun.source.tree.Tree;
 import com.sun.source.util.TaskEvent;
@@ -37,65 +47,182 @@ import com.sun.tools.javac.code.Symbol.CompletionFailure;
 import com.sun.tools.javac.main.JavaCompiler;
 import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
 import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.JCDiagnostic.SimpleDiagnosticPosition;
 import com.sun.tools.javac.util.Log;
 import com.sun.tools.javac.util.PropagatedException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import javax.annotation.Nullable;
+import javax.tools.JavaFileObject;
 
 /** A {@link TaskListener} that runs Error Prone over attributed compilation units. */
 @Trusted
 public class ErrorProneAnalyzer implements TaskListener {
 
-  // The set of trees that have already been scanned.
+  // The trees that have been scanned, in compilation units that haven't been fully analyzed.
   private final Set<Tree> seen = new HashSet<>();
 
   private final Supplier<CodeTransformer> transformer;
+  // Runs the checks that don't require attribution on each file once it has been parsed, or is
+  // null if there are none.
+  private final Supplier<CodeTransformer> parseTransformer;
+  // The findings of the checks that don't require attribution, by compilation unit.  They are only
+  // reported once the unit is analyzed, or the compilation finishes without analyzing it, since
+  // errors reported during parsing would stop javac from attributing anything.
+  private final Map<JCCompilationUnit, List<Description>> pendingParseFindings =
+      new LinkedHashMap<>();
+  // The lines to analyze, or null to analyze all lines; read on first use.
+  private final Supplier<ChangedLines> changedLines;
   private final ErrorProneOptions errorProneOptions;
   private final Context context;
 
+  // The patch files written by earlier compilation units in a compilation, which later units
+  // append to rather than truncate.  The files are opened and closed for each compilation unit, so
+  // no file is left open once the compilation finishes.
+  private static final Context.Key<Set<Path>> PATCH_FILES_WRITTEN = new Context.Key<>();
+
   public ErrorProneAnalyzer(
+      ScannerSupplier scannerSupplier, ErrorProneOptions errorProneOptions, Context context) {
+    this(scannerSupplier, errorProneOptions, context, /* parseTier= */ false);
+  }
+
+  /**
+   * Creates an analyzer for the compilation in {@code context} that runs the checks that don't
+   * require attribution as soon as each file is parsed, so that they run even if attribution
+   * stops at an error.  {@link #afterCompilation} must be called once the compilation finishes, to
+   * report the findings in files that were never attributed.
+   */
+  static ErrorProneAnalyzer createForCompilation(
+      ScannerSupplier scannerSupplier, ErrorProneOptions errorProneOptions, Context context) {
+    ErrorProneAnalyzer analyzer =
+        new ErrorProneAnalyzer(scannerSupplier, errorProneOptions, context, /* parseTier= */ true);
+    context.put(ErrorProneAnalyzer.class, analyzer);
+    return analyzer;
+  }
+
+  private ErrorProneAnalyzer(
       final ScannerSupplier scannerSupplier,
       final ErrorProneOptions errorProneOptions,
-      final Context context) {
+      final Context context,
+      boolean parseTier) {
     this(
         Suppliers.memoize(
-            new Supplier<CodeTransformer>() {
+            new Supplier<ScannerSupplier>() {
               @Override
-              public CodeTransformer get() {
+              public ScannerSupplier get() {
                 // we can't load plugins from the processorpath until the filemanager has been
                 // initialized, so do it lazily
                 try {
-                  return ErrorProneScannerTransformer.create(
-                      ErrorPronePlugins.loadPlugins(scannerSupplier, context)
-                          .applyOverrides(errorProneOptions)
-                          .get());
+                  return ErrorPronePlugins.loadPlugins(scannerSupplier, errorProneOptions, context)
+                      .applyOverrides(errorProneOptions);
                 } catch (InvalidCommandLineOptionException e) {
                   throw new PropagatedException(e);
                 }
               }
             }),
         errorProneOptions,
+        context,
+        parseTier);
+  }
+
+  private ErrorProneAnalyzer(
+      final Supplier<ScannerSupplier> checks,
+      final ErrorProneOptions errorProneOptions,
+      Context context,
+      final boolean parseTier) {
+    this(
+        Suppliers.memoize(
+            new Supplier<CodeTransformer>() {
+              @Override
+              public CodeTransformer get() {
+                // In patch mode, all checks run after attribution, so that their fixes are
+                // merged.
+                return ErrorProneScannerTransformer.create(
+                    parseTier && !errorProneOptions.isPatchMode()
+                        ? checks.get().attributedChecks().get()
+                        : checks.get().get());
+              }
+            }),
+        Suppliers.memoize(
+            new Supplier<CodeTransformer>() {
+              @Override
+              public CodeTransformer get() {
+                if (!parseTier || errorProneOptions.isPatchMode()) {
+                  return null;
+                }
+                ScannerSupplier parseChecks = checks.get().parseChecks();
+                return parseChecks.getEnabledChecks().isEmpty()
+                    ? null
+                    : ErrorProneScannerTransformer.create(parseChecks.get());
+              }
+            }),
+        errorProneOptions,
         context);
   }
 
   public ErrorProneAnalyzer(
       CodeTransformer transformer, ErrorProneOptions errorProneOptions, Context context) {
-    this(Suppliers.ofInstance(transformer), errorProneOptions, context);
+    this(
+        Suppliers.ofInstance(transformer),
+        Suppliers.<CodeTransformer>ofInstance(null),
+        errorProneOptions,
+        context);
   }
 
   private ErrorProneAnalyzer(
-      Supplier<CodeTransformer> transformer, ErrorProneOptions errorProneOptions, Context context) {
+      Supplier<CodeTransformer> transformer,
+      Supplier<CodeTransformer> parseTransformer,
+      final ErrorProneOptions errorProneOptions,
+      Context context) {
     this.transformer = checkNotNull(transformer);
+    this.parseTransformer = checkNotNull(parseTransformer);
     this.errorProneOptions = checkNotNull(errorProneOptions);
     this.context = checkNotNull(context);
+    this.changedLines =
+        Suppliers.memoize(
+            new Supplier<ChangedLines>() {
+              @Override
+              public ChangedLines get() {
+                return loadChangedLines(errorProneOptions);
+              }
+            });
+  }
+
+  @Nullable
+  private static ChangedLines loadChangedLines(ErrorProneOptions errorProneOptions) {
+    if (!errorProneOptions.isDiffScoped()) {
+      return null;
+    }
+    try {
+      return errorProneOptions.changedLinesFromGit()
+          ? ChangedLines.fromGit(new File("").getAbsoluteFile())
+          : ChangedLines.load(errorProneOptions.changedLinesFile());
+    } catch (IOException e) {
+      throw new PropagatedException(
+          new InvalidCommandLineOptionException("could not read changed lines: " + e));
+    }
   }
 
   @Override
   public void finished(TaskEvent taskEvent) {
+    if (taskEvent.getKind() == Kind.PARSE) {
+      parsed((JCCompilationUnit) taskEvent.getCompilationUnit());
+      return;
+    }
     if (taskEvent.getKind() != Kind.ANALYZE) {
       return;
     }
     if (JavaCompiler.instance(context).errorCount() > 0) {
+      reportParseFindings(
+          (JCCompilationUnit) taskEvent.getCompilationUnit(), Log.instance(context));
       return;
     }
     TreePath path = JavacTrees.instance(context).getPath(taskEvent.getTypeElement());
@@ -104,23 +231,31 @@ public class ErrorProneAnalyzer implements TaskListener {
     }
     // Assert that the event is unique and scan the current tree.
     verify(seen.add(path.getLeaf()), "Duplicate FLOW event for: %s", taskEvent.getTypeElement());
-    Context subContext = new SubContext(context);
-    subContext.put(ErrorProneOptions.class, errorProneOptions);
     Log log = Log.instance(context);
     JCCompilationUnit compilation = (JCCompilationUnit) path.getCompilationUnit();
-    DescriptionListener logReporter =
-        new JavacErrorDescriptionListener(
-            log, compilation.endPositions, compilation.getSourceFile());
+    // In patch mode, the fixes for all findings in the compilation unit are merged instead of the
+    // findings being reported.
+    FixMerger patch =
+        errorProneOptions.isPatchMode()
+            ? FixMerger.create(compilation, errorProneOptions.patchPriority())
+            : null;
+    DescriptionListener logReporter = patch != null ? patch : reporter(compilation, log);
     try {
       if (path.getLeaf().getKind() == Tree.Kind.COMPILATION_UNIT) {
         // We only get TaskEvents for compilation units if they contain no package declarations
         // (e.g. package-info.java files).  In this case it's safe to analyze the
         // CompilationUnitTree immediately.
-        transformer.get().apply(path, subContext, logReporter);
+        apply(transformer.get(), path, compilation, logReporter);
+        reportParseFindings(compilation, log);
+        writePatch(patch, compilation, log);
+        release(compilation);
       } else if (finishedCompilation(path.getCompilationUnit())) {
         // Otherwise this TaskEvent is for a ClassTree, and we can scan the whole
         // CompilationUnitTree once we've seen all the enclosed classes.
-        transformer.get().apply(new TreePath(compilation), subContext, logReporter);
+        apply(transformer.get(), new TreePath(compilation), compilation, logReporter);
+        reportParseFindings(compilation, log);
+        writePatch(patch, compilation, log);
+        release(compilation);
       }
     } catch (ErrorProneError e) {
       e.logFatalError(log);
@@ -138,6 +273,196 @@ public class ErrorProneAnalyzer implements TaskListener {
     }
   }
 
+  /**
+   * Writes the fixes for a fully analyzed compilation unit, so that neither the diff nor the
+   * compilation unit need be retained until the end of the compilation.
+   */
+  private void writePatch(@Nullable FixMerger merger, JCCompilationUnit compilation, Log log) {
+    if (merger == null || merger.isEmpty()) {
+      return;
+    }
+    FixMerger.Result merged = merger.merge();
+    if (!merged.dropped().isEmpty()) {
+      // Swap the log's source and the current file's source; then be sure to swap them back later.
+      JavaFileObject originalSource = log.useSource(compilation.getSourceFile());
+      try {
+        for (Finding dropped : merged.dropped()) {
+          log.warning(
+              new SimpleDiagnosticPosition(dropped.preferredPosition()),
+              "error.prone",
+              String.format(
+                  "[%s] fix not applied, since it conflicts with another fix; recompile to apply"
+                      + " it",
+                  dropped.checkName()));
+        }
+      } finally {
+        if (originalSource != null) {
+          log.useSource(originalSource);
+        }
+      }
+    }
+    DescriptionBasedDiff patch = DescriptionBasedDiff.create(compilation);
+    patch.handleFix(merged.fix());
+    if (patch.isEmpty()) {
+      return;
+    }
+    try {
+      Path workingDirectory = Paths.get("").toAbsolutePath();
+      SourceFile file = SourceFile.create(compilation.getSourceFile());
+      patch.applyDifferences(file);
+      if (errorProneOptions.patchInPlace()) {
+        FsFileDestination destination = new FsFileDestination(workingDirectory);
+        destination.writeFile(file);
+        destination.flush();
+        return;
+      }
+      Path patchFile = errorProneOptions.patchFile();
+      Set<Path> patchFilesWritten = context.get(PATCH_FILES_WRITTEN);
+      if (patchFilesWritten == null) {
+        patchFilesWritten = new HashSet<>();
+        context.put(PATCH_FILES_WRITTEN, patchFilesWritten);
+      }
+      boolean append = !patchFilesWritten.add(patchFile.toAbsolutePath().normalize());
+      try (PatchFileDestination destination =
+          new PatchFileDestination(workingDirectory, patchFile, append)) {
+        destination.writeFile(file);
+        destination.flush();
+      }
+    } catch (IOException | DiffNotApplicableException e) {
+      log.error("error.prone", String.format(
+          "Failed to apply fixes to %s: %s", patch.getRelevantFileName(), e));
+    }
+  }
+
+  /**
+   * Runs the checks that don't require attribution on a newly parsed compilation unit.  They are
+   * run even if the compilation has errors, since they don't depend on symbols or types, but
+   * their findings are held until the unit is analyzed: javac stops before entering any file once
+   * an error is reported, so reporting an error now would keep every other check, and javac's own
+   * type checking, from running.
+   */
+  private void parsed(JCCompilationUnit compilation) {
+    CodeTransformer parseChecks = parseTransformer.get();
+    if (parseChecks == null || compilation == null) {
+      return;
+    }
+    final List<Description> findings = new ArrayList<>();
+    try {
+      apply(
+          parseChecks,
+          new TreePath(compilation),
+          compilation,
+          new DescriptionListener() {
+            @Override
+            public void onDescribed(Description description) {
+              findings.add(description);
+            }
+          });
+    } catch (ErrorProneError e) {
+      e.logFatalError(Log.instance(context));
+      throw e;
+    }
+    if (!findings.isEmpty()) {
+      pendingParseFindings.put(compilation, findings);
+    }
+  }
+
+  /** Reports the held findings of the checks that don't require attribution in a unit. */
+  private void reportParseFindings(JCCompilationUnit compilation, Log log) {
+    List<Description> findings = pendingParseFindings.remove(compilation);
+    if (findings == null) {
+      return;
+    }
+    DescriptionListener reporter = reporter(compilation, log);
+    for (Description description : findings) {
+      reporter.onDescribed(description);
+    }
+  }
+
+  /**
+   * Reports the findings of the checks that don't require attribution in the compilation units
+   * that were never analyzed, e.g. because javac stopped at an error, if the compilation in
+   * {@code context} was set up by {@link #createForCompilation}.  Findings reported here no longer
+   * affect the compilation's result, but the compilation has already failed if any unit was left
+   * unanalyzed.
+   */
+  static void afterCompilation(Context context) {
+    ErrorProneAnalyzer analyzer = context.get(ErrorProneAnalyzer.class);
+    if (analyzer == null) {
+      return;
+    }
+    Log log = Log.instance(context);
+    for (JCCompilationUnit compilation :
+        new ArrayList<>(analyzer.pendingParseFindings.keySet())) {
+      analyzer.reportParseFindings(compilation, log);
+    }
+  }
+
+  /**
+   * Applies {@code transformer} to {@code path}.  If only changed lines are being analyzed, files
+   * without changes are skipped, and only findings on changed lines are reported.
+   */
+  private void apply(
+      CodeTransformer transformer,
+      TreePath path,
+      JCCompilationUnit compilation,
+      DescriptionListener listener) {
+    Context subContext = subContext();
+    ChangedLines changes = changedLines.get();
+    if (changes != null) {
+      RangeSet<Integer> lines = changes.forFile(compilation.getSourceFile());
+      if (lines == null) {
+        return;
+      }
+      ChangedLines.Scope scope = new ChangedLines.Scope(lines, compilation);
+      subContext.put(ChangedLines.Scope.class, scope);
+      listener = scope.filter(listener);
+    }
+    transformer.apply(path, subContext, listener);
+  }
+
+  private Context subContext() {
+    Context subContext = new SubContext(context);
+    subContext.put(ErrorProneOptions.class, errorProneOptions);
+    CompilationUnitTokens.preRegister(subContext);
+    return subContext;
+  }
+
+  /**
+   * Returns a listener that reports descriptions in {@code compilation} as diagnostics, and to the
+   * compilation's {@link FindingListener}, if any.
+   */
+  private DescriptionListener reporter(JCCompilationUnit compilation, Log log) {
+    DescriptionListener reporter =
+        new JavacErrorDescriptionListener(
+            log, compilation.endPositions, compilation.getSourceFile());
+    FindingListener findingListener = context.get(FindingListener.class);
+    if (findingListener != null) {
+      reporter = tee(reporter, Finding.listener(compilation, findingListener));
+    }
+    return reporter;
+  }
+
+  private static DescriptionListener tee(
+      final DescriptionListener first, final DescriptionListener second) {
+    return new DescriptionListener() {
+      @Override
+      public void onDescribed(Description description) {
+        first.onDescribed(description);
+        second.onDescribed(description);
+      }
+    };
+  }
+
+  /**
+   * Forgets the trees of a fully analyzed compilation unit, so that they can be garbage collected
+   * before the end of the compilation.
+   */
+  private void release(CompilationUnitTree compilation) {
+    seen.remove(compilation);
+    seen.removeAll(compilation.getTypeDecls());
+  }
+
   /**
    * Returns true if all declarations inside the given compilation unit have been visited.
    */
@@ -20,6 +20,7 @@ import com.google.errorprone.scanner.BuiltInCheckerSuppliers;
 import com.google.errorprone.scanner.ScannerSupplier;
 import com.sun.tools.javac.main.Main.Result;
 import com.sun.tools.javac.util.Context;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.List;
 import javax.annotation.processing.Processor;
@@ -43,9 +44,21 @@ public class ErrorProneCompiler {
    * Entry point for compiling Java code with error-prone enabled.
    * All default checks are run, and the compile fails if they find a bug.
    *
+   * <p>If the first argument is {@code --worker}, instead runs an {@link ErrorProneWorker} that
+   * serves compilation requests from standard input until it is closed, and if it is {@code
+   * --server}, runs an {@link ErrorProneServer}.
+   *
    * @param args the same args which could be passed to javac on the command line
    */
-  public static void main(String[] args) {
+  public static void main(String[] args) throws IOException {
+    if (args.length > 0 && args[0].equals(ErrorProneWorker.WORKER_FLAG)) {
+      ErrorProneWorker.main(args);
+      return;
+    }
+    if (args.length > 0 && args[0].equals(ErrorProneServer.SERVER_FLAG)) {
+      ErrorProneServer.main(args);
+      return;
+    }
     System.exit(compile(args).exitCode);
   }
 
@@ -119,6 +132,12 @@ public class ErrorProneCompiler {
       return this;
     }
 
+    /** @see BaseErrorProneCompiler.Builder#listenToFindings */
+    public Builder listenToFindings(FindingListener listener) {
+      builder.listenToFindings(listener);
+      return this;
+    }
+
     /** @deprecated prefer {@link #builder()} */
     @Deprecated
     public Builder() {}
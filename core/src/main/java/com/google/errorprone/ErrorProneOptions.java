@@ -17,11 +17,15 @@
 package com.google.errorprone;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import javax.annotation.Nullable;
 
 /**
  * Processes command-line options specific to error-prone.
@@ -48,6 +52,25 @@ import java.util.Map;
  * -Xep:StringEquality:OFF -Xep:StringEquality  [turns on StringEquality check]
  * }</pre>
  *
+ * <p>Passing {@code -XepPatchLocation:IN_PLACE} applies a suggested fix for every finding
+ * to the source files as each compilation unit is analyzed, instead of reporting the findings.
+ * {@code -XepPatchLocation:<file>} instead writes the fixes to a single patch file in unified diff
+ * format, with paths relative to the working directory, which each compilation overwrites.  The
+ * fixes of all the checks are merged, so findings whose fixes conflict with those of other
+ * findings are reported and left for a later compilation;
+ * {@code -XepPatchPriority:Check1,Check2,...} lists checks whose fixes should be preferred, most
+ * important first.
+ *
+ * <p>Passing {@code -XepSharedClasspathCache} makes the compilation share the indexes of the jars
+ * on its classpath with later compilations in the same JVM; see {@link ClasspathIndexCache}.
+ * {@code -XepPluginIndex:<file>} loads plugin checks from the classes listed in the file rather
+ * than searching the processor path for them; see {@link ErrorPronePlugins}.
+ *
+ * <p>Passing {@code -XepChangedLines:<file>} only reports findings on the lines listed as changed
+ * in the file, and skips analyzing the methods and classes that contain none; see {@link
+ * ChangedLines} for the file's format.  {@code -XepChangedLines:GIT} instead takes the lines
+ * changed since {@code HEAD} in the git repository containing the working directory.
+ *
  * @author eaftan@google.com (Eddie Aftandilian)
  */
 public class ErrorProneOptions {
@@ -56,6 +79,13 @@ public class ErrorProneOptions {
   private static final String FLAG_PREFIX = "-Xep:";
   private static final String DISABLE_WARNINGS_IN_GENERATED_CODE_FLAG =
       "-XepDisableWarningsInGeneratedCode";
+  private static final String PATCH_LOCATION_PREFIX = "-XepPatchLocation:";
+  private static final String PATCH_IN_PLACE = "IN_PLACE";
+  private static final String PATCH_PRIORITY_PREFIX = "-XepPatchPriority:";
+  static final String SHARED_CLASSPATH_CACHE_FLAG = "-XepSharedClasspathCache";
+  private static final String PLUGIN_INDEX_PREFIX = "-XepPluginIndex:";
+  private static final String CHANGED_LINES_PREFIX = "-XepChangedLines:";
+  private static final String CHANGED_LINES_FROM_GIT = "GIT";
 
   /**
    * see {@link javax.tools.OptionChecker#isSupportedOption(String)}
@@ -64,7 +94,12 @@ public class ErrorProneOptions {
     boolean isSupported =
         option.startsWith(FLAG_PREFIX)
             || option.equals(IGNORE_UNKNOWN_CHECKS_FLAG)
-            || option.equals(DISABLE_WARNINGS_IN_GENERATED_CODE_FLAG);
+            || option.equals(DISABLE_WARNINGS_IN_GENERATED_CODE_FLAG)
+            || option.startsWith(PATCH_LOCATION_PREFIX)
+            || option.startsWith(PATCH_PRIORITY_PREFIX)
+            || option.equals(SHARED_CLASSPATH_CACHE_FLAG)
+            || option.startsWith(PLUGIN_INDEX_PREFIX)
+            || option.startsWith(CHANGED_LINES_PREFIX);
     return isSupported ? 0 : -1;
   }
 
@@ -83,16 +118,31 @@ public class ErrorProneOptions {
   private final ImmutableMap<String, Severity> severityMap;
   private final boolean ignoreUnknownChecks;
   private final boolean disableWarningsInGeneratedCode;
+  @Nullable private final String patchLocation;
+  private final ImmutableList<String> patchPriority;
+  private final boolean sharedClasspathCache;
+  @Nullable private final String pluginIndex;
+  @Nullable private final String changedLines;
 
   private ErrorProneOptions(
       ImmutableMap<String, Severity> severityMap,
       ImmutableList<String> remainingArgs,
       boolean ignoreUnknownChecks,
-      boolean disableWarningsInGeneratedCode) {
+      boolean disableWarningsInGeneratedCode,
+      @Nullable String patchLocation,
+      ImmutableList<String> patchPriority,
+      boolean sharedClasspathCache,
+      @Nullable String pluginIndex,
+      @Nullable String changedLines) {
     this.severityMap = severityMap;
     this.remainingArgs = remainingArgs;
     this.ignoreUnknownChecks = ignoreUnknownChecks;
     this.disableWarningsInGeneratedCode = disableWarningsInGeneratedCode;
+    this.patchLocation = patchLocation;
+    this.patchPriority = patchPriority;
+    this.sharedClasspathCache = sharedClasspathCache;
+    this.pluginIndex = pluginIndex;
+    this.changedLines = changedLines;
   }
 
   public String[] getRemainingArgs() {
@@ -111,9 +161,68 @@ public class ErrorProneOptions {
     return disableWarningsInGeneratedCode;
   }
 
+  /** Returns whether suggested fixes should be applied rather than reported. */
+  public boolean isPatchMode() {
+    return patchLocation != null;
+  }
+
+  /** Returns whether suggested fixes should be applied to the source files in place. */
+  public boolean patchInPlace() {
+    return PATCH_IN_PLACE.equals(patchLocation);
+  }
+
+  /**
+   * Returns the patch file that suggested fixes should be written to, or null if they should be
+   * applied in place or not at all.
+   */
+  @Nullable
+  public Path patchFile() {
+    return isPatchMode() && !patchInPlace() ? Paths.get(patchLocation) : null;
+  }
+
+  /** Returns the names of the checks whose fixes should be preferred, most important first. */
+  public ImmutableList<String> patchPriority() {
+    return patchPriority;
+  }
+
+  /** Returns whether classpath jar indexes should be shared with later compilations. */
+  public boolean sharedClasspathCache() {
+    return sharedClasspathCache;
+  }
+
+  /** Returns the plugin index to load plugin checks from, or null to search the processor path. */
+  @Nullable
+  public Path pluginIndex() {
+    return pluginIndex != null ? Paths.get(pluginIndex) : null;
+  }
+
+  /** Returns whether findings should only be reported on changed lines. */
+  public boolean isDiffScoped() {
+    return changedLines != null;
+  }
+
+  /** Returns whether the changed lines should be taken from the git repository. */
+  public boolean changedLinesFromGit() {
+    return CHANGED_LINES_FROM_GIT.equals(changedLines);
+  }
+
+  /**
+   * Returns the file listing the changed lines, or null if they should be taken from git or
+   * findings should be reported on all lines.
+   */
+  @Nullable
+  public Path changedLinesFile() {
+    return isDiffScoped() && !changedLinesFromGit() ? Paths.get(changedLines) : null;
+  }
+
   private static class Builder {
     private boolean ignoreUnknownChecks = false;
     private boolean disableWarningsInGeneratedCode = false;
+    private String patchLocation = null;
+    private ImmutableList<String> patchPriority = ImmutableList.of();
+    private boolean sharedClasspathCache = false;
+    private String pluginIndex = null;
+    private String changedLines = null;
     private Map<String, Severity> severityMap = new HashMap<>();
 
     public void setIgnoreUnknownChecks(boolean ignoreUnknownChecks) {
@@ -124,6 +233,26 @@ public class ErrorProneOptions {
       this.disableWarningsInGeneratedCode = disableWarningsInGeneratedCode;
     }
 
+    public void setPatchLocation(String patchLocation) {
+      this.patchLocation = patchLocation;
+    }
+
+    public void setPatchPriority(ImmutableList<String> patchPriority) {
+      this.patchPriority = patchPriority;
+    }
+
+    public void setSharedClasspathCache(boolean sharedClasspathCache) {
+      this.sharedClasspathCache = sharedClasspathCache;
+    }
+
+    public void setPluginIndex(String pluginIndex) {
+      this.pluginIndex = pluginIndex;
+    }
+
+    public void setChangedLines(String changedLines) {
+      this.changedLines = changedLines;
+    }
+
     public void putSeverity(String checkName, Severity severity) {
       severityMap.put(checkName, severity);
     }
@@ -133,7 +262,12 @@ public class ErrorProneOptions {
           ImmutableMap.copyOf(severityMap),
           outputArgs,
           ignoreUnknownChecks,
-          disableWarningsInGeneratedCode);
+          disableWarningsInGeneratedCode,
+          patchLocation,
+          patchPriority,
+          sharedClasspathCache,
+          pluginIndex,
+          changedLines);
     }
   }
 
@@ -169,6 +303,30 @@ public class ErrorProneOptions {
         builder.setIgnoreUnknownChecks(true);
       } else if (arg.equals(DISABLE_WARNINGS_IN_GENERATED_CODE_FLAG)) {
         builder.setDisableWarningsInGeneratedCode(true);
+      } else if (arg.startsWith(PATCH_LOCATION_PREFIX)) {
+        String location = arg.substring(PATCH_LOCATION_PREFIX.length());
+        if (location.isEmpty()) {
+          throw new InvalidCommandLineOptionException("invalid flag: " + arg);
+        }
+        builder.setPatchLocation(location);
+      } else if (arg.startsWith(PATCH_PRIORITY_PREFIX)) {
+        String checks = arg.substring(PATCH_PRIORITY_PREFIX.length());
+        builder.setPatchPriority(
+            ImmutableList.copyOf(Splitter.on(',').trimResults().omitEmptyStrings().split(checks)));
+      } else if (arg.equals(SHARED_CLASSPATH_CACHE_FLAG)) {
+        builder.setSharedClasspathCache(true);
+      } else if (arg.startsWith(PLUGIN_INDEX_PREFIX)) {
+        String index = arg.substring(PLUGIN_INDEX_PREFIX.length());
+        if (index.isEmpty()) {
+          throw new InvalidCommandLineOptionException("invalid flag: " + arg);
+        }
+        builder.setPluginIndex(index);
+      } else if (arg.startsWith(CHANGED_LINES_PREFIX)) {
+        String changedLines = arg.substring(CHANGED_LINES_PREFIX.length());
+        if (changedLines.isEmpty()) {
+          throw new InvalidCommandLineOptionException("invalid flag: " + arg);
+        }
+        builder.setChangedLines(changedLines);
       } else if (arg.startsWith(FLAG_PREFIX)) {
         // Strip prefix
         String remaining = arg.substring(FLAG_PREFIX.length());
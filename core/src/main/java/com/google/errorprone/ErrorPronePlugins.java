@@ -16,18 +16,58 @@
 
 package com.google.errorprone;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
+import com.google.errorprone.ClasspathIndexCache.ArchiveVersion;
 import com.google.errorprone.bugpatterns.BugChecker;
 import com.google.errorprone.scanner.ScannerSupplier;
+import com.sun.tools.javac.file.JavacFileManager;
 import com.sun.tools.javac.util.Context;
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.ServiceLoader;
+import javax.annotation.Nullable;
 import javax.tools.JavaFileManager;
+import javax.tools.StandardJavaFileManager;
 import javax.tools.StandardLocation;
 
-/** Loads custom Error Prone checks from the annotation processor classpath. */
+/**
+ * Loads custom Error Prone checks from the annotation processor classpath.
+ *
+ * <p>The checks found on a processor path made up only of jars are cached for the life of the
+ * JVM, keyed by the paths, sizes and modification times of the jars, so that compilations in a
+ * long-lived process don't rediscover and reload them.  Up to {@link #MAX_CACHED_PATHS} processor
+ * paths are cached.  The class loader of an evicted path is closed once no compilation is using
+ * its plugins; a compilation run by {@link BaseErrorProneCompiler} stops using them when it
+ * finishes, but the loaders used by other compilations are left to be collected.  As on uncached
+ * paths, plugins only see Error Prone's own classes, and not its dependencies, through a {@link
+ * MaskedClassLoader}.
+ *
+ * <p>Rather than searching every jar on the processor path for service descriptors, checks may
+ * be read from a plugin index passed with {@code -XepPluginIndex:<file>}, which lists the names
+ * of the checker classes one per line.  {@link #main} writes the index for a processor path, e.g.
+ * as a build step.
+ */
 public class ErrorPronePlugins {
 
+  static final int MAX_CACHED_PATHS = 8;
+
   private static final Function<BugChecker, Class<? extends BugChecker>> GET_CLASS =
       new Function<BugChecker, Class<? extends BugChecker>>() {
         @Override
@@ -36,7 +76,73 @@ public class ErrorPronePlugins {
         }
       };
 
+  // The plugins found on processor paths, keyed by the path's fingerprint.
+  private static final Map<List<Object>, CachedPlugins> cache =
+      new LinkedHashMap<List<Object>, CachedPlugins>(
+          MAX_CACHED_PATHS, 0.75f, /* accessOrder= */ true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<Object>, CachedPlugins> eldest) {
+          if (size() <= MAX_CACHED_PATHS) {
+            return false;
+          }
+          CachedPlugins evicted = eldest.getValue();
+          evicted.evicted = true;
+          if (evicted.users == 0) {
+            closeQuietly(evicted.loader);
+          }
+          return true;
+        }
+      };
+
+  /** The cached plugins used by a compilation, to be released when it finishes. */
+  private static final Context.Key<List<CachedPlugins>> USED_PLUGINS = new Context.Key<>();
+
+  /** The plugins on a processor path, and the loader that loaded them. */
+  private static final class CachedPlugins {
+    final URLClassLoader loader;
+    // The plugins, or absent if there are none.
+    final Optional<ScannerSupplier> plugins;
+    // The number of running compilations using the plugins, and whether they have been evicted
+    // from the cache, so that the last user closes the loader.  Guarded by the cache.
+    int users;
+    boolean evicted;
+
+    CachedPlugins(URLClassLoader loader, Optional<ScannerSupplier> plugins) {
+      this.loader = loader;
+      this.plugins = plugins;
+    }
+  }
+
+  /**
+   * Writes a plugin index listing the checks on a processor path.
+   *
+   * <p>Usage: {@code ErrorPronePlugins <index file> <processor path>}
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      System.err.println("Usage: ErrorPronePlugins <index file> <processor path>");
+      System.exit(2);
+    }
+    List<File> path = new ArrayList<>();
+    for (String entry : Splitter.on(File.pathSeparatorChar).omitEmptyStrings().split(args[1])) {
+      path.add(new File(entry));
+    }
+    List<String> names = new ArrayList<>();
+    try (URLClassLoader loader = newClassLoader(path)) {
+      for (BugChecker checker : ServiceLoader.load(BugChecker.class, loader)) {
+        names.add(checker.getClass().getName());
+      }
+    }
+    Collections.sort(names);
+    Files.write(Paths.get(args[0]), names, UTF_8);
+  }
+
   public static ScannerSupplier loadPlugins(ScannerSupplier scannerSupplier, Context context) {
+    return loadPlugins(scannerSupplier, ErrorProneOptions.empty(), context);
+  }
+
+  public static ScannerSupplier loadPlugins(
+      ScannerSupplier scannerSupplier, ErrorProneOptions options, Context context) {
 
     JavaFileManager fileManager = context.get(JavaFileManager.class);
     // Search ANNOTATION_PROCESSOR_PATH if it's available. Unlike in annotation processor
@@ -44,12 +150,139 @@ public class ErrorPronePlugins {
     if (!fileManager.hasLocation(StandardLocation.ANNOTATION_PROCESSOR_PATH)) {
       return scannerSupplier;
     }
-    ClassLoader loader = fileManager.getClassLoader(StandardLocation.ANNOTATION_PROCESSOR_PATH);
-    Iterable<BugChecker> extraBugCheckers = ServiceLoader.load(BugChecker.class, loader);
-    if (Iterables.isEmpty(extraBugCheckers)) {
-      return scannerSupplier;
+    Optional<ScannerSupplier> plugins;
+    Iterable<? extends File> path =
+        fileManager instanceof StandardJavaFileManager
+            ? ((StandardJavaFileManager) fileManager)
+                .getLocation(StandardLocation.ANNOTATION_PROCESSOR_PATH)
+            : null;
+    List<Object> fingerprint = path != null ? fingerprint(path, options.pluginIndex()) : null;
+    if (fingerprint == null) {
+      plugins =
+          load(
+              fileManager.getClassLoader(StandardLocation.ANNOTATION_PROCESSOR_PATH),
+              options.pluginIndex());
+    } else {
+      synchronized (cache) {
+        CachedPlugins cached = cache.get(fingerprint);
+        if (cached == null) {
+          URLClassLoader loader = newClassLoader(path);
+          try {
+            cached = new CachedPlugins(loader, load(loader, options.pluginIndex()));
+          } catch (RuntimeException e) {
+            closeQuietly(loader);
+            throw e;
+          }
+          cache.put(fingerprint, cached);
+        }
+        cached.users++;
+        plugins = cached.plugins;
+        List<CachedPlugins> used = context.get(USED_PLUGINS);
+        if (used == null) {
+          used = new ArrayList<>();
+          context.put(USED_PLUGINS, used);
+        }
+        used.add(cached);
+      }
+    }
+    return plugins.isPresent() ? scannerSupplier.plus(plugins.get()) : scannerSupplier;
+  }
+
+  /**
+   * Releases the cached plugins used by the compilation in {@code context}, closing the loaders of
+   * any that were evicted while it ran.
+   */
+  static void afterCompilation(Context context) {
+    List<CachedPlugins> used = context.get(USED_PLUGINS);
+    if (used == null) {
+      return;
+    }
+    synchronized (cache) {
+      for (CachedPlugins plugins : used) {
+        if (--plugins.users == 0 && plugins.evicted) {
+          closeQuietly(plugins.loader);
+        }
+      }
+    }
+    used.clear();
+  }
+
+  /**
+   * Identifies a processor path and plugin index by their files' paths, sizes and modification
+   * times, or returns {@code null} if the path contains directories, whose contents may change
+   * without changing their modification times.
+   */
+  @Nullable
+  private static List<Object> fingerprint(Iterable<? extends File> path, @Nullable Path index) {
+    ImmutableList.Builder<Object> fingerprint = ImmutableList.builder();
+    for (File file : path) {
+      if (file.isDirectory()) {
+        return null;
+      }
+      fingerprint.add(file.getAbsolutePath(), ArchiveVersion.of(file));
+    }
+    if (index != null) {
+      File file = index.toFile();
+      fingerprint.add(file.getAbsolutePath(), ArchiveVersion.of(file));
+    }
+    return fingerprint.build();
+  }
+
+  /** Loads the checks named in {@code index}, or else found by {@link ServiceLoader}. */
+  private static Optional<ScannerSupplier> load(ClassLoader loader, @Nullable Path index) {
+    Iterable<Class<? extends BugChecker>> checkers;
+    if (index != null) {
+      checkers = readIndex(loader, index);
+    } else {
+      checkers = Iterables.transform(ServiceLoader.load(BugChecker.class, loader), GET_CLASS);
+    }
+    if (Iterables.isEmpty(checkers)) {
+      return Optional.absent();
+    }
+    return Optional.of(ScannerSupplier.fromBugCheckerClasses(checkers));
+  }
+
+  private static List<Class<? extends BugChecker>> readIndex(ClassLoader loader, Path index) {
+    List<Class<? extends BugChecker>> checkers = new ArrayList<>();
+    try {
+      for (String line : Files.readAllLines(index, UTF_8)) {
+        String name = line.trim();
+        if (name.isEmpty() || name.startsWith("#")) {
+          continue;
+        }
+        checkers.add(Class.forName(name, true, loader).asSubclass(BugChecker.class));
+      }
+    } catch (IOException | ClassNotFoundException | ClassCastException e) {
+      throw new InvalidCommandLineOptionException(
+          String.format("could not load plugins from index %s: %s", index, e));
+    }
+    return checkers;
+  }
+
+  /**
+   * Creates a loader for plugins on {@code path}.  Like the loader javac creates for the processor
+   * path, it exposes Error Prone's classes to plugins through a {@link MaskedClassLoader}, but not
+   * the classes of Error Prone's dependencies or of javac.
+   */
+  private static URLClassLoader newClassLoader(Iterable<? extends File> path) {
+    List<URL> urls = new ArrayList<>();
+    try {
+      for (File file : path) {
+        urls.add(file.toURI().toURL());
+      }
+    } catch (MalformedURLException e) {
+      throw new RuntimeException(e);
+    }
+    return new URLClassLoader(
+        urls.toArray(new URL[urls.size()]),
+        new MaskedClassLoader(JavacFileManager.class.getClassLoader()));
+  }
+
+  private static void closeQuietly(URLClassLoader loader) {
+    try {
+      loader.close();
+    } catch (IOException e) {
+      // The loader's jars stay open until it is collected.
     }
-    return scannerSupplier.plus(
-        ScannerSupplier.fromBugCheckerClasses(Iterables.transform(extraBugCheckers, GET_CLASS)));
   }
 }
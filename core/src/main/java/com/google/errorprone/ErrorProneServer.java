@@ -0,0 +1,399 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.BaseEncoding;
+import com.google.errorprone.BugPattern.SeverityLevel;
+import com.google.errorprone.ErrorProneWorker.Response;
+import com.google.errorprone.fixes.Fix;
+import com.google.errorprone.fixes.PrecomputedFix;
+import com.google.errorprone.fixes.Replacement;
+import com.google.errorprone.matchers.Finding;
+import com.google.errorprone.scanner.BuiltInCheckerSuppliers;
+import com.google.errorprone.scanner.ScannerSupplier;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A long-lived Error Prone compile server, which runs compilations requested by clients connected
+ * over a loopback socket and streams their findings back as they are found.
+ *
+ * <p>Like an {@link ErrorProneWorker}, the server loads the compiler and its checks once.  Each
+ * compilation runs in a fresh javac context, which is discarded when it completes, but the
+ * indexes of classpath jars are shared between compilations (see {@link ClasspathIndexCache}), as
+ * are plugin checks (see {@link ErrorPronePlugins}).  Each connection is served by a thread of its
+ * own, and compilations from different connections may run concurrently, up to the number of
+ * threads the server is started with; further requests wait for a running compilation to finish.
+ *
+ * <p>Since a compilation can run code and write files as the server's user, clients must prove
+ * that they can read the server's secret {@linkplain #getToken token}: a connection starts with
+ * the token, written by {@link #writeToken}, and the server closes connections that don't, or
+ * that don't send it within {@link #AUTHENTICATION_TIMEOUT_MILLIS}.  {@link #main} writes the token
+ * to the port file, which only the server's user can read.
+ *
+ * <p>A client may then send any number of requests over a connection, each a list of javac
+ * arguments written as by {@link ErrorProneWorker#writeRequest}.  The response to a request is a
+ * sequence of frames, each starting with a byte: {@link #FINDING} is followed by a finding, as
+ * written by {@link #writeFinding}, and {@link #RESULT} by the compilation's result, as written
+ * by {@link ErrorProneWorker#writeResponse}, and ends the response.  {@link #readResponse} reads
+ * a response.
+ */
+public final class ErrorProneServer implements Closeable {
+  private static final Logger logger = Logger.getLogger(ErrorProneServer.class.toString());
+
+  /** The flag to {@link ErrorProneCompiler#main} that runs a server. */
+  public static final String SERVER_FLAG = "--server";
+
+  /** The flag that sets the port to listen on; by default, any free port is used. */
+  public static final String PORT_FLAG = "--port=";
+
+  /**
+   * The flag that names a file to write the server's port and token to, on separate lines, once
+   * it is listening.
+   */
+  public static final String PORT_FILE_FLAG = "--port_file=";
+
+  /** The flag that sets the number of compilations that may run at once; by default, 1. */
+  public static final String THREADS_FLAG = "--threads=";
+
+  /** Starts a frame holding a finding. */
+  public static final byte FINDING = 1;
+
+  /** Starts the frame holding the result of a compilation, which ends a response. */
+  public static final byte RESULT = 0;
+
+  /** How long a new connection may take to send the server's token before it is closed. */
+  public static final int AUTHENTICATION_TIMEOUT_MILLIS = 10_000;
+
+  private static final int TOKEN_BYTES = 32;
+
+  /**
+   * Runs a server until it is killed.  Unless {@link #PORT_FILE_FLAG} is given, the port it
+   * listens on and its token are printed to standard output.
+   */
+  public static void main(String[] args) throws IOException {
+    int port = 0;
+    int threads = 1;
+    Path portFile = null;
+    for (String arg : args) {
+      if (arg.startsWith(PORT_FLAG)) {
+        port = Integer.parseInt(arg.substring(PORT_FLAG.length()));
+      } else if (arg.startsWith(PORT_FILE_FLAG)) {
+        portFile = Paths.get(arg.substring(PORT_FILE_FLAG.length()));
+      } else if (arg.startsWith(THREADS_FLAG)) {
+        threads = Integer.parseInt(arg.substring(THREADS_FLAG.length()));
+      } else if (!arg.equals(SERVER_FLAG)) {
+        throw new IllegalArgumentException("Unknown server flag: " + arg);
+      }
+    }
+    ErrorProneServer server =
+        new ErrorProneServer(BuiltInCheckerSuppliers.defaultChecks(), port, threads);
+    if (portFile != null) {
+      writePortFile(portFile, server);
+    } else {
+      System.out.println(server.getPort());
+      System.out.println(server.getToken());
+      System.out.flush();
+    }
+    server.serve();
+  }
+
+  /** Writes the server's port and token to a new file that only the current user can read. */
+  private static void writePortFile(Path portFile, ErrorProneServer server) throws IOException {
+    Files.deleteIfExists(portFile);
+    if (Files.getFileStore(portFile.toAbsolutePath().getParent())
+        .supportsFileAttributeView(PosixFileAttributeView.class)) {
+      Files.createFile(
+          portFile,
+          PosixFilePermissions.asFileAttribute(
+              EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE)));
+    } else {
+      Files.createFile(portFile);
+      File file = portFile.toFile();
+      file.setReadable(false, /* ownerOnly= */ false);
+      file.setReadable(true, /* ownerOnly= */ true);
+    }
+    Files.write(
+        portFile, ImmutableList.of(Integer.toString(server.getPort()), server.getToken()), UTF_8);
+  }
+
+  private final ErrorProneWorker worker;
+  private final String token;
+  private final ServerSocket serverSocket;
+  private final ExecutorService connections;
+  // Limits the number of compilations that run at once, across all connections.
+  private final Semaphore compilations;
+
+  /**
+   * Creates a server listening on {@code port} of the loopback interface, or on any free port if
+   * {@code port} is 0, which runs up to {@code threads} compilations at once.
+   */
+  public ErrorProneServer(ScannerSupplier scannerSupplier, int port, int threads)
+      throws IOException {
+    checkArgument(threads > 0, "threads must be positive but was %s", threads);
+    this.worker = new ErrorProneWorker(checkNotNull(scannerSupplier));
+    this.serverSocket = new ServerSocket(port, /* backlog= */ 50, InetAddress.getLoopbackAddress());
+    this.connections = Executors.newCachedThreadPool();
+    this.compilations = new Semaphore(threads);
+    byte[] secret = new byte[TOKEN_BYTES];
+    new SecureRandom().nextBytes(secret);
+    this.token = BaseEncoding.base16().lowerCase().encode(secret);
+  }
+
+  /** Returns the port the server is listening on. */
+  public int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  /** Returns the secret that clients must send at the start of each connection. */
+  public String getToken() {
+    return token;
+  }
+
+  /** Starts a connection by sending the server's token. */
+  public static void writeToken(DataOutput out, String token) throws IOException {
+    ErrorProneWorker.writeString(out, token);
+  }
+
+  /** Accepts connections until the server is closed. */
+  public void serve() throws IOException {
+    while (true) {
+      final Socket socket;
+      try {
+        socket = serverSocket.accept();
+      } catch (SocketException e) {
+        if (serverSocket.isClosed()) {
+          return;
+        }
+        throw e;
+      }
+      connections.execute(
+          new Runnable() {
+            @Override
+            public void run() {
+              handle(socket);
+            }
+          });
+    }
+  }
+
+  /** Stops accepting connections, and abandons any that haven't been served. */
+  @Override
+  public void close() throws IOException {
+    serverSocket.close();
+    connections.shutdownNow();
+  }
+
+  private void handle(Socket socket) {
+    try (Socket connection = socket) {
+      DataInputStream in =
+          new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+      final DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+      if (!authenticate(connection, in)) {
+        logger.warning("Rejected a connection without the server's token");
+        return;
+      }
+      List<String> request;
+      while ((request = ErrorProneWorker.readRequest(in)) != null) {
+        compilations.acquire();
+        Response response;
+        try {
+          response =
+              worker.compile(
+                  request,
+                  new FindingListener() {
+                    @Override
+                    public void onFinding(Finding finding) {
+                      try {
+                        out.writeByte(FINDING);
+                        writeFinding(out, finding);
+                        out.flush();
+                      } catch (IOException e) {
+                        throw new RuntimeException(e);
+                      }
+                    }
+                  });
+        } finally {
+          compilations.release();
+        }
+        out.writeByte(RESULT);
+        ErrorProneWorker.writeResponse(out, response);
+        out.flush();
+      }
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Failed to serve connection", e);
+    } catch (InterruptedException e) {
+      // The server was closed while the request waited to be compiled.
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Reads the token that starts a connection, and returns whether it is the server's.  A client
+   * that doesn't send it in time isn't allowed to hold on to the connection's thread.
+   */
+  private boolean authenticate(Socket connection, DataInputStream in) throws IOException {
+    connection.setSoTimeout(AUTHENTICATION_TIMEOUT_MILLIS);
+    try {
+      // Don't read an arbitrarily long string from an unauthenticated client.
+      int length = in.readInt();
+      if (length != token.length()) {
+        return false;
+      }
+      byte[] bytes = new byte[length];
+      in.readFully(bytes);
+      return MessageDigest.isEqual(bytes, token.getBytes(UTF_8));
+    } catch (SocketTimeoutException e) {
+      return false;
+    } finally {
+      connection.setSoTimeout(0);
+    }
+  }
+
+  /**
+   * Reads a response, reporting its findings to {@code listener} as they are read, and returns
+   * the result of the compilation.
+   */
+  public static Response readResponse(DataInput in, FindingListener listener)
+      throws IOException {
+    while (true) {
+      byte frame = in.readByte();
+      switch (frame) {
+        case FINDING:
+          listener.onFinding(readFinding(in));
+          break;
+        case RESULT:
+          return ErrorProneWorker.readResponse(in);
+        default:
+          throw new IOException("Unknown frame: " + frame);
+      }
+    }
+  }
+
+  /**
+   * Writes a finding as its source path, start, end and preferred positions, check name, severity
+   * (empty if none), message and fixes.  Each fix is written as its number of replacements, each
+   * as its start and end positions and replacement text, followed by the imports it adds and
+   * removes, each as their number followed by their names.
+   */
+  public static void writeFinding(DataOutput out, Finding finding) throws IOException {
+    ErrorProneWorker.writeString(out, finding.sourcePath());
+    out.writeInt(finding.startPosition());
+    out.writeInt(finding.endPosition());
+    out.writeInt(finding.preferredPosition());
+    ErrorProneWorker.writeString(out, finding.checkName());
+    ErrorProneWorker.writeString(out, finding.severity() == null ? "" : finding.severity().name());
+    ErrorProneWorker.writeString(out, finding.message());
+    out.writeInt(finding.fixes().size());
+    for (Fix fix : finding.fixes()) {
+      // Findings' fixes are precomputed, so don't need end positions.
+      Set<Replacement> replacements = fix.getReplacements(null);
+      out.writeInt(replacements.size());
+      for (Replacement replacement : replacements) {
+        out.writeInt(replacement.startPosition());
+        out.writeInt(replacement.endPosition());
+        ErrorProneWorker.writeString(out, replacement.replaceWith());
+      }
+      writeStrings(out, fix.getImportsToAdd());
+      writeStrings(out, fix.getImportsToRemove());
+    }
+  }
+
+  public static Finding readFinding(DataInput in) throws IOException {
+    String sourcePath = ErrorProneWorker.readString(in);
+    int startPosition = in.readInt();
+    int endPosition = in.readInt();
+    int preferredPosition = in.readInt();
+    String checkName = ErrorProneWorker.readString(in);
+    String severity = ErrorProneWorker.readString(in);
+    String message = ErrorProneWorker.readString(in);
+    int size = in.readInt();
+    List<Fix> fixes = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      int replacementCount = in.readInt();
+      Set<Replacement> replacements = new LinkedHashSet<>();
+      for (int j = 0; j < replacementCount; j++) {
+        int start = in.readInt();
+        int end = in.readInt();
+        replacements.add(Replacement.create(start, end, ErrorProneWorker.readString(in)));
+      }
+      fixes.add(PrecomputedFix.create(replacements, readStrings(in), readStrings(in)));
+    }
+    return Finding.create(
+        sourcePath,
+        startPosition,
+        endPosition,
+        preferredPosition,
+        checkName,
+        severity.isEmpty() ? null : SeverityLevel.valueOf(severity),
+        message,
+        fixes);
+  }
+
+  private static void writeStrings(DataOutput out, Collection<String> values) throws IOException {
+    out.writeInt(values.size());
+    for (String value : values) {
+      ErrorProneWorker.writeString(out, value);
+    }
+  }
+
+  private static List<String> readStrings(DataInput in) throws IOException {
+    int size = in.readInt();
+    List<String> values = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      values.add(ErrorProneWorker.readString(in));
+    }
+    return values;
+  }
+}
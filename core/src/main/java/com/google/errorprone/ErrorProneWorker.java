@@ -0,0 +1,322 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+import com.google.errorprone.scanner.BuiltInCheckerSuppliers;
+import com.google.errorprone.scanner.ScannerSupplier;
+import com.sun.tools.javac.main.Main.Result;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import javax.annotation.Nullable;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaFileObject;
+
+/**
+ * A long-lived Error Prone compiler process, which runs compilations requested over its standard
+ * input and writes their results to its standard output.  Reusing a process for many compilations
+ * saves the cost of starting a JVM, loading the compiler and its checks and warming them up for
+ * each.  Each compilation runs in a fresh javac context, but the checks are only loaded once, and
+ * the indexes of classpath jars are shared between compilations (see {@link
+ * ClasspathIndexCache}).
+ *
+ * <p>Each request is a list of javac arguments, naming the inputs and output directories of the
+ * compilation.  Each response holds the compiler's exit code, its diagnostics, any other output,
+ * and whether the worker will exit after the response, having served its maximum number of
+ * requests.  Requests are served one at a time, in order.
+ *
+ * <p>Integers and booleans are written as by {@link DataOutput}, and strings as their length in
+ * bytes followed by their UTF-8 encoding.  A request is the number of arguments followed by the
+ * arguments.  A response is the exit code, the output, the number of diagnostics, each diagnostic
+ * as its kind, source path (empty if none), line, column and message, and finally whether the
+ * worker will exit.  The worker also exits when its standard input is closed.
+ */
+public final class ErrorProneWorker {
+
+  /** The flag to {@link ErrorProneCompiler#main} that runs a worker. */
+  public static final String WORKER_FLAG = "--worker";
+
+  /** The flag that limits the number of requests a worker serves before exiting. */
+  public static final String MAX_REQUESTS_FLAG = "--max_requests=";
+
+  /** A diagnostic reported by a compilation run by a worker. */
+  @AutoValue
+  public abstract static class WorkerDiagnostic {
+    public static WorkerDiagnostic create(
+        Diagnostic.Kind kind, String source, long line, long column, String message) {
+      return new AutoValue_ErrorProneWorker_WorkerDiagnostic(kind, source, line, column, message);
+    }
+
+    static WorkerDiagnostic create(Diagnostic<? extends JavaFileObject> diagnostic) {
+      JavaFileObject source = diagnostic.getSource();
+      return create(
+          diagnostic.getKind(),
+          source == null ? "" : source.toUri().getPath(),
+          diagnostic.getLineNumber(),
+          diagnostic.getColumnNumber(),
+          diagnostic.getMessage(Locale.getDefault()));
+    }
+
+    public abstract Diagnostic.Kind kind();
+
+    /** The path of the source file the diagnostic is reported in, or empty if none. */
+    public abstract String source();
+
+    /** The line of the diagnostic, or {@link Diagnostic#NOPOS}. */
+    public abstract long line();
+
+    /** The column of the diagnostic, or {@link Diagnostic#NOPOS}. */
+    public abstract long column();
+
+    public abstract String message();
+
+    /** Formats the diagnostic as javac would print it. */
+    public String format() {
+      String kind;
+      switch (kind()) {
+        case ERROR:
+          kind = "error: ";
+          break;
+        case WARNING:
+        case MANDATORY_WARNING:
+          kind = "warning: ";
+          break;
+        case NOTE:
+          kind = "Note: ";
+          break;
+        default:
+          kind = "";
+      }
+      if (source().isEmpty()) {
+        return kind + message();
+      }
+      return line() == Diagnostic.NOPOS
+          ? String.format("%s: %s%s", source(), kind, message())
+          : String.format("%s:%d: %s%s", source(), line(), kind, message());
+    }
+  }
+
+  /** The result of a compilation run by a worker. */
+  @AutoValue
+  public abstract static class Response {
+    public static Response create(
+        int exitCode, String output, List<WorkerDiagnostic> diagnostics, boolean willExit) {
+      return new AutoValue_ErrorProneWorker_Response(
+          exitCode, output, ImmutableList.copyOf(diagnostics), willExit);
+    }
+
+    /** The compiler's exit code, as for {@link Result}. */
+    public abstract int exitCode();
+
+    /** The compiler's output, other than its diagnostics. */
+    public abstract String output();
+
+    public abstract ImmutableList<WorkerDiagnostic> diagnostics();
+
+    /** Whether the worker will exit after this response, rather than accept more requests. */
+    public abstract boolean willExit();
+  }
+
+  /**
+   * Runs a worker.  {@code args} may contain {@link #MAX_REQUESTS_FLAG}, to exit after serving a
+   * number of requests, e.g. to bound the effects of any leaks.
+   */
+  public static void main(String[] args) throws IOException {
+    int maxRequests = Integer.MAX_VALUE;
+    for (String arg : args) {
+      if (arg.startsWith(MAX_REQUESTS_FLAG)) {
+        maxRequests = Integer.parseInt(arg.substring(MAX_REQUESTS_FLAG.length()));
+      } else if (!arg.equals(WORKER_FLAG)) {
+        throw new IllegalArgumentException("Unknown worker flag: " + arg);
+      }
+    }
+    DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+    DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+    // Standard output carries responses, so anything else printed to it would corrupt them.
+    System.setOut(System.err);
+    new ErrorProneWorker(BuiltInCheckerSuppliers.defaultChecks(), maxRequests).serve(in, out);
+  }
+
+  private final ScannerSupplier scannerSupplier;
+  private final int maxRequests;
+
+  public ErrorProneWorker(ScannerSupplier scannerSupplier) {
+    this(scannerSupplier, Integer.MAX_VALUE);
+  }
+
+  public ErrorProneWorker(ScannerSupplier scannerSupplier, int maxRequests) {
+    checkArgument(maxRequests > 0, "maxRequests must be positive but was %s", maxRequests);
+    this.scannerSupplier = checkNotNull(scannerSupplier);
+    this.maxRequests = maxRequests;
+  }
+
+  /**
+   * Serves requests read from {@code in} until it is closed or the maximum number of requests
+   * have been served, writing responses to {@code out}.
+   */
+  public void serve(DataInputStream in, DataOutputStream out) throws IOException {
+    for (int served = 1; served <= maxRequests; served++) {
+      List<String> request = readRequest(in);
+      if (request == null) {
+        return;
+      }
+      writeResponse(out, compile(request, null, served == maxRequests));
+      out.flush();
+    }
+  }
+
+  /**
+   * Runs a compilation with the arguments {@code args}, sharing the indexes of its classpath jars
+   * with the worker's other compilations.
+   */
+  public Response compile(List<String> args) {
+    return compile(args, null, false);
+  }
+
+  /**
+   * Runs a compilation with the arguments {@code args}, reporting its findings to {@code
+   * findings} as they are found.
+   */
+  public Response compile(List<String> args, FindingListener findings) {
+    return compile(args, checkNotNull(findings), false);
+  }
+
+  private Response compile(
+      List<String> args, @Nullable FindingListener findings, boolean willExit) {
+    StringWriter output = new StringWriter();
+    PrintWriter writer = new PrintWriter(output, true);
+    DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+    int exitCode;
+    try {
+      ErrorProneCompiler.Builder compiler = ErrorProneCompiler.builder()
+          .report(scannerSupplier)
+          .redirectOutputTo(writer)
+          .listenToDiagnostics(diagnostics);
+      if (findings != null) {
+        compiler.listenToFindings(findings);
+      }
+      List<String> sharingArgs = withSharedClasspathCache(args);
+      exitCode =
+          compiler.build().run(sharingArgs.toArray(new String[sharingArgs.size()])).exitCode;
+    } catch (RuntimeException | Error e) {
+      // Don't let a crashing compilation take down the worker.
+      e.printStackTrace(writer);
+      exitCode = Result.ABNORMAL.exitCode;
+    }
+    writer.flush();
+    List<WorkerDiagnostic> result = new ArrayList<>();
+    for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+      result.add(WorkerDiagnostic.create(diagnostic));
+    }
+    return Response.create(exitCode, output.toString(), result, willExit);
+  }
+
+  private static List<String> withSharedClasspathCache(List<String> args) {
+    if (args.contains(ErrorProneOptions.SHARED_CLASSPATH_CACHE_FLAG)) {
+      return args;
+    }
+    return ImmutableList.<String>builder()
+        .addAll(args)
+        .add(ErrorProneOptions.SHARED_CLASSPATH_CACHE_FLAG)
+        .build();
+  }
+
+  public static void writeRequest(DataOutput out, List<String> args) throws IOException {
+    out.writeInt(args.size());
+    for (String arg : args) {
+      writeString(out, arg);
+    }
+  }
+
+  /** Reads a request, or returns {@code null} if there are no more. */
+  @Nullable
+  public static ImmutableList<String> readRequest(DataInput in) throws IOException {
+    int size;
+    try {
+      size = in.readInt();
+    } catch (EOFException e) {
+      return null;
+    }
+    ImmutableList.Builder<String> args = ImmutableList.builder();
+    for (int i = 0; i < size; i++) {
+      args.add(readString(in));
+    }
+    return args.build();
+  }
+
+  public static void writeResponse(DataOutput out, Response response) throws IOException {
+    out.writeInt(response.exitCode());
+    writeString(out, response.output());
+    out.writeInt(response.diagnostics().size());
+    for (WorkerDiagnostic diagnostic : response.diagnostics()) {
+      writeString(out, diagnostic.kind().name());
+      writeString(out, diagnostic.source());
+      out.writeLong(diagnostic.line());
+      out.writeLong(diagnostic.column());
+      writeString(out, diagnostic.message());
+    }
+    out.writeBoolean(response.willExit());
+  }
+
+  public static Response readResponse(DataInput in) throws IOException {
+    int exitCode = in.readInt();
+    String output = readString(in);
+    int size = in.readInt();
+    List<WorkerDiagnostic> diagnostics = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      diagnostics.add(WorkerDiagnostic.create(
+          Diagnostic.Kind.valueOf(readString(in)),
+          readString(in),
+          in.readLong(),
+          in.readLong(),
+          readString(in)));
+    }
+    return Response.create(exitCode, output, diagnostics, in.readBoolean());
+  }
+
+  static void writeString(DataOutput out, String value) throws IOException {
+    byte[] bytes = value.getBytes(UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  static String readString(DataInput in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, UTF_8);
+  }
+}
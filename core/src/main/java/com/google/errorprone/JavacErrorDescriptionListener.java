@@ -40,12 +40,12 @@ public class JavacErrorDescriptionListener implements DescriptionListener {
   private final Log log;
   private final EndPosTable endPositions;
   private final JavaFileObject sourceFile;
-  private final CharSequence sourceFileContent;
+  private final AppliedFix.Applier fixApplier;
 
   private final Function<Fix, AppliedFix> fixToAppliedFix = new Function<Fix, AppliedFix>() {
     @Override
     public AppliedFix apply(Fix fix) {
-      return AppliedFix.fromSource(sourceFileContent, endPositions).apply(fix);
+      return fixApplier.apply(fix);
     }
   };
 
@@ -60,7 +60,8 @@ public class JavacErrorDescriptionListener implements DescriptionListener {
     this.endPositions = checkNotNull(endPositions);
     this.sourceFile = sourceFile;
     try {
-      this.sourceFileContent = sourceFile.getCharContent(true);
+      // One applier for the whole file, so that its line offsets are only computed once.
+      this.fixApplier = AppliedFix.fromSource(sourceFile.getCharContent(true), endPositions);
     } catch (IOException e) {
       throw new IOError(e);
     }
@@ -72,7 +73,7 @@ public class JavacErrorDescriptionListener implements DescriptionListener {
     JavaFileObject originalSource = log.useSource(sourceFile);
 
     List<AppliedFix> appliedFixes = FluentIterable
-        .from(description.fixes)
+        .from(description.getFixes())
         .transform(fixToAppliedFix)
         .filter(Predicates.notNull())
         .toList();
@@ -20,6 +20,16 @@ import com.google.errorprone.BugPattern.SeverityLevel;
 import com.google.errorprone.BugPattern.Suppressibility;
 import com.google.errorprone.matchers.Suppressible;
 import com.google.errorprone.util.ASTHelpers;
+import com.sun.source.tree.AnnotationTree;
+import com.sun.source.tree.AssignmentTree;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.LiteralTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.ModifiersTree;
+import com.sun.source.tree.NewArrayTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.VariableTree;
 import com.sun.tools.javac.code.Attribute;
 import com.sun.tools.javac.code.Symbol;
 import com.sun.tools.javac.code.Symbol.MethodSymbol;
@@ -186,4 +196,93 @@ public class SuppressionHelper {
     }
   }
 
+  /**
+   * Returns the strings in the {@code @SuppressWarnings} annotation written on a class, method or
+   * variable declaration, for use before attribution, when declarations don't yet have symbols.
+   * The annotation is recognized by name, and only literal strings are returned.
+   */
+  public static Set<String> suppressionsFromSource(Tree tree) {
+    Set<String> suppressions = new HashSet<>();
+    for (AnnotationTree annotation : annotationsFromSource(tree)) {
+      if (!isNamed(annotation, SuppressWarnings.class)) {
+        continue;
+      }
+      for (ExpressionTree argument : annotation.getArguments()) {
+        ExpressionTree value =
+            argument instanceof AssignmentTree
+                ? ((AssignmentTree) argument).getExpression()
+                : argument;
+        if (value instanceof NewArrayTree) {
+          for (ExpressionTree element : ((NewArrayTree) value).getInitializers()) {
+            addStringLiteral(element, suppressions);
+          }
+        } else {
+          addStringLiteral(value, suppressions);
+        }
+      }
+    }
+    return suppressions;
+  }
+
+  /**
+   * Returns the custom suppression annotations written on a class, method or variable declaration,
+   * for use before attribution.  Annotations are recognized by name.
+   */
+  public Set<Class<? extends Annotation>> customSuppressionsFromSource(Tree tree) {
+    Set<Class<? extends Annotation>> suppressions = new HashSet<>();
+    for (AnnotationTree annotation : annotationsFromSource(tree)) {
+      for (Class<? extends Annotation> annotationType : customSuppressionAnnotations) {
+        if (isNamed(annotation, annotationType)) {
+          suppressions.add(annotationType);
+        }
+      }
+    }
+    return suppressions;
+  }
+
+  /**
+   * Returns whether a class, method or variable declaration is annotated {@code @Generated}, for
+   * use before attribution.  The annotation is recognized by name.
+   */
+  public static boolean isGeneratedFromSource(Tree tree) {
+    for (AnnotationTree annotation : annotationsFromSource(tree)) {
+      if (isNamed(annotation, Generated.class)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static Iterable<? extends AnnotationTree> annotationsFromSource(Tree tree) {
+    ModifiersTree modifiers;
+    switch (tree.getKind()) {
+      case CLASS:
+      case INTERFACE:
+      case ENUM:
+      case ANNOTATION_TYPE:
+        modifiers = ((ClassTree) tree).getModifiers();
+        break;
+      case METHOD:
+        modifiers = ((MethodTree) tree).getModifiers();
+        break;
+      case VARIABLE:
+        modifiers = ((VariableTree) tree).getModifiers();
+        break;
+      default:
+        return Collections.<AnnotationTree>emptyList();
+    }
+    return modifiers.getAnnotations();
+  }
+
+  /** Returns whether the annotation is written with the simple or canonical name of the type. */
+  private static boolean isNamed(AnnotationTree annotation, Class<? extends Annotation> type) {
+    String name = annotation.getAnnotationType().toString();
+    return name.equals(type.getSimpleName()) || name.equals(type.getCanonicalName());
+  }
+
+  private static void addStringLiteral(ExpressionTree tree, Set<String> strings) {
+    if (tree instanceof LiteralTree && ((LiteralTree) tree).getValue() instanceof String) {
+      strings.add((String) ((LiteralTree) tree).getValue());
+    }
+  }
 }
@@ -21,8 +21,8 @@ import com.google.common.collect.ImmutableMap;
 import com.google.errorprone.BugPattern.SeverityLevel;
 import com.google.errorprone.dataflow.nullnesspropagation.NullnessAnalysis;
 import com.google.errorprone.matchers.Description;
+import com.google.errorprone.util.CompilationUnitTokens;
 import com.google.errorprone.util.ErrorProneToken;
-import com.google.errorprone.util.ErrorProneTokens;
 import com.sun.source.tree.Tree;
 import com.sun.source.util.TreePath;
 import com.sun.tools.javac.code.Symbol;
@@ -313,11 +313,18 @@ public class VisitorState {
   /**
    * Returns the list of {@link Token}s for the given {@link JCTree}.
    *
-   * <p>This is moderately expensive (the source of the node has to be re-lexed), so it should
-   * only be used if a fix is already going to be emitted.
+   * <p>Token and comment positions are relative to the start of the node. The whole compilation
+   * unit is lexed the first time this is called for it, and the tokens are shared with later
+   * calls, so it should still only be used if a fix is already going to be emitted.
    */
   public ImmutableList<ErrorProneToken> getTokensForNode(Tree tree) {
-    return ErrorProneTokens.getTokens(getSourceForNode(tree), context);
+    JCTree node = (JCTree) tree;
+    int end = getEndPosition(node);
+    if (end < 0) {
+      return ImmutableList.of();
+    }
+    return CompilationUnitTokens.instance(context, getPath().getCompilationUnit())
+        .getTokens(node.getStartPosition(), end);
   }
 
   /** Returns the end position of the node, or -1 if it is not available. */
@@ -16,6 +16,7 @@ package com.google.errorprone.analysis;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import com.google.common.reflect.TypeToken;
 import com.google.errorprone.BugPattern.Suppressibility;
 import com.google.errorprone.DescriptionListener;
 import com.google.errorprone.VisitorState;
@@ -128,6 +129,9 @@ import com.sun.source.util.SimpleTreeVisitor;
 import com.sun.source.util.TreePath;
 import com.sun.tools.javac.util.Context;
 import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.Set;
 
 /**
@@ -163,6 +167,33 @@ public final class BugCheckerLocalAnalysis extends SimpleTreeVisitor<Void, Visit
     return checker.suppressibility();
   }
 
+  /**
+   * Returns the kinds of tree that the checker matches, as determined by the matcher interfaces it
+   * implements.  {@link #analyze} does nothing for other kinds of tree.
+   */
+  Set<Tree.Kind> matchedKinds() {
+    Set<Class<?>> matchedTreeTypes = new HashSet<>();
+    for (Class<?> type : TypeToken.of(checker.getClass()).getTypes().interfaces().rawTypes()) {
+      if (type.getEnclosingClass() != BugChecker.class) {
+        continue;
+      }
+      for (Method method : type.getDeclaredMethods()) {
+        // Description matchFoo(FooTree tree, VisitorState state)
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        if (parameterTypes.length == 2 && parameterTypes[1] == VisitorState.class) {
+          matchedTreeTypes.add(parameterTypes[0]);
+        }
+      }
+    }
+    Set<Tree.Kind> kinds = EnumSet.noneOf(Tree.Kind.class);
+    for (Tree.Kind kind : Tree.Kind.values()) {
+      if (matchedTreeTypes.contains(kind.asInterface())) {
+        kinds.add(kind);
+      }
+    }
+    return kinds;
+  }
+
   @Override
   public void analyze(TreePath tree, Context context, AnalysesConfig config,
       DescriptionListener listener) {
@@ -25,6 +25,8 @@ import java.util.ServiceLoader;
 /**
  * Utility class to generate a {@code TopLevelAnalysis} from error-prone BugCheckers.
  *
+ * <p>The checkers are run together in a single traversal of each compilation unit.
+ *
  * @author Louis Wasserman
  */
 public class ErrorProneTopLevelAnalysis {
@@ -65,7 +67,7 @@ public class ErrorProneTopLevelAnalysis {
     for (BugChecker checker : checkers) {
       analyses.add(create(checker, checker.maturity()));
     }
-    return SumTopLevelAnalysis.create(analyses.build());
+    return FusedLocalAnalysis.fuse(analyses.build());
   }
 
   /**
@@ -77,7 +79,7 @@ public class ErrorProneTopLevelAnalysis {
     for (BugChecker checker : checkers) {
       analyses.add(create(checker, MaturityLevel.MATURE));
     }
-    return SumTopLevelAnalysis.create(analyses.build());
+    return FusedLocalAnalysis.fuse(analyses.build());
   }
 
   private static final Function<Class<? extends BugChecker>, BugChecker> INSTANTIATE_CHECKER =
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.analysis;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.errorprone.BugPattern.SeverityLevel;
+import com.google.errorprone.BugPattern.Suppressibility;
+import com.google.errorprone.DescriptionListener;
+import com.google.errorprone.VisitorState;
+import com.google.errorprone.matchers.Description;
+import com.google.errorprone.util.ASTHelpers;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.TreePathScanner;
+import com.sun.tools.javac.util.Context;
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Runs several local analyses over a compilation unit in a single traversal, rather than one
+ * traversal per analysis as {@link LocalAnalysisAsTopLevelAnalysis} does.
+ *
+ * <p>Each node is dispatched only to the analyses that can match its kind, as in {@code
+ * ErrorProneScanner}.  Severity overrides and suppression annotations are handled for each
+ * analysis exactly as by {@link TopLevelAnalysisWithSeverity} and {@link
+ * LocalAnalysisAsTopLevelAnalysis}.  Results are reported in traversal order, rather than grouped
+ * by analysis.
+ */
+final class FusedLocalAnalysis implements TopLevelAnalysis {
+
+  /**
+   * Returns a sum of {@code analyses}, in which those that are local analyses with severities, as
+   * created by {@link ErrorProneTopLevelAnalysis}, are fused into a single traversal.
+   */
+  static TopLevelAnalysis fuse(Iterable<? extends TopLevelAnalysis> analyses) {
+    ImmutableList.Builder<TopLevelAnalysisWithSeverity> fusable = ImmutableList.builder();
+    ImmutableList.Builder<TopLevelAnalysis> result = ImmutableList.builder();
+    for (TopLevelAnalysis analysis : analyses) {
+      if (analysis instanceof TopLevelAnalysisWithSeverity
+          && ((TopLevelAnalysisWithSeverity) analysis).analysis()
+              instanceof LocalAnalysisAsTopLevelAnalysis) {
+        fusable.add((TopLevelAnalysisWithSeverity) analysis);
+      } else {
+        result.add(analysis);
+      }
+    }
+    ImmutableList<TopLevelAnalysisWithSeverity> fused = fusable.build();
+    if (!fused.isEmpty()) {
+      result.add(new FusedLocalAnalysis(fused));
+    }
+    return SumTopLevelAnalysis.create(result.build());
+  }
+
+  private final ImmutableList<TopLevelAnalysisWithSeverity> analyses;
+  private final ImmutableList<LocalAnalysis> localAnalyses;
+  // For each tree kind, the indices of the analyses that may match it.
+  private final int[][] dispatch;
+  // The custom suppression annotations of all the analyses.
+  private final ImmutableSet<Class<? extends Annotation>> customSuppressionAnnotations;
+
+  private FusedLocalAnalysis(ImmutableList<TopLevelAnalysisWithSeverity> analyses) {
+    this.analyses = analyses;
+    ImmutableList.Builder<LocalAnalysis> localAnalyses = ImmutableList.builder();
+    List<List<Integer>> byKind = new ArrayList<>();
+    for (int i = 0; i < Tree.Kind.values().length; i++) {
+      byKind.add(new ArrayList<Integer>());
+    }
+    Set<Class<? extends Annotation>> customSuppressionAnnotations = new LinkedHashSet<>();
+    for (int i = 0; i < analyses.size(); i++) {
+      LocalAnalysis local =
+          ((LocalAnalysisAsTopLevelAnalysis) analyses.get(i).analysis()).analysis();
+      localAnalyses.add(local);
+      // Analyses other than bug checkers may match any kind of tree.
+      Set<Tree.Kind> kinds = (local instanceof BugCheckerLocalAnalysis)
+          ? ((BugCheckerLocalAnalysis) local).matchedKinds()
+          : ImmutableSet.copyOf(Tree.Kind.values());
+      for (Tree.Kind kind : kinds) {
+        byKind.get(kind.ordinal()).add(i);
+      }
+      if (local.suppressibility() == Suppressibility.CUSTOM_ANNOTATION) {
+        customSuppressionAnnotations.addAll(local.customSuppressionAnnotations());
+      }
+    }
+    this.localAnalyses = localAnalyses.build();
+    this.dispatch = new int[byKind.size()][];
+    for (int k = 0; k < byKind.size(); k++) {
+      List<Integer> indices = byKind.get(k);
+      dispatch[k] = new int[indices.size()];
+      for (int j = 0; j < indices.size(); j++) {
+        dispatch[k][j] = indices.get(j);
+      }
+    }
+    this.customSuppressionAnnotations = ImmutableSet.copyOf(customSuppressionAnnotations);
+  }
+
+  @Override
+  public Set<String> knownAnalysisNames() {
+    ImmutableSet.Builder<String> builder = ImmutableSet.builder();
+    for (TopLevelAnalysis analysis : analyses) {
+      builder.addAll(analysis.knownAnalysisNames());
+    }
+    return builder.build();
+  }
+
+  @Override
+  public void analyze(CompilationUnitTree compilationUnit, final Context context,
+      final AnalysesConfig config, final DescriptionListener listener) {
+    final int size = analyses.size();
+    // Disabled analyses start out, and stay, suppressed.
+    final boolean[] suppressed = new boolean[size];
+    final DescriptionListener[] listeners = new DescriptionListener[size];
+    for (int i = 0; i < size; i++) {
+      final SeverityLevel severity = analyses.get(i).severity(config);
+      if (severity == null) {
+        suppressed[i] = true;
+        continue;
+      }
+      listeners[i] = new DescriptionListener() {
+        @Override
+        public void onDescribed(Description description) {
+          listener.onDescribed(description.applySeverityOverride(severity));
+        }
+      };
+    }
+    final VisitorState state = new VisitorState(context);
+
+    new TreePathScanner<Void, Void>() {
+      @Override
+      public Void scan(Tree tree, Void unused) {
+        if (tree == null) {
+          return null;
+        }
+        int[] newlySuppressed = suppress(tree, suppressed, state);
+        TreePath path = new TreePath(getCurrentPath(), tree);
+        for (int i : dispatch[tree.getKind().ordinal()]) {
+          if (!suppressed[i]) {
+            localAnalyses.get(i).analyze(path, context, config, listeners[i]);
+          }
+        }
+        super.scan(tree, null);
+        for (int i : newlySuppressed) {
+          suppressed[i] = false;
+        }
+        return null;
+      }
+    }.scan(compilationUnit, null);
+  }
+
+  private static final int[] NONE = {};
+
+  /**
+   * Marks the analyses that are suppressed at {@code tree} but were not already, and returns their
+   * indices.
+   */
+  private int[] suppress(Tree tree, boolean[] suppressed, VisitorState state) {
+    // Look up each annotation once, rather than once per analysis.
+    SuppressWarnings suppressWarnings = ASTHelpers.getAnnotation(tree, SuppressWarnings.class);
+    Set<Class<? extends Annotation>> presentCustomAnnotations = null;
+    for (Class<? extends Annotation> annotation : customSuppressionAnnotations) {
+      if (ASTHelpers.hasAnnotation(tree, annotation, state)) {
+        if (presentCustomAnnotations == null) {
+          presentCustomAnnotations = new LinkedHashSet<>();
+        }
+        presentCustomAnnotations.add(annotation);
+      }
+    }
+    if (suppressWarnings == null && presentCustomAnnotations == null) {
+      return NONE;
+    }
+    List<String> suppressedNames = suppressWarnings == null
+        ? Collections.<String>emptyList()
+        : Arrays.asList(suppressWarnings.value());
+    int[] result = new int[suppressed.length];
+    int count = 0;
+    for (int i = 0; i < suppressed.length; i++) {
+      if (!suppressed[i]
+          && suppressedBy(localAnalyses.get(i), suppressedNames, presentCustomAnnotations)) {
+        suppressed[i] = true;
+        result[count++] = i;
+      }
+    }
+    return Arrays.copyOf(result, count);
+  }
+
+  private static boolean suppressedBy(LocalAnalysis analysis, List<String> suppressedNames,
+      Set<Class<? extends Annotation>> presentCustomAnnotations) {
+    switch (analysis.suppressibility()) {
+      case UNSUPPRESSIBLE:
+        return false;
+      case CUSTOM_ANNOTATION:
+        return presentCustomAnnotations != null
+            && !Collections.disjoint(
+                analysis.customSuppressionAnnotations(), presentCustomAnnotations);
+      case SUPPRESS_WARNINGS:
+        return !Collections.disjoint(suppressedNames, analysis.allNames());
+      default:
+        throw new AssertionError();
+    }
+  }
+}
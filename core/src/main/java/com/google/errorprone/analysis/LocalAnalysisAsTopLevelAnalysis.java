@@ -77,12 +77,13 @@ public abstract class LocalAnalysisAsTopLevelAnalysis implements TopLevelAnalysi
     new TreePathScanner<Void, DescriptionListener>() {
       @Override
       public Void scan(Tree tree, DescriptionListener listener) {
-        if (!suppressed(tree, context)) {
-          analysis().analyze(getCurrentPath(), context, configuration, listener);
+        if (tree != null && !suppressed(tree, context)) {
+          analysis().analyze(
+              new TreePath(getCurrentPath(), tree), context, configuration, listener);
           super.scan(tree, listener);
         }
         return null;
       }
-    }.scan(new TreePath(compilationUnit), listener);
+    }.scan(compilationUnit, listener);
   }
 }
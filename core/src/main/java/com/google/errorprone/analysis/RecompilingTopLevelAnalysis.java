@@ -16,10 +16,15 @@ package com.google.errorprone.analysis;
 
 import com.google.auto.value.AutoValue;
 import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeSet;
+import com.google.common.collect.TreeRangeSet;
 import com.google.common.io.CharStreams;
 import com.google.errorprone.DescriptionListener;
 import com.google.errorprone.fixes.Fix;
 import com.google.errorprone.fixes.Replacement;
+import com.google.errorprone.fixes.Replacements;
 import com.google.errorprone.matchers.Description;
 import com.sun.source.tree.CompilationUnitTree;
 import com.sun.source.util.JavacTask;
@@ -31,11 +36,10 @@ import java.io.IOException;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.NavigableSet;
 import java.util.Set;
-import java.util.TreeSet;
 import javax.annotation.Nullable;
 import javax.tools.Diagnostic;
 import javax.tools.DiagnosticCollector;
@@ -49,6 +53,13 @@ import javax.tools.SimpleJavaFileObject;
  * Wrapper around a {@code TopLevelAnalysis} that filters analysis results to remove fixes that do
  * not compile.
  *
+ * <p>Rather than recompiling once per fix, the fixes suggested for a compilation unit are
+ * grouped into batches of fixes that do not touch the same source, and each batch is verified
+ * with a single recompilation.  Alternative fixes for the same finding are never batched
+ * together, since they are not meant to be applied together.  Only when a batch fails to compile
+ * is each of its fixes verified on its own, so a compilation unit whose fixes all compile costs
+ * one recompilation per batch.
+ *
  * @author Louis Wasserman
  */
 @AutoValue
@@ -69,76 +80,168 @@ public abstract class RecompilingTopLevelAnalysis implements TopLevelAnalysis {
   @Override
   public void analyze(final CompilationUnitTree compilationUnit, final Context context,
       AnalysesConfig configuration, final DescriptionListener listener) {
+    // Collect the descriptions for the whole compilation unit, so that their fixes can be
+    // verified together.
+    final List<Description> descriptions = new ArrayList<>();
     analysis().analyze(compilationUnit, context, configuration, new DescriptionListener() {
-
       @Override
       public void onDescribed(Description description) {
-        listener.onDescribed(description.filterFixes(new Predicate<Fix>() {
-          @Override
-          public boolean apply(Fix fix) {
-            return compiles(fix, (JCCompilationUnit) compilationUnit, context);
-          }
-        }));
+        descriptions.add(description);
       }
     });
+    if (descriptions.isEmpty()) {
+      return;
+    }
 
-    
+    Recompiler recompiler = new Recompiler((JCCompilationUnit) compilationUnit, context);
+    final Set<Fix> compiling = Collections.newSetFromMap(new IdentityHashMap<Fix, Boolean>());
+    for (List<Fix> batch : recompiler.batches(descriptions)) {
+      compiling.addAll(recompiler.compilingFixes(batch));
+    }
+    for (Description description : descriptions) {
+      listener.onDescribed(description.filterFixes(new Predicate<Fix>() {
+        @Override
+        public boolean apply(Fix fix) {
+          return compiling.contains(fix);
+        }
+      }));
+    }
   }
 
-  private enum ByStartPosition implements Comparator<Replacement> {
-    INSTANCE {
-      @Override
-      public int compare(Replacement o1, Replacement o2) {
-        return Integer.compare(o1.startPosition(), o2.startPosition());
+  /** Recompiles the original task with fixes applied to one of its compilation units. */
+  private static final class Recompiler {
+    private final JCCompilationUnit compilationUnit;
+    private final JavaFileManager fileManager;
+    private final List<JavaFileObject> fileObjects;
+    private final List<String> args;
+    private final List<String> classes;
+
+    Recompiler(JCCompilationUnit compilationUnit, Context context) {
+      JavacTaskImpl javacTask = (JavacTaskImpl) context.get(JavacTask.class);
+      if (javacTask == null) {
+        throw new IllegalArgumentException("No JavacTask in context.");
       }
-    };
-  }
+      this.compilationUnit = compilationUnit;
+      // Reuse the original task's file manager, and with it any cached classpath lookups.
+      this.fileManager = context.get(JavaFileManager.class);
+      this.fileObjects = fileObjectsForTask(javacTask);
+      this.args = asListOrNull(argsForTask(javacTask));
+      this.classes = asListOrNull(classesForTask(javacTask));
+    }
 
-  private static boolean compiles(Fix fix, JCCompilationUnit compilationUnit, Context context) {
-    final NavigableSet<Replacement> replacements = new TreeSet<>(ByStartPosition.INSTANCE);
-    replacements.addAll(fix.getReplacements(compilationUnit.endPositions));
-    JavaFileObject modifiedFile = compilationUnit.getSourceFile();
+    /**
+     * Groups the fixes of {@code descriptions} into batches in which no two fixes replace
+     * overlapping or adjacent source, so that each batch can be applied at once, and no two fixes
+     * are alternatives for the same finding.
+     */
+    List<List<Fix>> batches(List<Description> descriptions) {
+      List<List<Fix>> batches = new ArrayList<>();
+      List<RangeSet<Integer>> batchRanges = new ArrayList<>();
+      for (Description description : descriptions) {
+        // The index of the first batch that may hold the description's next fix.
+        int first = 0;
+        for (Fix fix : description.getFixes()) {
+          Set<Replacement> replacements = fix.getReplacements(compilationUnit.endPositions);
+          int i = first;
+          while (i < batches.size() && overlaps(batchRanges.get(i), replacements)) {
+            i++;
+          }
+          if (i == batches.size()) {
+            batches.add(new ArrayList<Fix>());
+            batchRanges.add(TreeRangeSet.<Integer>create());
+          }
+          batches.get(i).add(fix);
+          for (Replacement replacement : replacements) {
+            batchRanges.get(i).add(closed(replacement));
+          }
+          first = i + 1;
+        }
+      }
+      return batches;
+    }
 
-    if (replacements.isEmpty()) {
-      return true;
+    private static boolean overlaps(RangeSet<Integer> ranges, Set<Replacement> replacements) {
+      for (Replacement replacement : replacements) {
+        if (!ranges.subRangeSet(closed(replacement)).isEmpty()) {
+          return true;
+        }
+      }
+      return false;
     }
 
-    JavacTaskImpl javacTask = (JavacTaskImpl) context.get(JavacTask.class);
-    if (javacTask == null) {
-      throw new IllegalArgumentException("No JavacTask in context.");
+    // Closed ranges, so that insertions at the same position, or at the boundary of another
+    // replacement, are treated as overlapping.
+    private static Range<Integer> closed(Replacement replacement) {
+      return Range.closed(replacement.startPosition(), replacement.endPosition());
     }
-    List<JavaFileObject> fileObjects = new ArrayList<>(fileObjectsForTask(javacTask));
-    for (int i = 0; i < fileObjects.size(); i++) {
-      final JavaFileObject oldFile = fileObjects.get(i);
-      if (modifiedFile.toUri().equals(oldFile.toUri())) {
-        fileObjects.set(i, new SimpleJavaFileObject(modifiedFile.toUri(), Kind.SOURCE) {
-          @Override
-          public CharSequence getCharContent(boolean ignoreEncodingErrors) throws IOException {
-            StringBuilder builder = new StringBuilder(oldFile.getCharContent(ignoreEncodingErrors));
-            for (Replacement replacement : replacements.descendingSet()) {
-              builder.replace(replacement.startPosition(), replacement.endPosition(),
-                  replacement.replaceWith());
-            }
-            return builder;
-          }
-        });
-        break;
+
+    /**
+     * Returns the fixes in {@code batch} that compile, verifying each fix on its own only if the
+     * fixes do not all compile together.  Fixes are not verified in smaller combinations, since a
+     * fix that only compiles together with another finding's fix must not be suggested on its own.
+     */
+    List<Fix> compilingFixes(List<Fix> batch) {
+      if (compiles(batch)) {
+        return batch;
       }
+      if (batch.size() == 1) {
+        return ImmutableList.of();
+      }
+      List<Fix> result = new ArrayList<>();
+      for (Fix fix : batch) {
+        if (compiles(ImmutableList.of(fix))) {
+          result.add(fix);
+        }
+      }
+      return result;
     }
-    JavaCompiler compiler = JavacTool.create();
-    DiagnosticCollector<JavaFileObject> diagnosticListener = new DiagnosticCollector<>();
-    JavacTask newTask = (JavacTask) compiler.getTask(CharStreams.nullWriter(),
-        context.get(JavaFileManager.class),
-        diagnosticListener,
-        asListOrNull(argsForTask(javacTask)),
-        asListOrNull(classesForTask(javacTask)),
-        fileObjects);
-    try {
-      newTask.analyze();
-    } catch (Throwable e) {
-      return false;
+
+    private boolean compiles(List<Fix> fixes) {
+      final Replacements replacements = new Replacements();
+      for (Fix fix : fixes) {
+        for (Replacement replacement : fix.getReplacements(compilationUnit.endPositions)) {
+          replacements.add(replacement);
+        }
+      }
+      if (replacements.isEmpty()) {
+        return true;
+      }
+
+      JavaFileObject modifiedFile = compilationUnit.getSourceFile();
+      List<JavaFileObject> newFileObjects = new ArrayList<>(fileObjects);
+      for (int i = 0; i < newFileObjects.size(); i++) {
+        final JavaFileObject oldFile = newFileObjects.get(i);
+        if (modifiedFile.toUri().equals(oldFile.toUri())) {
+          newFileObjects.set(i, new SimpleJavaFileObject(modifiedFile.toUri(), Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) throws IOException {
+              StringBuilder builder =
+                  new StringBuilder(oldFile.getCharContent(ignoreEncodingErrors));
+              for (Replacement replacement : replacements.descending()) {
+                builder.replace(replacement.startPosition(), replacement.endPosition(),
+                    replacement.replaceWith());
+              }
+              return builder;
+            }
+          });
+          break;
+        }
+      }
+      JavaCompiler compiler = JavacTool.create();
+      DiagnosticCollector<JavaFileObject> diagnosticListener = new DiagnosticCollector<>();
+      JavacTask newTask = (JavacTask) compiler.getTask(CharStreams.nullWriter(),
+          fileManager,
+          diagnosticListener,
+          args,
+          classes,
+          newFileObjects);
+      try {
+        newTask.analyze();
+      } catch (Throwable e) {
+        return false;
+      }
+      return countErrors(diagnosticListener) == 0;
     }
-    return countErrors(diagnosticListener) == 0;
   }
 
   private static int countErrors(DiagnosticCollector<JavaFileObject> diagnosticCollector) {
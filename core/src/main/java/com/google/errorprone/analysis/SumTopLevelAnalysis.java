@@ -25,6 +25,10 @@ import java.util.Set;
 /**
  * Represents a combination of multiple top-level analyses.
  *
+ * <p>The analyses run one after another on the calling thread, even those that don't modify the
+ * compilation unit: every analysis shares the compilation's javac state, such as symbol
+ * completion, the {@code Types} caches and the {@code Log}, none of which is thread-safe.
+ *
  * @author Louis Wasserman
  */
 @AutoValue
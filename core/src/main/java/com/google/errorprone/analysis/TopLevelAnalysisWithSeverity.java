@@ -22,6 +22,7 @@ import com.google.errorprone.matchers.Description;
 import com.sun.source.tree.CompilationUnitTree;
 import com.sun.tools.javac.util.Context;
 import java.util.Set;
+import javax.annotation.Nullable;
 
 /**
  * Wraps a {@code TopLevelAnalysis} to handle severity levels, taking into account
@@ -56,7 +57,24 @@ public abstract class TopLevelAnalysisWithSeverity implements TopLevelAnalysis {
   @Override
   public void analyze(CompilationUnitTree compilationUnit, Context context,
       AnalysesConfig config, final DescriptionListener listener) {
-    final SeverityLevel severity;
+    final SeverityLevel severity = severity(config);
+    if (severity != null) {
+      analysis().analyze(compilationUnit, context, config, new DescriptionListener() {
+        @Override
+        public void onDescribed(Description description) {
+          listener.onDescribed(description.applySeverityOverride(severity));
+        }
+      });
+    }
+  }
+
+  /**
+   * Returns the severity of the analysis's results under {@code config}, or null if the analysis
+   * is disabled.
+   */
+  @Nullable
+  SeverityLevel severity(AnalysesConfig config) {
+    SeverityLevel severity;
     boolean on = onByDefault();
     Severity optionsSeverity = config.errorProneOptions().getSeverityMap().get(canonicalName());
     if (optionsSeverity != null) {
@@ -91,13 +109,6 @@ public abstract class TopLevelAnalysisWithSeverity implements TopLevelAnalysis {
     } else {
       severity = defaultSeverity();
     }
-    if (on) {
-      analysis().analyze(compilationUnit, context, config, new DescriptionListener() {
-        @Override
-        public void onDescribed(Description description) {
-          listener.onDescribed(description.applySeverityOverride(severity));
-        }
-      });
-    }
+    return on ? severity : null;
   }
 }
@@ -26,6 +26,7 @@ import com.google.errorprone.matchers.Description;
 import com.sun.tools.javac.tree.EndPosTable;
 import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -69,8 +70,9 @@ public final class DescriptionBasedDiff implements DescriptionListener, Diff {
   @Override
   public void onDescribed(Description description) {
     // Use only first (most likely) suggested fix
-    if (description.fixes.size() > 0) {
-      handleFix(description.fixes.get(0));
+    List<Fix> fixes = description.getFixes();
+    if (fixes.size() > 0) {
+      handleFix(fixes.get(0));
     }
   }
 
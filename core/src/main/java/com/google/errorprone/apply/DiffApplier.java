@@ -15,19 +15,21 @@
 package com.google.errorprone.apply;
 
 import com.google.common.base.Preconditions;
-import com.google.common.base.Stopwatch;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.AbstractService;
 import java.io.IOException;
 import java.util.Set;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -39,17 +41,33 @@ import java.util.logging.Logger;
  */
 public class DiffApplier extends AbstractService {
   private static final Logger logger = Logger.getLogger(DiffApplier.class.getName());
+
+  /** The number of diffs that may be queued per worker before {@link #put} blocks. */
+  static final int QUEUED_DIFFS_PER_WORKER = 50;
+
+  /** The number of files between progress reports. */
+  static final int PROGRESS_INTERVAL = 100;
+
+  /**
+   * The number of files between flushes of the destination, so that changes become visible as the
+   * applier makes progress, and a crash loses at most this many files.
+   */
+  static final int FLUSH_INTERVAL = 1000;
+
   private final ExecutorService workerService;
+  private final Semaphore queuedDiffs;
   private final Set<String> refactoredPaths;
   private final Set<String> diffsFailedPaths;
   private final FileSource source;
   private final FileDestination destination;
-  private final AtomicInteger completedFiles;
-  private final Stopwatch stopwatch;
+  private final DiffApplierMetrics metrics;
 
   // the number of diffs in flight, plus 1 if the service is in the RUNNING state
   private final AtomicInteger runState = new AtomicInteger();
 
+  // the first failure to flush the destination, which fails the service when it stops
+  private final AtomicReference<Exception> flushFailure = new AtomicReference<>();
+
   public DiffApplier(int diffParallelism, FileSource source, FileDestination destination) {
     Preconditions.checkNotNull(source);
     Preconditions.checkNotNull(destination);
@@ -57,22 +75,37 @@ public class DiffApplier extends AbstractService {
     this.refactoredPaths = Sets.newConcurrentHashSet();
     this.source = source;
     this.destination = destination;
-    this.completedFiles = new AtomicInteger(0);
-    this.stopwatch = Stopwatch.createUnstarted();
-    // configure a bounded queue and a rejectedexecutionpolicy.
-    // In this case CallerRuns may be appropriate.
-    this.workerService = new ThreadPoolExecutor(
-        0,
+    // Rather than bounding the work queue and running rejected diffs on the caller, which makes
+    // the producing compilation do file I/O, bound the number of diffs in flight and make the
+    // producer wait for one to complete.
+    this.queuedDiffs = new Semaphore(diffParallelism * QUEUED_DIFFS_PER_WORKER);
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(
+        diffParallelism,
         diffParallelism,
         5,
         TimeUnit.SECONDS,
-        new ArrayBlockingQueue<Runnable>(50),
-        new ThreadPoolExecutor.CallerRunsPolicy());
+        new LinkedBlockingQueue<Runnable>());
+    executor.allowCoreThreadTimeOut(true);
+    this.workerService = executor;
+    this.metrics = new DiffApplierMetrics(executor, queuedDiffs, source, destination);
+  }
+
+  /** Returns the applier's progress and throughput metrics, which are updated as it runs. */
+  public DiffApplierMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Registers a listener to be called with the applier's metrics as it makes progress.  Listeners
+   * are called on worker threads, so should return quickly.
+   */
+  public void addMetricsListener(DiffApplierMetrics.Listener listener) {
+    metrics.addListener(Preconditions.checkNotNull(listener));
   }
 
   @Override
   protected void doStart() {
-    stopwatch.start();
+    metrics.start();
     runState.incrementAndGet();
     notifyStarted();
   }
@@ -85,14 +118,16 @@ public class DiffApplier extends AbstractService {
   private final void decrementTasks() {
     if (runState.decrementAndGet() == 0) {
       workerService.shutdown();
-      try {
-        destination.flush();
+      flushDestination();
+      metrics.stop();
+      if (flushFailure.get() == null) {
         notifyStopped();
-      } catch (Exception e) {
-        notifyFailed(e);
+      } else {
+        notifyFailed(flushFailure.get());
       }
-      logger.log(Level.INFO,
-        String.format("Completed %d files in %s", completedFiles.get(), stopwatch));
+      logger.log(Level.INFO, String.format("Completed %d files in %d ms: %s",
+          metrics.filesCompleted(), metrics.elapsed(TimeUnit.MILLISECONDS), metrics));
+      metrics.notifyListeners();
       if (!diffsFailedPaths.isEmpty()) {
         logger.log(Level.SEVERE, String.format("Diffs failed to apply to %d files: %s",
             diffsFailedPaths.size(), Iterables.limit(diffsFailedPaths, 30)));
@@ -100,7 +135,20 @@ public class DiffApplier extends AbstractService {
     }
   }
 
-  private final class Task implements Runnable {
+  /** Flushes the destination, recording any failure to fail the service with when it stops. */
+  private void flushDestination() {
+    long start = System.nanoTime();
+    try {
+      destination.flush();
+    } catch (IOException | RuntimeException e) {
+      logger.log(Level.SEVERE, "Failed to flush refactored files", e);
+      flushFailure.compareAndSet(null, e);
+    } finally {
+      metrics.recordFlush(System.nanoTime() - start);
+    }
+  }
+
+  private final class Task implements Callable<Void> {
     private final Diff diff;
 
     Task(Diff diff) {
@@ -108,29 +156,50 @@ public class DiffApplier extends AbstractService {
     }
 
     @Override
-    public void run() {
+    public Void call() throws IOException, DiffNotApplicableException {
       try {
+        long start = System.nanoTime();
         SourceFile file = source.readFile(diff.getRelevantFileName());
+        long read = System.nanoTime();
+        metrics.recordRead(read - start);
         diff.applyDifferences(file);
+        long applied = System.nanoTime();
+        metrics.recordApply(applied - read);
         destination.writeFile(file);
+        long written = System.nanoTime();
+        metrics.recordWrite(written - applied);
 
-        int completed = completedFiles.incrementAndGet();
-        if (completed % 100 == 0) {
-          logger.log(Level.INFO,
-                     String.format("Completed %d files in %s", completed, stopwatch));
+        long completed = metrics.recordCompleted(written - start);
+        if (completed % PROGRESS_INTERVAL == 0) {
+          logger.log(Level.INFO, String.format("Completed %d files in %d ms (%.1f files/s)",
+              completed, metrics.elapsed(TimeUnit.MILLISECONDS), metrics.filesPerSecond()));
+          metrics.notifyListeners();
+        }
+        if (completed % FLUSH_INTERVAL == 0) {
+          flushDestination();
         }
       } catch (IOException | DiffNotApplicableException e) {
         logger.log(Level.WARNING, "Failed to apply diff to file " + diff.getRelevantFileName(),
                    e);
         diffsFailedPaths.add(diff.getRelevantFileName());
+        metrics.recordFailure(e);
+        throw e;
       } finally {
+        queuedDiffs.release();
         decrementTasks();
       }
+      return null;
     }
   }
 
+  /**
+   * Queues {@code diff} to be applied, blocking while too many diffs are already queued.  Returns
+   * a future that fails if the diff can't be applied, or {@code null} if a diff for the same file
+   * has already been queued.
+   */
   public Future<?> put(Diff diff) {
     if (refactoredPaths.add(diff.getRelevantFileName())) {
+      queuedDiffs.acquireUninterruptibly();
       runState.incrementAndGet();
       return workerService.submit(new Task(diff));
     }
@@ -0,0 +1,280 @@
+/*
+ * Copyright 2016 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.apply;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.util.concurrent.AtomicLongMap;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Progress and throughput metrics for a {@link DiffApplier}.
+ *
+ * <p>Metrics may be polled at any time, or observed by registering a {@link Listener}.  The time
+ * spent reading, applying, writing and flushing diffs is tracked separately, so a slow run can be
+ * diagnosed as bound by disk or CPU; the number of producers blocked waiting for queue space,
+ * together with the queue depth and number of diffs being applied, shows whether the applier is
+ * keeping up.
+ */
+public final class DiffApplierMetrics {
+
+  /** Receives metrics as a {@link DiffApplier} makes progress. */
+  public interface Listener {
+    /**
+     * Called on a worker thread every {@link DiffApplier#PROGRESS_INTERVAL} files, and once more
+     * when the applier terminates.
+     */
+    void onProgress(DiffApplierMetrics metrics);
+  }
+
+  /**
+   * The number of buckets in the latency histogram.  Bucket 0 counts files applied in under 1ms,
+   * bucket {@code i} those applied in [2<sup>i-1</sup>, 2<sup>i</sup>) ms, and the last bucket
+   * everything slower.
+   */
+  static final int LATENCY_BUCKETS = 20;
+
+  private final ThreadPoolExecutor executor;
+  private final Semaphore queuedDiffs;
+  private final FileSource source;
+  private final FileDestination destination;
+  private final Stopwatch stopwatch = Stopwatch.createUnstarted();
+  private final AtomicLong filesCompleted = new AtomicLong();
+  private final AtomicLong readNanos = new AtomicLong();
+  private final AtomicLong applyNanos = new AtomicLong();
+  private final AtomicLong writeNanos = new AtomicLong();
+  private final AtomicLong flushNanos = new AtomicLong();
+  private final AtomicLongArray latencyBuckets = new AtomicLongArray(LATENCY_BUCKETS);
+  private final AtomicLongMap<String> failuresByType = AtomicLongMap.create();
+  private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+
+  DiffApplierMetrics(
+      ThreadPoolExecutor executor,
+      Semaphore queuedDiffs,
+      FileSource source,
+      FileDestination destination) {
+    this.executor = executor;
+    this.queuedDiffs = queuedDiffs;
+    this.source = source;
+    this.destination = destination;
+  }
+
+  void start() {
+    stopwatch.start();
+  }
+
+  void stop() {
+    if (stopwatch.isRunning()) {
+      stopwatch.stop();
+    }
+  }
+
+  void addListener(Listener listener) {
+    listeners.add(listener);
+  }
+
+  void notifyListeners() {
+    for (Listener listener : listeners) {
+      listener.onProgress(this);
+    }
+  }
+
+  void recordRead(long nanos) {
+    readNanos.addAndGet(nanos);
+  }
+
+  void recordApply(long nanos) {
+    applyNanos.addAndGet(nanos);
+  }
+
+  void recordWrite(long nanos) {
+    writeNanos.addAndGet(nanos);
+  }
+
+  void recordFlush(long nanos) {
+    flushNanos.addAndGet(nanos);
+  }
+
+  /** Records a successfully applied file, returning the number applied so far. */
+  long recordCompleted(long nanos) {
+    latencyBuckets.incrementAndGet(latencyBucket(nanos));
+    return filesCompleted.incrementAndGet();
+  }
+
+  void recordFailure(Exception e) {
+    failuresByType.incrementAndGet(e.getClass().getName());
+  }
+
+  static int latencyBucket(long nanos) {
+    long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+    int bucket = 64 - Long.numberOfLeadingZeros(millis);
+    return Math.min(bucket, LATENCY_BUCKETS - 1);
+  }
+
+  /** The time since the applier started. */
+  public long elapsed(TimeUnit unit) {
+    return stopwatch.elapsed(unit);
+  }
+
+  /** The number of files whose diffs have been applied and written. */
+  public long filesCompleted() {
+    return filesCompleted.get();
+  }
+
+  /** The number of files whose diffs could not be applied. */
+  public long filesFailed() {
+    return failuresByType.sum();
+  }
+
+  /** The number of files completed per second since the applier started. */
+  public double filesPerSecond() {
+    long millis = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+    return millis == 0 ? 0 : filesCompleted.get() * 1000.0 / millis;
+  }
+
+  /**
+   * The number of bytes of source read from the file system by an {@link FsFileSource}, or 0 if
+   * the applier's source doesn't read files.
+   */
+  public long bytesRead() {
+    return source instanceof FsFileSource ? ((FsFileSource) source).bytesRead() : 0;
+  }
+
+  /**
+   * The number of bytes of refactored source written to the file system by an {@link
+   * FsFileDestination}, or 0 if the applier's destination doesn't write files.
+   */
+  public long bytesWritten() {
+    return destination instanceof FsFileDestination
+        ? ((FsFileDestination) destination).bytesWritten()
+        : 0;
+  }
+
+  /** The total time workers have spent reading files. */
+  public long readTime(TimeUnit unit) {
+    return unit.convert(readNanos.get(), TimeUnit.NANOSECONDS);
+  }
+
+  /** The total time workers have spent applying diffs to file contents. */
+  public long applyTime(TimeUnit unit) {
+    return unit.convert(applyNanos.get(), TimeUnit.NANOSECONDS);
+  }
+
+  /** The total time workers have spent writing files. */
+  public long writeTime(TimeUnit unit) {
+    return unit.convert(writeNanos.get(), TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * The total time spent flushing the destination, e.g. syncing written files to disk and moving
+   * them into place.
+   */
+  public long flushTime(TimeUnit unit) {
+    return unit.convert(flushNanos.get(), TimeUnit.NANOSECONDS);
+  }
+
+  /** The number of diffs waiting for a worker. */
+  public int queueDepth() {
+    return executor.getQueue().size();
+  }
+
+  /** The number of diffs currently being applied. */
+  public int inFlight() {
+    return executor.getActiveCount();
+  }
+
+  /** The number of producers blocked in {@link DiffApplier#put} waiting for queue space. */
+  public int blockedProducers() {
+    return queuedDiffs.getQueueLength();
+  }
+
+  /**
+   * The number of files applied within each latency bucket, keyed by the bucket's exclusive upper
+   * bound in milliseconds.  The last bucket, counting everything slower, is keyed by
+   * {@link Long#MAX_VALUE}.
+   */
+  public ImmutableSortedMap<Long, Long> latencyHistogram() {
+    ImmutableSortedMap.Builder<Long, Long> result = ImmutableSortedMap.naturalOrder();
+    for (int i = 0; i < LATENCY_BUCKETS; i++) {
+      long upperBound = (i == LATENCY_BUCKETS - 1) ? Long.MAX_VALUE : 1L << i;
+      result.put(upperBound, latencyBuckets.get(i));
+    }
+    return result.build();
+  }
+
+  /** The number of files that failed, keyed by the class name of the exception thrown. */
+  public ImmutableMap<String, Long> failuresByType() {
+    return ImmutableMap.copyOf(failuresByType.asMap());
+  }
+
+  /** Writes a summary of the metrics to {@code out} as a JSON object. */
+  public void writeJson(Appendable out) throws IOException {
+    out.append("{\n");
+    out.append(String.format("  \"elapsedMillis\": %d,\n", elapsed(TimeUnit.MILLISECONDS)));
+    out.append(String.format("  \"filesCompleted\": %d,\n", filesCompleted()));
+    out.append(String.format("  \"filesFailed\": %d,\n", filesFailed()));
+    out.append(String.format(Locale.ROOT, "  \"filesPerSecond\": %.2f,\n", filesPerSecond()));
+    out.append(String.format("  \"bytesRead\": %d,\n", bytesRead()));
+    out.append(String.format("  \"bytesWritten\": %d,\n", bytesWritten()));
+    out.append(String.format("  \"readMillis\": %d,\n", readTime(TimeUnit.MILLISECONDS)));
+    out.append(String.format("  \"applyMillis\": %d,\n", applyTime(TimeUnit.MILLISECONDS)));
+    out.append(String.format("  \"writeMillis\": %d,\n", writeTime(TimeUnit.MILLISECONDS)));
+    out.append(String.format("  \"flushMillis\": %d,\n", flushTime(TimeUnit.MILLISECONDS)));
+    out.append(String.format("  \"queueDepth\": %d,\n", queueDepth()));
+    out.append(String.format("  \"inFlight\": %d,\n", inFlight()));
+    out.append(String.format("  \"blockedProducers\": %d,\n", blockedProducers()));
+    out.append("  \"latencyHistogram\": {");
+    String separator = "";
+    for (Map.Entry<Long, Long> bucket : latencyHistogram().entrySet()) {
+      String label = bucket.getKey() == Long.MAX_VALUE
+          ? ">=" + (1L << (LATENCY_BUCKETS - 2)) + "ms"
+          : "<" + bucket.getKey() + "ms";
+      out.append(String.format("%s\"%s\": %d", separator, label, bucket.getValue()));
+      separator = ", ";
+    }
+    out.append("},\n");
+    out.append("  \"failuresByType\": {");
+    separator = "";
+    for (Map.Entry<String, Long> failure : failuresByType().entrySet()) {
+      // exception class names need no escaping
+      out.append(String.format("%s\"%s\": %d", separator, failure.getKey(), failure.getValue()));
+      separator = ", ";
+    }
+    out.append("}\n");
+    out.append("}\n");
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder result = new StringBuilder();
+    try {
+      writeJson(result);
+    } catch (IOException e) {
+      throw new AssertionError(e);
+    }
+    return result.toString();
+  }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright 2016 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.apply;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeMap;
+import com.google.common.collect.TreeRangeMap;
+import com.google.errorprone.DescriptionListener;
+import com.google.errorprone.fixes.Fix;
+import com.google.errorprone.fixes.PrecomputedFix;
+import com.google.errorprone.fixes.Replacement;
+import com.google.errorprone.matchers.Description;
+import com.google.errorprone.matchers.Finding;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Merges the suggested fixes of all the findings in a compilation unit into a single fix, so that
+ * fixes from several checks can be applied after one compilation.
+ *
+ * <p>Findings are considered in a deterministic order: by the priority of the reporting check,
+ * then in the order they were reported.  For each finding, the first of its fixes that is
+ * compatible with the fixes already accepted is accepted; if none is, the finding is dropped, to
+ * be fixed by a later compilation.  Fixes are compatible if their replacements don't overlap and
+ * they don't disagree on whether to add or remove an import.  Before comparing, each replacement
+ * is trimmed to the text it actually changes, so a fix that rewrites a whole expression but only
+ * changes part of it doesn't conflict with an edit nested inside the rest of the expression.
+ * Identical replacements suggested by several findings are applied once.
+ */
+public final class FixMerger implements DescriptionListener {
+
+  /** The outcome of merging a compilation unit's fixes. */
+  @AutoValue
+  public abstract static class Result {
+    /** A fix making all the accepted replacements and import changes. */
+    public abstract Fix fix();
+
+    /** The findings whose fixes were accepted. */
+    public abstract ImmutableList<Finding> applied();
+
+    /** The findings none of whose fixes were compatible with those accepted. */
+    public abstract ImmutableList<Finding> dropped();
+  }
+
+  /**
+   * Creates a merger for the findings in {@code compilationUnit}.  Fixes for the checks named in
+   * {@code checkPriority} are preferred in the order given, over those of all other checks.
+   * Findings of equal priority are considered in the order they were reported.
+   */
+  public static FixMerger create(JCCompilationUnit compilationUnit, List<String> checkPriority) {
+    return new FixMerger(compilationUnit, ImmutableList.copyOf(checkPriority));
+  }
+
+  private final JCCompilationUnit compilationUnit;
+  private final ImmutableList<String> checkPriority;
+  // Findings rather than descriptions, so the trees they describe aren't retained.
+  private final List<Finding> findings = new ArrayList<>();
+
+  private FixMerger(JCCompilationUnit compilationUnit, ImmutableList<String> checkPriority) {
+    this.compilationUnit = checkNotNull(compilationUnit);
+    this.checkPriority = checkPriority;
+  }
+
+  @Override
+  public void onDescribed(Description description) {
+    if (!description.getFixes().isEmpty()) {
+      findings.add(Finding.create(description, compilationUnit));
+    }
+  }
+
+  /** Returns whether no findings with fixes have been reported. */
+  public boolean isEmpty() {
+    return findings.isEmpty();
+  }
+
+  public Result merge() {
+    CharSequence source;
+    try {
+      source = compilationUnit.getSourceFile().getCharContent(false);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    List<Finding> ordered = new ArrayList<>(findings);
+    // a stable sort, so findings of equal priority keep the order in which they were reported
+    Collections.sort(ordered, new Comparator<Finding>() {
+      @Override
+      public int compare(Finding left, Finding right) {
+        return Integer.compare(priority(left.checkName()), priority(right.checkName()));
+      }
+    });
+    Accepted accepted = new Accepted();
+    ImmutableList.Builder<Finding> applied = ImmutableList.builder();
+    ImmutableList.Builder<Finding> dropped = ImmutableList.builder();
+    for (Finding finding : ordered) {
+      if (acceptFirstCompatible(finding.fixes(), source, accepted)) {
+        applied.add(finding);
+      } else {
+        dropped.add(finding);
+      }
+    }
+    return new AutoValue_FixMerger_Result(accepted.toFix(), applied.build(), dropped.build());
+  }
+
+  private int priority(String checkName) {
+    int index = checkPriority.indexOf(checkName);
+    return index >= 0 ? index : checkPriority.size();
+  }
+
+  private boolean acceptFirstCompatible(List<Fix> fixes, CharSequence source, Accepted accepted) {
+    for (Fix fix : fixes) {
+      List<Replacement> replacements = new ArrayList<>();
+      for (Replacement replacement : fix.getReplacements(compilationUnit.endPositions)) {
+        Replacement trimmed = trim(replacement, source);
+        if (trimmed != null) {
+          replacements.add(trimmed);
+        }
+      }
+      if (accepted.isCompatible(replacements, fix)) {
+        accepted.add(replacements, fix);
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the part of {@code replacement} that changes {@code source}, without any unchanged
+   * text at either end, or {@code null} if it changes nothing.
+   */
+  static Replacement trim(Replacement replacement, CharSequence source) {
+    int start = replacement.startPosition();
+    int end = replacement.endPosition();
+    String replaceWith = replacement.replaceWith();
+    if (end > source.length()) {
+      return replacement;
+    }
+    int prefix = 0;
+    int maxLength = Math.min(end - start, replaceWith.length());
+    while (prefix < maxLength && source.charAt(start + prefix) == replaceWith.charAt(prefix)) {
+      prefix++;
+    }
+    int suffix = 0;
+    while (suffix < maxLength - prefix
+        && source.charAt(end - suffix - 1)
+            == replaceWith.charAt(replaceWith.length() - suffix - 1)) {
+      suffix++;
+    }
+    if (start + prefix == end - suffix && prefix + suffix == replaceWith.length()) {
+      return null;
+    }
+    if (prefix == 0 && suffix == 0) {
+      return replacement;
+    }
+    return Replacement.create(
+        start + prefix,
+        end - suffix,
+        replaceWith.substring(prefix, replaceWith.length() - suffix));
+  }
+
+  /** The replacements and import changes accepted so far. */
+  private static final class Accepted {
+    private final RangeMap<Integer, Replacement> replacements = TreeRangeMap.create();
+    // insertions, which have empty ranges, keyed by position
+    private final TreeMap<Integer, String> insertions = new TreeMap<>();
+    private final Set<String> importsToAdd = new LinkedHashSet<>();
+    private final Set<String> importsToRemove = new LinkedHashSet<>();
+
+    boolean isCompatible(List<Replacement> candidate, Fix fix) {
+      for (Replacement replacement : candidate) {
+        if (replacement.range().isEmpty()) {
+          // an insertion conflicts with a replacement it falls strictly inside of
+          Map.Entry<Range<Integer>, Replacement> enclosing =
+              replacements.getEntry(replacement.startPosition());
+          if (enclosing != null
+              && enclosing.getKey().lowerEndpoint() < replacement.startPosition()) {
+            return false;
+          }
+        } else {
+          Collection<Replacement> overlapping =
+              replacements.subRangeMap(replacement.range()).asMapOfRanges().values();
+          for (Replacement existing : overlapping) {
+            if (!existing.equals(replacement)) {
+              return false;
+            }
+          }
+          // and a replacement conflicts with any insertion strictly inside it
+          if (!insertions
+              .subMap(replacement.startPosition(), false, replacement.endPosition(), false)
+              .isEmpty()) {
+            return false;
+          }
+        }
+      }
+      return Collections.disjoint(fix.getImportsToAdd(), importsToRemove)
+          && Collections.disjoint(fix.getImportsToRemove(), importsToAdd);
+    }
+
+    void add(List<Replacement> candidate, Fix fix) {
+      for (Replacement replacement : candidate) {
+        if (replacement.range().isEmpty()) {
+          String existing = insertions.get(replacement.startPosition());
+          if (existing == null) {
+            insertions.put(replacement.startPosition(), replacement.replaceWith());
+          } else if (!existing.equals(replacement.replaceWith())) {
+            insertions.put(replacement.startPosition(), existing + replacement.replaceWith());
+          }
+        } else {
+          replacements.put(replacement.range(), replacement);
+        }
+      }
+      importsToAdd.addAll(fix.getImportsToAdd());
+      importsToRemove.addAll(fix.getImportsToRemove());
+    }
+
+    Fix toFix() {
+      ImmutableSet.Builder<Replacement> result = ImmutableSet.builder();
+      result.addAll(replacements.asMapOfRanges().values());
+      for (Map.Entry<Integer, String> insertion : insertions.entrySet()) {
+        result.add(
+            Replacement.create(insertion.getKey(), insertion.getKey(), insertion.getValue()));
+      }
+      return PrecomputedFix.create(result.build(), importsToAdd, importsToRemove);
+    }
+  }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2016 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.apply;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link FileDestination} that writes files back to the file system in place, resolving paths
+ * against a root directory.
+ *
+ * <p>Each file is written to a temporary file alongside it.  On {@link #flush}, all the temporary
+ * files written since the last flush are synced to disk together, then atomically moved over the
+ * files they replace, so a file is never left partially written.  Changes only become visible on
+ * flush, so callers writing many files should flush periodically, as {@link DiffApplier} does; if
+ * the process dies before a flush, the temporary files written since the last one, named like
+ * {@code .Foo.java1234.tmp}, are left behind.  If writing or flushing fails, the temporary files
+ * of the files that were not replaced are deleted.  Files are encoded in UTF-8; a file that can't
+ * be, e.g. because it contains an unpaired surrogate, fails to be written.
+ *
+ * <p>This class is thread-safe.
+ */
+public final class FsFileDestination implements FileDestination {
+
+  private final Path rootPath;
+  private final AtomicLong bytesWritten = new AtomicLong();
+
+  // The temporary file written for each file since the last flush.
+  private final Map<Path, Path> pending = new LinkedHashMap<>();
+
+  public FsFileDestination(Path rootPath) {
+    this.rootPath = checkNotNull(rootPath);
+  }
+
+  @Override
+  public void writeFile(SourceFile file) throws IOException {
+    Path target = rootPath.resolve(file.getPath()).toAbsolutePath();
+    Path temp = Files.createTempFile(target.getParent(), "." + target.getFileName(), ".tmp");
+    try {
+      try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+        ByteBuffer bytes = UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT)
+            .encode(CharBuffer.wrap(file.getSourceText()));
+        bytesWritten.addAndGet(bytes.remaining());
+        while (bytes.hasRemaining()) {
+          channel.write(bytes);
+        }
+      }
+      if (Files.exists(target)) {
+        // Temporary files are only readable by their owner.
+        try {
+          Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(target));
+        } catch (UnsupportedOperationException e) {
+          // Not a POSIX file system.
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      deleteQuietly(temp, e);
+      throw e;
+    }
+    Path previous;
+    synchronized (pending) {
+      previous = pending.put(target, temp);
+    }
+    if (previous != null) {
+      Files.deleteIfExists(previous);
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    List<Map.Entry<Path, Path>> toMove;
+    synchronized (pending) {
+      toMove = new ArrayList<>(pending.entrySet());
+      pending.clear();
+    }
+    Set<Path> directories = new LinkedHashSet<>();
+    int moved = 0;
+    try {
+      for (Map.Entry<Path, Path> entry : toMove) {
+        force(entry.getValue());
+      }
+      for (Map.Entry<Path, Path> entry : toMove) {
+        try {
+          Files.move(entry.getValue(), entry.getKey(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+          Files.move(entry.getValue(), entry.getKey(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        moved++;
+        directories.add(entry.getKey().getParent());
+      }
+    } catch (IOException | RuntimeException e) {
+      // Don't leave the temporary files of the files that were not replaced behind.
+      for (Map.Entry<Path, Path> entry : toMove.subList(moved, toMove.size())) {
+        deleteQuietly(entry.getValue(), e);
+      }
+      throw e;
+    }
+    // Make the renames themselves durable.
+    for (Path directory : directories) {
+      try {
+        force(directory);
+      } catch (IOException e) {
+        // Directories cannot be opened for syncing on some platforms, e.g. Windows.
+      }
+    }
+  }
+
+  /**
+   * The number of bytes written to temporary files since this destination was created, whether or
+   * not they have been flushed yet.
+   */
+  public long bytesWritten() {
+    return bytesWritten.get();
+  }
+
+  /** Deletes {@code path} if it exists, recording any failure as suppressed by {@code cause}. */
+  private static void deleteQuietly(Path path, Throwable cause) {
+    try {
+      Files.deleteIfExists(path);
+    } catch (IOException e) {
+      cause.addSuppressed(e);
+    }
+  }
+
+  private static void force(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      channel.force(true);
+    }
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2016 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.apply;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link FileSource} that reads files from the file system, resolving paths against a root
+ * directory.
+ *
+ * <p>Files are read through a {@link FileChannel}; files of at least {@link #MAP_THRESHOLD} bytes
+ * are memory-mapped rather than copied into a heap buffer.  Files must be encoded in UTF-8: a file
+ * with malformed input fails to be read, rather than having it replaced.
+ */
+public final class FsFileSource implements FileSource {
+
+  /** The size in bytes above which files are memory-mapped. */
+  static final long MAP_THRESHOLD = 1 << 20;
+
+  private final Path rootPath;
+  private final AtomicLong bytesRead = new AtomicLong();
+
+  public FsFileSource(Path rootPath) {
+    this.rootPath = checkNotNull(rootPath);
+  }
+
+  @Override
+  public SourceFile readFile(String path) throws IOException {
+    try (FileChannel channel = FileChannel.open(rootPath.resolve(path), StandardOpenOption.READ)) {
+      long size = channel.size();
+      ByteBuffer bytes;
+      if (size >= MAP_THRESHOLD) {
+        bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      } else {
+        bytes = ByteBuffer.allocate((int) size);
+        while (bytes.hasRemaining() && channel.read(bytes) >= 0) {}
+        bytes.flip();
+      }
+      bytesRead.addAndGet(bytes.remaining());
+      CharsetDecoder decoder = UTF_8.newDecoder()
+          .onMalformedInput(CodingErrorAction.REPORT)
+          .onUnmappableCharacter(CodingErrorAction.REPORT);
+      return new SourceFile(path, decoder.decode(bytes));
+    }
+  }
+
+  /** The number of bytes read from the file system since this source was created. */
+  public long bytesRead() {
+    return bytesRead.get();
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2016 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.apply;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A {@link FileDestination} that leaves files untouched, and instead appends the changes to each
+ * file to a single patch file in unified diff format, as they are written.
+ *
+ * <p>The original contents of each file are read from the file system when it is written. Paths
+ * in the patch are relative to the base directory, with the conventional {@code a/} and
+ * {@code b/} prefixes, so the patch can be applied with {@code patch -p1} from that directory.
+ * The patch file stays open until the destination is {@linkplain #close closed}.
+ */
+public final class PatchFileDestination implements FileDestination, Closeable {
+
+  private static final int CONTEXT_LINES = 3;
+
+  private final Path baseDir;
+  private final Writer patch;
+
+  /**
+   * Creates a destination writing to {@code patchFile}, replacing any existing contents unless
+   * {@code append} is true.
+   */
+  public PatchFileDestination(Path baseDir, Path patchFile, boolean append) throws IOException {
+    this(baseDir, append
+        ? Files.newBufferedWriter(patchFile, UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND)
+        : Files.newBufferedWriter(patchFile, UTF_8));
+  }
+
+  /**
+   * Creates a destination writing to {@code patch}, e.g. to collect a patch in memory. The writer
+   * is closed when the destination is.
+   */
+  public PatchFileDestination(Path baseDir, Writer patch) {
+    this.baseDir = checkNotNull(baseDir);
+    this.patch = checkNotNull(patch);
+  }
+
+  @Override
+  public void writeFile(SourceFile file) throws IOException {
+    Path path = baseDir.resolve(file.getPath());
+    String original = new String(Files.readAllBytes(path), UTF_8);
+    String relativePath = baseDir.relativize(path).toString();
+    String diff = UnifiedDiff.format(
+        "a/" + relativePath, "b/" + relativePath, original, file.getSourceText(), CONTEXT_LINES);
+    synchronized (patch) {
+      patch.write(diff);
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    synchronized (patch) {
+      patch.flush();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    synchronized (patch) {
+      patch.close();
+    }
+  }
+}
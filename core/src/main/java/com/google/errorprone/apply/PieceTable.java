@@ -0,0 +1,149 @@
+/*
+ * Copyright 2016 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.apply;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Mutable text represented as a sequence of pieces of the original text and of inserted strings,
+ * so that a replacement costs time proportional to the number of pieces rather than to the length
+ * of the text.
+ *
+ * <p>The most recently edited piece is remembered, so a series of replacements close to one
+ * another, such as a fix applied in descending order of position, locates each piece in constant
+ * time.
+ */
+final class PieceTable {
+
+  private static final class Piece {
+    final CharSequence text;
+    final int start;
+    final int end;
+
+    Piece(CharSequence text, int start, int end) {
+      this.text = text;
+      this.start = start;
+      this.end = end;
+    }
+
+    int length() {
+      return end - start;
+    }
+  }
+
+  private final List<Piece> pieces = new ArrayList<>();
+  private int length;
+
+  // The index of a piece, and the position in the text at which it begins.
+  private int cursorIndex;
+  private int cursorPosition;
+
+  // The text as a string, or null if it has changed since last rendered.
+  private String rendered;
+
+  PieceTable(CharSequence text) {
+    reset(text);
+  }
+
+  void reset(CharSequence text) {
+    String string = text.toString();
+    pieces.clear();
+    if (!string.isEmpty()) {
+      pieces.add(new Piece(string, 0, string.length()));
+    }
+    length = string.length();
+    cursorIndex = 0;
+    cursorPosition = 0;
+    rendered = string;
+  }
+
+  int length() {
+    return length;
+  }
+
+  /**
+   * Replaces the characters in [start, end) with {@code replacement}, with the same conventions
+   * as {@link StringBuilder#replace}.
+   */
+  void replace(int start, int end, String replacement) {
+    if (start < 0 || start > length || start > end) {
+      throw new StringIndexOutOfBoundsException(
+          String.format("start %d, end %d, length %d", start, end, length));
+    }
+    end = Math.min(end, length);
+    int index = split(start);
+    int endIndex = split(end);
+    pieces.subList(index, endIndex).clear();
+    if (!replacement.isEmpty()) {
+      pieces.add(index, new Piece(replacement, 0, replacement.length()));
+    }
+    length += replacement.length() - (end - start);
+    cursorIndex = index;
+    cursorPosition = start;
+    rendered = null;
+  }
+
+  /**
+   * Ensures that a piece begins at {@code position}, splitting the piece containing it if
+   * necessary, and returns that piece's index.
+   */
+  private int split(int position) {
+    moveCursorTo(position);
+    if (cursorIndex == pieces.size() || cursorPosition == position) {
+      return cursorIndex;
+    }
+    Piece piece = pieces.get(cursorIndex);
+    int offset = piece.start + position - cursorPosition;
+    pieces.set(cursorIndex, new Piece(piece.text, piece.start, offset));
+    pieces.add(cursorIndex + 1, new Piece(piece.text, offset, piece.end));
+    cursorIndex++;
+    cursorPosition = position;
+    return cursorIndex;
+  }
+
+  /** Moves the cursor to the piece containing {@code position}, or past the end of the pieces. */
+  private void moveCursorTo(int position) {
+    while (cursorIndex > 0 && cursorPosition > position) {
+      cursorIndex--;
+      cursorPosition -= pieces.get(cursorIndex).length();
+    }
+    while (cursorIndex < pieces.size()
+        && cursorPosition + pieces.get(cursorIndex).length() <= position) {
+      cursorPosition += pieces.get(cursorIndex).length();
+      cursorIndex++;
+    }
+  }
+
+  @Override
+  public String toString() {
+    if (rendered == null) {
+      StringBuilder builder = new StringBuilder(length);
+      for (Piece piece : pieces) {
+        builder.append(piece.text, piece.start, piece.end);
+      }
+      rendered = builder.toString();
+      pieces.clear();
+      if (!rendered.isEmpty()) {
+        pieces.add(new Piece(rendered, 0, rendered.length()));
+      }
+      cursorIndex = 0;
+      cursorPosition = 0;
+    }
+    return rendered;
+  }
+}
@@ -18,10 +18,8 @@ package com.google.errorprone.apply;
 
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
-import com.google.common.io.CharSource;
+import com.google.errorprone.util.LineOffsets;
 import java.io.IOException;
-import java.io.LineNumberReader;
-import java.io.StringReader;
 import java.nio.CharBuffer;
 import java.util.ArrayList;
 import java.util.List;
@@ -29,6 +27,10 @@ import javax.tools.JavaFileObject;
 
 /**
  * Representation of a mutable Java source file.
+ *
+ * <p>Edits are recorded in a {@link PieceTable}, so applying many small replacements does not
+ * copy the whole file for each one, and line offsets are computed at most once per version of the
+ * text.
  * 
  * This class is not thread-safe.
  * 
@@ -38,7 +40,10 @@ import javax.tools.JavaFileObject;
 public class SourceFile {
 
   private final String path;
-  private final StringBuilder sourceBuilder;
+  private final PieceTable source;
+
+  // The line offsets of the current text, or null if it has changed since they were computed.
+  private LineOffsets lineOffsets;
   
   public static SourceFile create(JavaFileObject fileObject) throws IOException {
     return new SourceFile(fileObject.toUri().getPath(), fileObject.getCharContent(false));
@@ -46,7 +51,7 @@ public class SourceFile {
 
   public SourceFile(String path, CharSequence source) {
     this.path = path;
-    sourceBuilder = new StringBuilder(source);
+    this.source = new PieceTable(source);
   }
   
   /**
@@ -60,22 +65,18 @@ public class SourceFile {
    * Returns a copy of code as a list of lines.
    */
   public List<String> getLines() {
-    try {
-      return CharSource.wrap(sourceBuilder).readLines();
-    } catch (IOException e) {
-      throw new AssertionError("IOException not possible, as the string is in-memory");
-    }
+    return getLines(1, Integer.MAX_VALUE);
   }
 
   /**
    * Returns a copy of the code as a string.
    */
   public String getSourceText() {
-    return sourceBuilder.toString();
+    return source.toString();
   }
   
   public CharSequence getAsSequence() {
-    return CharBuffer.wrap(sourceBuilder).asReadOnlyBuffer();
+    return CharBuffer.wrap(source.toString()).asReadOnlyBuffer();
   }
   
   /**
@@ -83,8 +84,8 @@ public class SourceFile {
    * the passed-in value.
    */
   public void setSourceText(CharSequence source) {
-    sourceBuilder.setLength(0);     // clear StringBuilder
-    sourceBuilder.append(source);
+    this.source.reset(source);
+    lineOffsets = null;
   }
 
   /**
@@ -94,7 +95,7 @@ public class SourceFile {
    * and end parameters.
    */
   public String getFragmentByChars(int startPosition, int endPosition) {
-    return sourceBuilder.substring(startPosition, endPosition);
+    return source.toString().substring(startPosition, endPosition);
   }
 
   /**
@@ -109,29 +110,32 @@ public class SourceFile {
   }
   
   private List<String> getLines(int startLine, int endLine) {
-    LineNumberReader reader = new LineNumberReader(new StringReader(sourceBuilder.toString()));
-    List<String> lines = new ArrayList<>(endLine - startLine + 1);
-    String line;
-    try {
-      while ((line = reader.readLine()) != null) {
-        if (reader.getLineNumber() >= startLine) {
-          lines.add(line);
-        }
-        if (reader.getLineNumber() >= endLine) {
-          break;
-        }
-      }
-      return lines;
-    } catch (IOException e) {
-      throw new AssertionError("Wrapped StringReader should not produce I/O exceptions");
+    String text = source.toString();
+    LineOffsets lines = getLineOffsets();
+    endLine = Math.min(endLine, lines.getLineCount());
+    // Text ending in a line terminator has no further line.
+    if (endLine == lines.getLineCount() && lines.getLineStart(endLine) == text.length()) {
+      endLine--;
+    }
+    List<String> result = new ArrayList<>(Math.max(0, endLine - startLine + 1));
+    for (int line = Math.max(startLine, 1); line <= endLine; line++) {
+      result.add(text.substring(lines.getLineStart(line), lines.getLineEnd(line)));
+    }
+    return result;
+  }
+
+  private LineOffsets getLineOffsets() {
+    if (lineOffsets == null) {
+      lineOffsets = LineOffsets.create(source.toString());
     }
+    return lineOffsets;
   }
   
   /**
    * Replace the source code with the new lines of code.
    */
   public void replaceLines(List<String> lines) {
-    sourceBuilder.replace(0, sourceBuilder.length(), Joiner.on("\n").join(lines) + "\n");
+    setSourceText(Joiner.on("\n").join(lines) + "\n");
   }
   
   /**
@@ -162,12 +166,13 @@ public class SourceFile {
    */
   public void replaceChars(int startPosition, int endPosition, String replacement) {
     try {
-      sourceBuilder.replace(startPosition, endPosition, replacement);
+      source.replace(startPosition, endPosition, replacement);
+      lineOffsets = null;
     } catch (StringIndexOutOfBoundsException e) {
       throw new IndexOutOfBoundsException(
           String.format("Replacement cannot be made. Source file %s has length %d, requested start "
               + "position %d, requested end position %d, replacement %s",
-              path, sourceBuilder.length(), startPosition, endPosition, replacement));
+              path, source.length(), startPosition, endPosition, replacement));
     }
   }
 }
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2016 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.apply;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Formats the differences between two versions of a file as a unified diff, as produced by
+ * {@code diff -u}.
+ *
+ * <p>Lines are compared with Myers' O(ND) algorithm, where D is the number of differing lines, so
+ * formatting the small edits typical of automated refactorings is cheap even for large files.
+ */
+final class UnifiedDiff {
+
+  private static final char EQUAL = ' ';
+  private static final char DELETE = '-';
+  private static final char INSERT = '+';
+
+  private UnifiedDiff() {}
+
+  /**
+   * Returns a unified diff from {@code original} to {@code revised}, with {@code contextLines}
+   * lines of context around each change, or the empty string if they are identical.
+   */
+  static String format(
+      String originalPath, String revisedPath, String original, String revised, int contextLines) {
+    List<String> a = lines(original);
+    List<String> b = lines(revised);
+    List<Op> ops = diff(a, b);
+
+    StringBuilder out = new StringBuilder();
+    int[] aLine = new int[ops.size() + 1];
+    int[] bLine = new int[ops.size() + 1];
+    for (int i = 0; i < ops.size(); i++) {
+      char type = ops.get(i).type;
+      aLine[i + 1] = aLine[i] + (type != INSERT ? 1 : 0);
+      bLine[i + 1] = bLine[i] + (type != DELETE ? 1 : 0);
+    }
+    int i = 0;
+    while (i < ops.size()) {
+      if (ops.get(i).type == EQUAL) {
+        i++;
+        continue;
+      }
+      if (out.length() == 0) {
+        out.append("--- ").append(originalPath).append('\n');
+        out.append("+++ ").append(revisedPath).append('\n');
+      }
+      int start = Math.max(0, i - contextLines);
+      int end = i + 1;
+      // Extend the hunk over any later change separated from this one by little enough context.
+      int j = i + 1;
+      while (j < ops.size()) {
+        if (ops.get(j).type != EQUAL) {
+          end = ++j;
+          continue;
+        }
+        int runEnd = j;
+        while (runEnd < ops.size() && ops.get(runEnd).type == EQUAL) {
+          runEnd++;
+        }
+        if (runEnd == ops.size() || runEnd - j > 2 * contextLines) {
+          break;
+        }
+        j = runEnd;
+      }
+      int hunkEnd = Math.min(ops.size(), end + contextLines);
+      out.append("@@ -")
+          .append(range(aLine[start], aLine[hunkEnd] - aLine[start]))
+          .append(" +")
+          .append(range(bLine[start], bLine[hunkEnd] - bLine[start]))
+          .append(" @@\n");
+      for (Op op : ops.subList(start, hunkEnd)) {
+        out.append(op.type).append(op.line);
+        if (!op.line.endsWith("\n")) {
+          out.append("\n\\ No newline at end of file\n");
+        }
+      }
+      i = hunkEnd;
+    }
+    return out.toString();
+  }
+
+  private static String range(int linesBefore, int length) {
+    if (length == 0) {
+      return linesBefore + ",0";
+    }
+    return length == 1 ? String.valueOf(linesBefore + 1) : (linesBefore + 1) + "," + length;
+  }
+
+  /** Splits {@code text} into lines, each including its line terminator, if any. */
+  static List<String> lines(String text) {
+    List<String> lines = new ArrayList<>();
+    int start = 0;
+    while (start < text.length()) {
+      int end = text.indexOf('\n', start);
+      end = end < 0 ? text.length() : end + 1;
+      lines.add(text.substring(start, end));
+      start = end;
+    }
+    return lines;
+  }
+
+  private static final class Op {
+    final char type;
+    final String line;
+
+    Op(char type, String line) {
+      this.type = type;
+      this.line = line;
+    }
+  }
+
+  /** Returns a shortest edit script transforming {@code a} into {@code b}. */
+  private static List<Op> diff(List<String> a, List<String> b) {
+    int n = a.size();
+    int m = b.size();
+    int max = n + m;
+    int offset = max + 1;
+    int[] v = new int[2 * max + 3];
+    // The furthest-reaching paths on each diagonal at the start of each round; round d only
+    // needs diagonals -d through d.
+    List<int[]> trace = new ArrayList<>();
+    search:
+    for (int d = 0; d <= max; d++) {
+      trace.add(Arrays.copyOfRange(v, offset - d, offset + d + 1));
+      for (int k = -d; k <= d; k += 2) {
+        int x = (k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1]))
+            ? v[offset + k + 1]
+            : v[offset + k - 1] + 1;
+        int y = x - k;
+        while (x < n && y < m && a.get(x).equals(b.get(y))) {
+          x++;
+          y++;
+        }
+        v[offset + k] = x;
+        if (x >= n && y >= m) {
+          break search;
+        }
+      }
+    }
+
+    List<Op> ops = new ArrayList<>();
+    int x = n;
+    int y = m;
+    for (int d = trace.size() - 1; d > 0; d--) {
+      int[] snapshot = trace.get(d);
+      int k = x - y;
+      int prevK = (k == -d || (k != d && snapshot[k - 1 + d] < snapshot[k + 1 + d]))
+          ? k + 1
+          : k - 1;
+      int prevX = snapshot[prevK + d];
+      int prevY = prevX - prevK;
+      while (x > prevX && y > prevY) {
+        ops.add(new Op(EQUAL, a.get(--x)));
+        y--;
+      }
+      if (x == prevX) {
+        ops.add(new Op(INSERT, b.get(--y)));
+      } else {
+        ops.add(new Op(DELETE, a.get(--x)));
+      }
+    }
+    while (x > 0 && y > 0) {
+      ops.add(new Op(EQUAL, a.get(--x)));
+      y--;
+    }
+    Collections.reverse(ops);
+    return ops;
+  }
+}
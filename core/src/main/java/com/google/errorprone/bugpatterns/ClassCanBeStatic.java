@@ -77,7 +77,9 @@ public class ClassCanBeStatic extends BugChecker implements ClassTreeMatcher {
     if (OuterReferenceScanner.scan((JCTree) tree, currentClass, state)) {
       return Description.NO_MATCH;
     }
-    return describeMatch(tree, SuggestedFixes.addModifiers(tree, state, Modifier.STATIC));
+    return buildDescription(tree)
+        .addLazyFix(SuggestedFixes.addModifiersLazily(tree, state, Modifier.STATIC))
+        .build();
   }
 
   /** Is sym a non-static member of an enclosing class of currentClass? */
@@ -61,7 +61,7 @@ public class ConstantField extends BugChecker implements VariableTreeMatcher {
       return Description.NO_MATCH;
     }
     return buildDescription(tree)
-        .addFix(SuggestedFixes.addModifiers(tree, state, Modifier.FINAL, Modifier.STATIC))
+        .addLazyFix(SuggestedFixes.addModifiersLazily(tree, state, Modifier.FINAL, Modifier.STATIC))
         .addFix(
             renameFix(
                 tree, state, name, CaseFormat.UPPER_UNDERSCORE.to(CaseFormat.LOWER_CAMEL, name)))
@@ -50,7 +50,8 @@ import com.sun.source.tree.Tree;
     explanation =
         "An if statement contains an empty statement as the then clause. A semicolon may " +
         "have been inserted by accident.",
-    category = JDK, severity = ERROR, maturity = EXPERIMENTAL)
+    category = JDK, severity = ERROR, maturity = EXPERIMENTAL,
+    requiresAttribution = false)
 public class EmptyIfStatement extends BugChecker implements EmptyStatementTreeMatcher {
 
   /**
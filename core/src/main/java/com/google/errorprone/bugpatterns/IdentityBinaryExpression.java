@@ -34,7 +34,8 @@ import com.sun.source.tree.BinaryTree;
   summary = "Writing `a && a`, `a || a`, `a & a`, or `a | a` is equivalent to `a`.",
   explanation = "Writing `a && a`, `a || a`, `a & a`, or `a | a` is equivalent to `a`.",
   severity = ERROR,
-  maturity = MATURE
+  maturity = MATURE,
+  requiresAttribution = false
 )
 public class IdentityBinaryExpression extends BugChecker implements BinaryTreeMatcher {
   @Override
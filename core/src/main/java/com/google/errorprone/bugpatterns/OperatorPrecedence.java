@@ -39,7 +39,8 @@ import java.util.EnumSet;
   category = JDK,
   summary = "Use grouping parenthesis to make the operator precedence explicit",
   severity = WARNING,
-  maturity = MATURE
+  maturity = MATURE,
+  requiresAttribution = false
 )
 public class OperatorPrecedence extends BugChecker implements BinaryTreeMatcher {
 
@@ -55,7 +55,7 @@ public class UnsynchronizedOverridesSynchronized extends BugChecker implements M
           continue;
         }
         return buildDescription(methodTree)
-            .addFix(SuggestedFixes.addModifiers(methodTree, state, Modifier.SYNCHRONIZED))
+            .addLazyFix(SuggestedFixes.addModifiersLazily(methodTree, state, Modifier.SYNCHRONIZED))
             .setMessage(
                 String.format(
                     "Unsynchronized method %s overrides synchronized method in %s",
@@ -91,7 +91,7 @@ public class VarChecker extends BugChecker implements VariableTreeMatcher {
         // effectively final variables can be used anywhere a final variable is required.
         return buildDescription(tree)
             .setMessage(UNNECESSARY_FINAL)
-            .addFix(SuggestedFixes.removeModifiers(tree, state, Modifier.FINAL))
+            .addLazyFix(SuggestedFixes.removeModifiersLazily(tree, state, Modifier.FINAL))
             .build();
       }
       return Description.NO_MATCH;
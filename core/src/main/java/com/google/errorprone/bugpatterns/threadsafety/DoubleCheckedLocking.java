@@ -26,7 +26,6 @@ import com.google.errorprone.BugPattern;
 import com.google.errorprone.VisitorState;
 import com.google.errorprone.bugpatterns.BugChecker;
 import com.google.errorprone.bugpatterns.BugChecker.IfTreeMatcher;
-import com.google.errorprone.fixes.Fix;
 import com.google.errorprone.fixes.SuggestedFixes;
 import com.google.errorprone.matchers.Description;
 import com.google.errorprone.util.ASTHelpers;
@@ -98,10 +97,7 @@ public class DoubleCheckedLocking extends BugChecker implements IfTreeMatcher {
     Description.Builder builder = buildDescription(outerIf);
     JCTree fieldDecl = findFieldDeclaration(state.getPath(), sym);
     if (fieldDecl != null) {
-      Fix fix = SuggestedFixes.addModifiers(fieldDecl, state, Modifier.VOLATILE);
-      if (fix != null) {
-        builder.addFix(fix);
-      }
+      builder.addLazyFix(SuggestedFixes.addModifiersLazily(fieldDecl, state, Modifier.VOLATILE));
     }
     return builder.build();
   }
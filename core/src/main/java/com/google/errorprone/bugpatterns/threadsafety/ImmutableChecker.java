@@ -308,7 +308,7 @@ public class ImmutableChecker extends BugChecker implements BugChecker.ClassTree
         state.reportMatch(
             buildDescription(tree.get())
                 .setMessage("@Immutable classes cannot have non-final fields")
-                .addFix(SuggestedFixes.addModifiers(tree.get(), state, Modifier.FINAL))
+                .addLazyFix(SuggestedFixes.addModifiersLazily(tree.get(), state, Modifier.FINAL))
                 .build());
         return Violation.absent();
       }
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.bugpatterns.threadsafety;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.errorprone.annotations.Immutable;
+import com.google.errorprone.bugpatterns.BugChecker;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * Verifies that a {@link BugChecker} holds no mutable state, so that a single instance may be
+ * shared by any number of compilations, on any number of threads.
+ *
+ * <p>A checker is stateless if every instance field declared by it and its superclasses below
+ * {@link BugChecker} is final and of an immutable type: a primitive, an enum, a type annotated
+ * {@link Immutable}, or one of the types {@link WellKnownMutability} knows to be immutable, whose
+ * contained type arguments are immutable.  This is a conservative, reflective version of the
+ * analysis done by {@link ImmutableChecker}, so some checkers that hold no state, e.g. in fields
+ * of interface types, aren't recognized as stateless.
+ */
+public final class StatelessCheckerVerifier {
+
+  /** Returns whether instances of {@code checker} hold no mutable state. */
+  public static boolean isStateless(Class<? extends BugChecker> checker) {
+    return violations(checker).isEmpty();
+  }
+
+  /**
+   * Returns descriptions of the fields that make instances of {@code checker} stateful, or an
+   * empty list if it is stateless.
+   */
+  public static ImmutableList<String> violations(Class<? extends BugChecker> checker) {
+    ImmutableList.Builder<String> violations = ImmutableList.builder();
+    for (Class<?> clazz = checker;
+        clazz != null && clazz != BugChecker.class;
+        clazz = clazz.getSuperclass()) {
+      for (Field field : clazz.getDeclaredFields()) {
+        if (Modifier.isStatic(field.getModifiers())) {
+          continue;
+        }
+        String name = clazz.getName() + "." + field.getName();
+        if (!Modifier.isFinal(field.getModifiers())) {
+          violations.add(String.format("'%s' is not final", name));
+        } else if (!isImmutable(field.getGenericType())) {
+          violations.add(
+              String.format("'%s' has mutable type '%s'", name, field.getGenericType()));
+        }
+      }
+    }
+    return violations.build();
+  }
+
+  private static boolean isImmutable(Type type) {
+    if (type instanceof Class) {
+      return containerOf((Class<?>) type) != null;
+    }
+    if (type instanceof ParameterizedType) {
+      Class<?> raw = (Class<?>) ((ParameterizedType) type).getRawType();
+      Set<String> containerOf = containerOf(raw);
+      if (containerOf == null) {
+        return false;
+      }
+      // Only the type arguments the type contains need be immutable, e.g. the E of ImmutableList.
+      TypeVariable<?>[] parameters = raw.getTypeParameters();
+      Type[] arguments = ((ParameterizedType) type).getActualTypeArguments();
+      for (int i = 0; i < parameters.length; i++) {
+        if (containerOf.contains(parameters[i].getName()) && !isImmutable(arguments[i])) {
+          return false;
+        }
+      }
+      return true;
+    }
+    // Type variables, wildcards and arrays may be mutable.
+    return false;
+  }
+
+  /**
+   * Returns the type parameters of {@code clazz} that must be immutable for it to be immutable, or
+   * {@code null} if it may be mutable.
+   */
+  @Nullable
+  private static Set<String> containerOf(Class<?> clazz) {
+    if (clazz.isPrimitive() || clazz.isEnum()) {
+      return ImmutableSet.of();
+    }
+    Immutable immutable = clazz.getAnnotation(Immutable.class);
+    if (immutable != null) {
+      return ImmutableSet.copyOf(immutable.containerOf());
+    }
+    ImmutableAnnotationInfo info = WellKnownMutability.KNOWN_IMMUTABLE.get(clazz.getName());
+    return info != null ? info.containerOf() : null;
+  }
+
+  private StatelessCheckerVerifier() {}
+}
@@ -16,12 +16,11 @@
 
 package com.google.errorprone.fixes;
 
+import com.google.common.collect.Lists;
+import com.google.errorprone.util.LineOffsets;
 import com.sun.tools.javac.tree.EndPosTable;
-import java.io.IOException;
-import java.io.LineNumberReader;
-import java.io.StringReader;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Represents the corrected source which we think was intended, by applying a Fix. This
@@ -50,6 +49,9 @@ public class AppliedFix {
     private final CharSequence source;
     private final EndPosTable endPositions;
 
+    // Computed on first use, and shared by all fixes applied to the source.
+    private LineOffsets lineOffsets;
+
     public Applier(CharSequence source, EndPosTable endPositions) {
       this.source = source;
       this.endPositions = endPositions;
@@ -58,55 +60,71 @@ public class AppliedFix {
     /**
      * Applies the suggestedFix to the source. Returns null if applying the fix results in no
      * change to the source, or a change only to imports.
+     *
+     * <p>Only the first modified line of the result is rendered, so the cost is proportional to
+     * the size of the fix rather than to the size of the source.
      */
     public AppliedFix apply(Fix suggestedFix) {
-      StringBuilder replaced = new StringBuilder(source);
-
-      Set<Integer> modifiedLines = new HashSet<>();
-      for (Replacement repl : suggestedFix.getReplacements(endPositions)) {
-        replaced.replace(repl.startPosition(), repl.endPosition(), repl.replaceWith());
-
-        // Find the line number(s) being modified
-        // TODO: this could be more efficient
-        try {
-          LineNumberReader lineNumberReader =
-              new LineNumberReader(new StringReader(source.toString()));
-          lineNumberReader.skip(repl.startPosition());
-          modifiedLines.add(lineNumberReader.getLineNumber());
-        } catch (IOException e) {
-          // impossible since source is in-memory
-        }
-      }
+      // Replacements are in descending order of position.
+      List<Replacement> replacements =
+          Lists.reverse(new ArrayList<>(suggestedFix.getReplacements(endPositions)));
 
       // Not sure this is really the right behavior, but otherwise we can end up with an infinite
       // loop below.
-      if (modifiedLines.isEmpty()) {
+      if (replacements.isEmpty()) {
         return null;
       }
 
-      LineNumberReader lineNumberReader =
-              new LineNumberReader(new StringReader(replaced.toString()));
-      String snippet = null;
-      boolean isRemoveLine = false;
-      try {
-        while(!modifiedLines.contains(lineNumberReader.getLineNumber())) {
-          lineNumberReader.readLine();
-        }
-        // TODO: this is over-simplified; need a failing test case
-        snippet = lineNumberReader.readLine().trim();
-        // snip comment from line
-        if (snippet.contains("//")) {
-          snippet = snippet.substring(0, snippet.indexOf("//")).trim();
-        }
-        if (snippet.isEmpty()) {
-          isRemoveLine = true;
-          snippet = "to remove this line";
+      // Render the first modified line by applying the replacements that follow its start, in
+      // order, until the line ends.
+      if (lineOffsets == null) {
+        lineOffsets = LineOffsets.create(source);
+      }
+      int position = lineOffsets.getLineStart(
+          lineOffsets.getLineNumber(replacements.get(0).startPosition()));
+      StringBuilder line = new StringBuilder();
+      boolean complete = false;
+      for (Replacement repl : replacements) {
+        if (appendUntilLineEnd(line, source, position, repl.startPosition())
+            || appendUntilLineEnd(line, repl.replaceWith(), 0, repl.replaceWith().length())) {
+          complete = true;
+          break;
         }
-      } catch (IOException e) {
-        // impossible since source is in-memory
+        position = repl.endPosition();
+      }
+      if (!complete) {
+        appendUntilLineEnd(line, source, position, source.length());
+      }
+
+      // TODO: this is over-simplified; need a failing test case
+      String snippet = line.toString().trim();
+      boolean isRemoveLine = false;
+      // snip comment from line
+      if (snippet.contains("//")) {
+        snippet = snippet.substring(0, snippet.indexOf("//")).trim();
+      }
+      if (snippet.isEmpty()) {
+        isRemoveLine = true;
+        snippet = "to remove this line";
       }
       return new AppliedFix(snippet, isRemoveLine);
     }
+
+    /**
+     * Appends the characters of {@code text} in [start, end) to {@code line}, stopping at any line
+     * terminator.  Returns whether a line terminator was found.
+     */
+    private static boolean appendUntilLineEnd(
+        StringBuilder line, CharSequence text, int start, int end) {
+      for (int i = start; i < end; i++) {
+        char c = text.charAt(i);
+        if (c == '\n' || c == '\r') {
+          return true;
+        }
+        line.append(c);
+      }
+      return false;
+    }
   }
 
   public static Applier fromSource(CharSequence source, EndPosTable endPositions) {
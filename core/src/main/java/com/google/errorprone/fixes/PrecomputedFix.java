@@ -0,0 +1,94 @@
+/*
+ * Copyright 2016 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.fixes;
+
+import com.google.common.collect.ImmutableSet;
+import com.sun.tools.javac.tree.EndPosTable;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * A {@link Fix} whose replacements have already been computed, so that it holds no references to
+ * the trees of the compilation unit it applies to.
+ */
+public final class PrecomputedFix implements Fix {
+
+  /** Computes the replacements of {@code fix} using {@code endPositions}. */
+  public static PrecomputedFix create(Fix fix, EndPosTable endPositions) {
+    if (fix instanceof PrecomputedFix) {
+      return (PrecomputedFix) fix;
+    }
+    return create(
+        fix.getReplacements(endPositions), fix.getImportsToAdd(), fix.getImportsToRemove());
+  }
+
+  public static PrecomputedFix create(
+      Set<Replacement> replacements,
+      Collection<String> importsToAdd,
+      Collection<String> importsToRemove) {
+    return new PrecomputedFix(
+        ImmutableSet.copyOf(replacements),
+        ImmutableSet.copyOf(importsToAdd),
+        ImmutableSet.copyOf(importsToRemove));
+  }
+
+  private final ImmutableSet<Replacement> replacements;
+  private final ImmutableSet<String> importsToAdd;
+  private final ImmutableSet<String> importsToRemove;
+
+  private PrecomputedFix(
+      ImmutableSet<Replacement> replacements,
+      ImmutableSet<String> importsToAdd,
+      ImmutableSet<String> importsToRemove) {
+    this.replacements = replacements;
+    this.importsToAdd = importsToAdd;
+    this.importsToRemove = importsToRemove;
+  }
+
+  @Override
+  public String toString(JCCompilationUnit compilationUnit) {
+    StringBuilder result = new StringBuilder("replace ");
+    for (Replacement replacement : replacements) {
+      result
+          .append("position " + replacement.startPosition() + ":" + replacement.endPosition())
+          .append(" with \"" + replacement.replaceWith() + "\" ");
+    }
+    return result.toString();
+  }
+
+  /** Returns the precomputed replacements; {@code endPositions} is ignored. */
+  @Override
+  public ImmutableSet<Replacement> getReplacements(EndPosTable endPositions) {
+    return replacements;
+  }
+
+  @Override
+  public ImmutableSet<String> getImportsToAdd() {
+    return importsToAdd;
+  }
+
+  @Override
+  public ImmutableSet<String> getImportsToRemove() {
+    return importsToRemove;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return replacements.isEmpty() && importsToAdd.isEmpty() && importsToRemove.isEmpty();
+  }
+}
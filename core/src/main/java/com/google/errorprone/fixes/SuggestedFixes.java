@@ -20,12 +20,14 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import com.google.common.base.Joiner;
+import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.google.errorprone.VisitorState;
 import com.google.errorprone.util.ASTHelpers;
+import com.google.errorprone.util.CompilationUnitTokens;
 import com.google.errorprone.util.ErrorProneToken;
 import com.sun.source.doctree.DocTree;
 import com.sun.source.tree.ClassTree;
@@ -36,7 +38,9 @@ import com.sun.tools.javac.api.JavacTrees;
 import com.sun.tools.javac.code.Symbol;
 import com.sun.tools.javac.tree.DCTree;
 import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
 import com.sun.tools.javac.tree.TreeMaker;
+import com.sun.tools.javac.util.Context;
 import com.sun.tools.javac.util.Position;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
@@ -89,6 +93,12 @@ public class SuggestedFixes {
   /** Add modifiers to the given class, method, or field declaration. */
   @Nullable
   public static Fix addModifiers(Tree tree, VisitorState state, Modifier... modifiers) {
+    return addModifiers(tree, compilationUnit(state), state.context, modifiers);
+  }
+
+  @Nullable
+  private static Fix addModifiers(
+      Tree tree, JCCompilationUnit compilationUnit, Context context, Modifier... modifiers) {
     ModifiersTree originalModifiers = ASTHelpers.getModifiers(tree);
     if (originalModifiers == null) {
       return null;
@@ -97,8 +107,8 @@ public class SuggestedFixes {
         Sets.difference(new TreeSet<>(Arrays.asList(modifiers)), originalModifiers.getFlags());
     if (originalModifiers.getFlags().isEmpty()) {
       int pos =
-          state.getEndPosition((JCTree) originalModifiers) != Position.NOPOS
-              ? state.getEndPosition((JCTree) originalModifiers) + 1
+          endPosition(originalModifiers, compilationUnit) != Position.NOPOS
+              ? endPosition(originalModifiers, compilationUnit) + 1
               : ((JCTree) tree).getStartPosition();
       return SuggestedFix.replace(pos, pos, Joiner.on(' ').join(toAdd) + " ");
     }
@@ -108,7 +118,8 @@ public class SuggestedFixes {
     for (Modifier mod : toAdd) {
       modifierPositions.put(mod, -1);
     }
-    ImmutableList<ErrorProneToken> tokens = state.getTokensForNode(originalModifiers);
+    ImmutableList<ErrorProneToken> tokens =
+        tokensForNode(originalModifiers, compilationUnit, context);
     int base = ((JCTree) originalModifiers).getStartPosition();
     for (ErrorProneToken tok : tokens) {
       Modifier mod = getTokModifierKind(tok);
@@ -135,16 +146,40 @@ public class SuggestedFixes {
     return fix.build();
   }
 
+  /**
+   * Returns a supplier of {@link #addModifiers}, to be passed to {@link
+   * com.google.errorprone.matchers.Description.Builder#addLazyFix} so that the modifiers are only
+   * re-lexed if the fix is used.
+   */
+  public static Supplier<Fix> addModifiersLazily(
+      final Tree tree, VisitorState state, final Modifier... modifiers) {
+    final JCCompilationUnit compilationUnit = compilationUnit(state);
+    final Context context = state.context;
+    return new Supplier<Fix>() {
+      @Override
+      public Fix get() {
+        return addModifiers(tree, compilationUnit, context, modifiers);
+      }
+    };
+  }
+
   /** Remove modifiers from the given class, method, or field declaration. */
   @Nullable
   public static Fix removeModifiers(Tree tree, VisitorState state, Modifier... modifiers) {
+    return removeModifiers(tree, compilationUnit(state), state.context, modifiers);
+  }
+
+  @Nullable
+  private static Fix removeModifiers(
+      Tree tree, JCCompilationUnit compilationUnit, Context context, Modifier... modifiers) {
     Set<Modifier> toRemove = ImmutableSet.copyOf(modifiers);
     ModifiersTree originalModifiers = ASTHelpers.getModifiers(tree);
     if (originalModifiers == null) {
       return null;
     }
     SuggestedFix.Builder fix = SuggestedFix.builder();
-    ImmutableList<ErrorProneToken> tokens = state.getTokensForNode(originalModifiers);
+    ImmutableList<ErrorProneToken> tokens =
+        tokensForNode(originalModifiers, compilationUnit, context);
     int basePos = ((JCTree) originalModifiers).getStartPosition();
     boolean empty = true;
     for (ErrorProneToken tok : tokens) {
@@ -161,6 +196,46 @@ public class SuggestedFixes {
     return fix.build();
   }
 
+  /**
+   * Returns a supplier of {@link #removeModifiers}, to be passed to {@link
+   * com.google.errorprone.matchers.Description.Builder#addLazyFix} so that the modifiers are only
+   * re-lexed if the fix is used.
+   */
+  public static Supplier<Fix> removeModifiersLazily(
+      final Tree tree, VisitorState state, final Modifier... modifiers) {
+    final JCCompilationUnit compilationUnit = compilationUnit(state);
+    final Context context = state.context;
+    return new Supplier<Fix>() {
+      @Override
+      public Fix get() {
+        return removeModifiers(tree, compilationUnit, context, modifiers);
+      }
+    };
+  }
+
+  private static JCCompilationUnit compilationUnit(VisitorState state) {
+    return (JCCompilationUnit) state.getPath().getCompilationUnit();
+  }
+
+  /** Returns the end position of the node, or -1 if it is not available. */
+  private static int endPosition(Tree node, JCCompilationUnit compilationUnit) {
+    if (compilationUnit.endPositions == null) {
+      return -1;
+    }
+    return ((JCTree) node).getEndPosition(compilationUnit.endPositions);
+  }
+
+  /** Like {@link VisitorState#getTokensForNode}, without needing a path to the node. */
+  private static ImmutableList<ErrorProneToken> tokensForNode(
+      Tree tree, JCCompilationUnit compilationUnit, Context context) {
+    int end = endPosition(tree, compilationUnit);
+    if (end < 0) {
+      return ImmutableList.of();
+    }
+    return CompilationUnitTokens.instance(context, compilationUnit)
+        .getTokens(((JCTree) tree).getStartPosition(), end);
+  }
+
   /** Returns a human-friendly name of the given {@link Symbol.TypeSymbol} for use in fixes. */
   public static String qualifyType(
       VisitorState state, SuggestedFix.Builder fix, Symbol.TypeSymbol sym) {
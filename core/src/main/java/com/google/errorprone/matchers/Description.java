@@ -20,12 +20,16 @@ import static com.google.errorprone.BugPattern.SeverityLevel.SUGGESTION;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.errorprone.BugPattern;
 import com.google.errorprone.BugPattern.SeverityLevel;
 import com.google.errorprone.fixes.Fix;
 import com.sun.source.tree.Tree;
+import java.util.ArrayList;
+import java.util.List;
 import javax.annotation.CheckReturnValue;
 import javax.annotation.Nullable;
 
@@ -38,7 +42,13 @@ public class Description {
   /** Describes the sentinel value of the case where the match failed. */
   public static final Description NO_MATCH =
       new Description(
-          null, "<no match>", "<no match>", "<no match>", ImmutableList.<Fix>of(), SUGGESTION);
+          null,
+          "<no match>",
+          "<no match>",
+          "<no match>",
+          ImmutableList.<Fix>of(),
+          null,
+          SUGGESTION);
 
   private static final String UNDEFINED_CHECK_NAME = "Undefined";
 
@@ -66,9 +76,20 @@ public class Description {
   /**
    * A list of fixes to suggest in an error message or use in automated refactoring.  Fixes are
    * in order of decreasing preference, from most preferred to least preferred.
+   *
+   * @deprecated use {@link #getFixes}, which also includes fixes added with {@link
+   *     Builder#addLazyFix}
    */
+  @Deprecated
   public final ImmutableList<Fix> fixes;
 
+  /**
+   * Computes all fixes, including lazily added ones, on first use; null if every fix was added
+   * eagerly, in which case they are just {@link #fixes}.
+   */
+  @Nullable
+  private final Supplier<ImmutableList<Fix>> fixSupplier;
+
   /**
    * Is this a warning, error, etc.?
    */
@@ -90,6 +111,17 @@ public class Description {
     return link;
   }
 
+  /**
+   * Returns a list of fixes to suggest in an error message or use in automated refactoring.  Fixes
+   * are in order of decreasing preference, from most preferred to least preferred.
+   *
+   * <p>Fixes added with {@link Builder#addLazyFix} are computed on the first call.
+   */
+  @SuppressWarnings("deprecation") // the eager fixes are still stored in the public field
+  public ImmutableList<Fix> getFixes() {
+    return fixSupplier == null ? fixes : fixSupplier.get();
+  }
+
   /** Returns the raw message, not including a link or check name. */
   public String getRawMessage() {
     return rawMessage;
@@ -107,34 +139,53 @@ public class Description {
   /** TODO(cushon): Remove this constructor and ensure that there's always a check name. */
   public Description(Tree node, String message, Fix suggestedFix,
                      BugPattern.SeverityLevel severity) {
-    this(node, UNDEFINED_CHECK_NAME, message, message, ImmutableList.of(suggestedFix), severity);
+    this(
+        node,
+        UNDEFINED_CHECK_NAME,
+        message,
+        message,
+        ImmutableList.of(suggestedFix),
+        null,
+        severity);
     if (suggestedFix == null) {
       throw new IllegalArgumentException("suggestedFix must not be null.");
     }
   }
 
   private Description(Tree node, String checkName, String rawMessage, String link,
-      ImmutableList<Fix> fixes, BugPattern.SeverityLevel severity) {
+      ImmutableList<Fix> fixes, @Nullable Supplier<ImmutableList<Fix>> fixSupplier,
+      BugPattern.SeverityLevel severity) {
     this.node = node;
     this.checkName = checkName;
     this.rawMessage = rawMessage;
     this.link = link;
     this.fixes = fixes;
+    this.fixSupplier = fixSupplier;
     this.severity = severity;
   }
 
   @CheckReturnValue
+  @SuppressWarnings("deprecation") // copies the eager fixes
   public Description applySeverityOverride(SeverityLevel severity) {
-    return new Description(node, checkName, rawMessage, link, fixes, severity);
+    return new Description(node, checkName, rawMessage, link, fixes, fixSupplier, severity);
   }
 
   @CheckReturnValue
-  public Description filterFixes(Predicate<? super Fix> predicate) {
+  @SuppressWarnings("deprecation") // filters the eager fixes
+  public Description filterFixes(final Predicate<? super Fix> predicate) {
     return new Description(node,
         checkName,
         rawMessage,
         link,
         ImmutableList.copyOf(Iterables.filter(fixes, predicate)),
+        fixSupplier == null
+            ? null
+            : Suppliers.memoize(new Supplier<ImmutableList<Fix>>() {
+              @Override
+              public ImmutableList<Fix> get() {
+                return ImmutableList.copyOf(Iterables.filter(fixSupplier.get(), predicate));
+              }
+            }),
         severity);
   }
 
@@ -163,6 +214,8 @@ public class Description {
     private final String linkUrl;
     private final SeverityLevel severity;
     private final ImmutableList.Builder<Fix> fixListBuilder = ImmutableList.builder();
+    // All fixes in order, eager ones included; only created once a lazy fix is added.
+    private List<Supplier<? extends Fix>> fixSuppliers;
     private String rawMessage;
 
     private Builder(
@@ -189,6 +242,35 @@ public class Description {
         throw new IllegalArgumentException("fix must not be null");
       }
       fixListBuilder.add(fix);
+      if (fixSuppliers != null) {
+        fixSuppliers.add(Suppliers.ofInstance(fix));
+      }
+      return this;
+    }
+
+    /**
+     * Add a suggested fix for this {@code Description}, to be computed only if and when a consumer
+     * of the description asks for its fixes.  Fixes should be added in order of decreasing
+     * preference.  If the supplier returns null, no fix is suggested.
+     *
+     * <p>Descriptions may outlive the {@link com.google.errorprone.VisitorState} passed to the
+     * checker, whose path changes as the compilation unit is scanned, so the supplier should
+     * capture just the trees and compilation-wide state the fix needs rather than the visitor
+     * state itself. Lazy fixes are not included in the deprecated {@link Description#fixes} field.
+     *
+     * @param fix A supplier of a suggested fix for this problem
+     */
+    public Builder addLazyFix(Supplier<? extends Fix> fix) {
+      if (fix == null) {
+        throw new IllegalArgumentException("fix must not be null");
+      }
+      if (fixSuppliers == null) {
+        fixSuppliers = new ArrayList<>();
+        for (Fix eager : fixListBuilder.build()) {
+          fixSuppliers.add(Suppliers.ofInstance(eager));
+        }
+      }
+      fixSuppliers.add(fix);
       return this;
     }
 
@@ -208,7 +290,26 @@ public class Description {
 
     public Description build() {
       return new Description(node, name, rawMessage, linkTextForDiagnostic(linkUrl),
-          fixListBuilder.build(), severity);
+          fixListBuilder.build(),
+          fixSuppliers == null ? null : computeFixes(ImmutableList.copyOf(fixSuppliers)),
+          severity);
+    }
+
+    private static Supplier<ImmutableList<Fix>> computeFixes(
+        final ImmutableList<Supplier<? extends Fix>> fixSuppliers) {
+      return Suppliers.memoize(new Supplier<ImmutableList<Fix>>() {
+        @Override
+        public ImmutableList<Fix> get() {
+          ImmutableList.Builder<Fix> fixes = ImmutableList.builder();
+          for (Supplier<? extends Fix> fixSupplier : fixSuppliers) {
+            Fix fix = fixSupplier.get();
+            if (fix != null) {
+              fixes.add(fix);
+            }
+          }
+          return fixes.build();
+        }
+      });
     }
   }
 
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.matchers;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+import com.google.errorprone.BugPattern.SeverityLevel;
+import com.google.errorprone.DescriptionListener;
+import com.google.errorprone.FindingListener;
+import com.google.errorprone.fixes.Fix;
+import com.google.errorprone.fixes.PrecomputedFix;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import com.sun.tools.javac.util.JCDiagnostic.DiagnosticPosition;
+import javax.annotation.Nullable;
+
+/**
+ * A compact, immutable record of a {@link Description}, holding source positions and precomputed
+ * fixes instead of references to trees.
+ *
+ * <p>A {@link Description} keeps the tree it describes, and its fixes may keep others, so
+ * buffering descriptions retains the attributed trees of their compilation units.  Findings can be
+ * buffered for as long as needed.
+ */
+@AutoValue
+public abstract class Finding {
+
+  /**
+   * Creates a finding from {@code description}, which describes a tree in
+   * {@code compilationUnit}.  All of the description's fixes are computed.
+   */
+  public static Finding create(Description description, JCCompilationUnit compilationUnit) {
+    DiagnosticPosition position = (DiagnosticPosition) description.node;
+    ImmutableList.Builder<Fix> fixes = ImmutableList.builder();
+    for (Fix fix : description.getFixes()) {
+      fixes.add(PrecomputedFix.create(fix, compilationUnit.endPositions));
+    }
+    return new AutoValue_Finding(
+        compilationUnit.getSourceFile().toUri().getPath(),
+        position.getStartPosition(),
+        position.getEndPosition(compilationUnit.endPositions),
+        position.getPreferredPosition(),
+        description.checkName,
+        description.severity,
+        description.getMessage(),
+        fixes.build());
+  }
+
+  public static Finding create(
+      String sourcePath,
+      int startPosition,
+      int endPosition,
+      int preferredPosition,
+      String checkName,
+      @Nullable SeverityLevel severity,
+      String message,
+      Iterable<? extends Fix> fixes) {
+    return new AutoValue_Finding(
+        sourcePath,
+        startPosition,
+        endPosition,
+        preferredPosition,
+        checkName,
+        severity,
+        message,
+        ImmutableList.<Fix>copyOf(fixes));
+  }
+
+  /**
+   * Returns a listener that converts the descriptions of trees in {@code compilationUnit} to
+   * findings, and reports them to {@code listener}.
+   */
+  public static DescriptionListener listener(
+      final JCCompilationUnit compilationUnit, final FindingListener listener) {
+    checkNotNull(compilationUnit);
+    checkNotNull(listener);
+    return new DescriptionListener() {
+      @Override
+      public void onDescribed(Description description) {
+        listener.onFinding(create(description, compilationUnit));
+      }
+    };
+  }
+
+  /** The path of the source file containing the finding. */
+  public abstract String sourcePath();
+
+  /** The start position of the described tree. */
+  public abstract int startPosition();
+
+  /** The end position of the described tree, or -1 if it is unknown. */
+  public abstract int endPosition();
+
+  /** The position diagnostics for the finding should be reported at. */
+  public abstract int preferredPosition();
+
+  public abstract String checkName();
+
+  @Nullable
+  public abstract SeverityLevel severity();
+
+  /** The message of the finding, as returned by {@link Description#getMessage}. */
+  public abstract String message();
+
+  /** Fixes for the finding, in order of decreasing preference. */
+  public abstract ImmutableList<Fix> fixes();
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2016 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.errorprone.refaster;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+import com.sun.source.tree.ExpressionStatementTree;
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.MethodInvocationTree;
+import com.sun.source.tree.ReturnTree;
+import com.sun.source.tree.StatementTree;
+import com.sun.source.tree.Tree.Kind;
+import com.sun.source.tree.VariableTree;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * An index over the statements of a block, recording the kind of each statement and the name of
+ * the method it invokes, if any.
+ *
+ * <p>{@link BlockTemplate} uses this to attempt alignments of its statements only at starting
+ * statements that could unify with the first template statement, and only where a statement that
+ * could unify with the last template statement follows, rather than at every statement of the
+ * block.
+ */
+final class BlockIndex {
+  /**
+   * Syntactic constraints that a single target statement must satisfy to unify with a template
+   * statement.  Absent constraints are {@code null}.
+   */
+  @AutoValue
+  abstract static class Anchor {
+    static final Anchor UNCONSTRAINED = create(null, null);
+
+    static Anchor create(@Nullable Kind kind, @Nullable String invokedMethod) {
+      return new AutoValue_BlockIndex_Anchor(kind, invokedMethod);
+    }
+
+    @Nullable
+    abstract Kind kind();
+
+    @Nullable
+    abstract String invokedMethod();
+
+    /**
+     * Returns the constraints on a target statement unified with {@code statement}.  Statements
+     * which may consume zero or several target statements, and class declarations, which unify
+     * with any of several kinds of target, are unconstrained.
+     */
+    static Anchor forTemplateStatement(UStatement statement) {
+      if (statement instanceof UIf) {
+        return create(Kind.IF, null);
+      } else if (!(statement instanceof USimpleStatement) || statement instanceof UClassDecl) {
+        return UNCONSTRAINED;
+      }
+      UExpression invocation = null;
+      if (statement instanceof UExpressionStatement) {
+        invocation = ((UExpressionStatement) statement).getExpression();
+      } else if (statement instanceof UReturn) {
+        invocation = ((UReturn) statement).getExpression();
+      } else if (statement instanceof UVariableDecl) {
+        invocation = ((UVariableDecl) statement).getInitializer();
+      }
+      return create(statement.getKind(), templateMethodName(invocation));
+    }
+
+    @Nullable
+    private static String templateMethodName(@Nullable UExpression expression) {
+      if (!(expression instanceof UMethodInvocation)) {
+        return null;
+      }
+      UExpression methodSelect = ((UMethodInvocation) expression).getMethodSelect();
+      if (methodSelect instanceof UMemberSelect) {
+        return ((UMemberSelect) methodSelect).getIdentifier().contents();
+      } else if (methodSelect instanceof UStaticIdent) {
+        return ((UStaticIdent) methodSelect).getName().contents();
+      }
+      return null;
+    }
+  }
+
+  /**
+   * The shape of a sequence of template statements: anchors for its first and last target
+   * statements, and the number of target statements it consumes.
+   */
+  @AutoValue
+  abstract static class Shape {
+    static Shape create(List<? extends UStatement> templateStatements) {
+      if (templateStatements.isEmpty()) {
+        return new AutoValue_BlockIndex_Shape(Anchor.UNCONSTRAINED, Anchor.UNCONSTRAINED, 0, true);
+      }
+      int minLength = 0;
+      boolean fixedLength = true;
+      for (UStatement statement : templateStatements) {
+        if (statement instanceof USimpleStatement) {
+          minLength++;
+        } else {
+          fixedLength = false;
+          if (statement instanceof UIf) {
+            minLength++;
+          }
+        }
+      }
+      UStatement last = templateStatements.get(templateStatements.size() - 1);
+      return new AutoValue_BlockIndex_Shape(
+          Anchor.forTemplateStatement(templateStatements.get(0)),
+          (last instanceof USimpleStatement)
+              ? Anchor.forTemplateStatement(last)
+              : Anchor.UNCONSTRAINED,
+          minLength,
+          fixedLength);
+    }
+
+    abstract Anchor first();
+
+    abstract Anchor last();
+
+    /** The minimum number of target statements consumed by a match. */
+    abstract int minLength();
+
+    /** Whether every match consumes exactly {@link #minLength} target statements. */
+    abstract boolean fixedLength();
+  }
+
+  static BlockIndex create(List<? extends StatementTree> statements) {
+    int size = statements.size();
+    Kind[] kinds = new Kind[size];
+    String[] invokedMethods = new String[size];
+    for (int i = 0; i < size; i++) {
+      StatementTree statement = statements.get(i);
+      kinds[i] = statement.getKind();
+      invokedMethods[i] = targetMethodName(statement);
+    }
+    return new BlockIndex(kinds, invokedMethods);
+  }
+
+  @Nullable
+  private static String targetMethodName(StatementTree statement) {
+    ExpressionTree expression;
+    switch (statement.getKind()) {
+      case EXPRESSION_STATEMENT:
+        expression = ((ExpressionStatementTree) statement).getExpression();
+        break;
+      case RETURN:
+        expression = ((ReturnTree) statement).getExpression();
+        break;
+      case VARIABLE:
+        expression = ((VariableTree) statement).getInitializer();
+        break;
+      default:
+        return null;
+    }
+    if (!(expression instanceof MethodInvocationTree)) {
+      return null;
+    }
+    ExpressionTree methodSelect = ((MethodInvocationTree) expression).getMethodSelect();
+    if (methodSelect instanceof MemberSelectTree) {
+      return ((MemberSelectTree) methodSelect).getIdentifier().toString();
+    } else if (methodSelect instanceof IdentifierTree) {
+      return ((IdentifierTree) methodSelect).getName().toString();
+    }
+    return null;
+  }
+
+  private final Kind[] kinds;
+  private final String[] invokedMethods;
+
+  private BlockIndex(Kind[] kinds, String[] invokedMethods) {
+    this.kinds = kinds;
+    this.invokedMethods = invokedMethods;
+  }
+
+  int size() {
+    return kinds.length;
+  }
+
+  /**
+   * Returns whether the statement at {@code index} satisfies the constraints of {@code anchor}.
+   */
+  boolean satisfies(int index, Anchor anchor) {
+    return (anchor.kind() == null || anchor.kind() == kinds[index])
+        && (anchor.invokedMethod() == null
+            || anchor.invokedMethod().equals(invokedMethods[index]));
+  }
+
+  /**
+   * Returns, in increasing order, the indices of statements at or after {@code from} at which a
+   * match of a template with the specified shape could begin.
+   */
+  ImmutableList<Integer> candidateStarts(int from, Shape shape) {
+    int lastStart = Math.min(size() - 1, size() - shape.minLength());
+    // The latest statement satisfying the last anchor bounds how late a match may begin.
+    int lastEnd = -1;
+    if (!shape.fixedLength()) {
+      for (int i = size() - 1; i >= from; i--) {
+        if (satisfies(i, shape.last())) {
+          lastEnd = i;
+          break;
+        }
+      }
+    }
+    ImmutableList.Builder<Integer> result = ImmutableList.builder();
+    for (int start = from; start <= lastStart; start++) {
+      if (!satisfies(start, shape.first())) {
+        continue;
+      }
+      if (shape.minLength() > 0) {
+        int minEnd = start + shape.minLength() - 1;
+        if (shape.fixedLength() ? !satisfies(minEnd, shape.last()) : lastEnd < minEnd) {
+          continue;
+        }
+      }
+      result.add(start);
+    }
+    return result.build();
+  }
+}
@@ -16,6 +16,7 @@ package com.google.errorprone.refaster;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static java.util.logging.Level.SEVERE;
+import static java.util.logging.Level.WARNING;
 
 import com.google.auto.value.AutoValue;
 import com.google.common.base.CharMatcher;
@@ -89,8 +90,15 @@ public abstract class BlockTemplate extends Template<BlockTemplateMatch> {
     if (tree instanceof JCBlock) {
       JCBlock block = (JCBlock) tree;
       ImmutableList<JCStatement> targetStatements = ImmutableList.copyOf(block.getStatements());
-      return matchesStartingAnywhere(block, 0, targetStatements, context).first()
-          .or(List.<BlockTemplateMatch>nil());
+      BlockIndex index = BlockIndex.create(targetStatements);
+      BlockIndex.Shape shape = BlockIndex.Shape.create(templateStatements());
+      try {
+        return matchesStartingAnywhere(block, 0, targetStatements, index, shape, context).first()
+            .or(List.<BlockTemplateMatch>nil());
+      } catch (Unifier.SearchBudgetExceededException e) {
+        logger.log(WARNING, String.format("Abandoned match at position %d: %s",
+            block.getStartPosition(), e.getMessage()));
+      }
     }
     return ImmutableList.of();
   }
@@ -99,6 +107,8 @@ public abstract class BlockTemplate extends Template<BlockTemplateMatch> {
       final JCBlock block,
       final int offset, 
       final ImmutableList<? extends StatementTree> statements, 
+      final BlockIndex index,
+      final BlockIndex.Shape shape,
       final Context context) {
     if (statements.isEmpty()) {
       return Choice.none();
@@ -123,8 +133,8 @@ public abstract class BlockTemplate extends Template<BlockTemplateMatch> {
                 BlockTemplateMatch match = new BlockTemplateMatch(block, checkedUnifier.get(),
                     offset, offset + consumedStatements);
                 return matchesStartingAnywhere(block, offset + consumedStatements,
-                    statements.subList(consumedStatements, statements.size()), context).transform(
-                    prepend(match));
+                    statements.subList(consumedStatements, statements.size()), index, shape,
+                    context).transform(prepend(match));
               }
             } catch (CouldNotResolveImportException e) {
               // fall through
@@ -143,15 +153,22 @@ public abstract class BlockTemplate extends Template<BlockTemplateMatch> {
     };
   }
 
+  /**
+   * Returns the matches of this template against {@code statements}, the statements of
+   * {@code block} from {@code offset} onwards.  Alignments are only attempted at starting
+   * statements that {@code index} reports could begin a match of this template's {@code shape}.
+   */
   private Choice<List<BlockTemplateMatch>> matchesStartingAnywhere(
       JCBlock block, 
       int offset,
       final ImmutableList<? extends StatementTree> statements, 
+      BlockIndex index,
+      BlockIndex.Shape shape,
       final Context context) {
     Choice<List<BlockTemplateMatch>> choice = Choice.none();
-    for (int i = 0; i < statements.size(); i++) {
-      choice = choice.or(matchesStartingAtBeginning(block, offset + i,
-          statements.subList(i, statements.size()), context));
+    for (int start : index.candidateStarts(offset, shape)) {
+      choice = choice.or(matchesStartingAtBeginning(block, start,
+          statements.subList(start - offset, statements.size()), index, shape, context));
     }
     return choice.or(Choice.of(List.<BlockTemplateMatch>nil()));
   }
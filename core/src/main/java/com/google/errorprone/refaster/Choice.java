@@ -23,12 +23,15 @@ import com.google.common.base.Function;
 import com.google.common.base.Functions;
 import com.google.common.base.Optional;
 import com.google.common.base.Predicate;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
 import com.google.errorprone.annotations.ForOverride;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * A representation of a choice with zero or more options, which may be evaluated lazily or
@@ -83,6 +86,11 @@ public abstract class Choice<T> {
       return this;
     }
 
+    @Override
+    public Choice<Object> memoize() {
+      return this;
+    }
+
     @Override
     public String toString() {
       return "Choice.NONE";
@@ -133,6 +141,11 @@ public abstract class Choice<T> {
         return of(function.apply(t));
       }
 
+      @Override
+      public Choice<T> memoize() {
+        return this;
+      }
+
       @Override
       public String toString() {
         return String.format("Choice.of(%s)", t);
@@ -323,4 +336,45 @@ public abstract class Choice<T> {
       }
     };
   }
+
+  /**
+   * Returns a {@code Choice} with the same options as this one, except that each option is
+   * computed at most once and then shared by every traversal of the returned {@code Choice}.
+   *
+   * <p>Options are still computed lazily, in order, as traversals first need them.
+   */
+  public Choice<T> memoize() {
+    final Choice<T> thisChoice = this;
+    return new Choice<T>() {
+      private final List<T> computed = new ArrayList<>();
+      private Iterator<T> source;
+
+      @Override
+      protected Iterator<T> iterator() {
+        return new AbstractIterator<T>() {
+          private int index = 0;
+
+          @Override
+          protected T computeNext() {
+            if (index < computed.size()) {
+              return computed.get(index++);
+            }
+            if (source == null) {
+              source = thisChoice.iterator();
+            }
+            if (source.hasNext()) {
+              computed.add(source.next());
+              return computed.get(index++);
+            }
+            return endOfData();
+          }
+        };
+      }
+
+      @Override
+      public String toString() {
+        return String.format("%s.memoize()", thisChoice);
+      }
+    };
+  }
 }
@@ -19,6 +19,7 @@ package com.google.errorprone.refaster;
 import static com.google.common.base.Preconditions.checkState;
 import static java.util.logging.Level.FINE;
 import static java.util.logging.Level.SEVERE;
+import static java.util.logging.Level.WARNING;
 
 import com.google.auto.value.AutoValue;
 import com.google.common.base.Function;
@@ -116,7 +117,14 @@ public abstract class ExpressionTemplate extends Template<ExpressionTemplateMatc
   public Iterable<ExpressionTemplateMatch> match(JCTree target, Context context) {
     if (target instanceof JCExpression) {
       JCExpression targetExpr = (JCExpression) target;
-      Optional<Unifier> unifier = unify(targetExpr, new Unifier(context)).first();
+      Optional<Unifier> unifier;
+      try {
+        unifier = unify(targetExpr, new Unifier(context)).first();
+      } catch (Unifier.SearchBudgetExceededException e) {
+        logger.log(WARNING, String.format("Abandoned match at position %d: %s",
+            targetExpr.getStartPosition(), e.getMessage()));
+        return ImmutableList.of();
+      }
       if (unifier.isPresent()) {
         return ImmutableList.of(new ExpressionTemplateMatch(targetExpr, unifier.get()));
       }
@@ -0,0 +1,510 @@
+/*
+ * Copyright 2016 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.refaster;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.errorprone.CodeTransformer;
+import com.google.errorprone.SubContext;
+import com.google.errorprone.apply.DescriptionBasedDiff;
+import com.google.errorprone.apply.DiffApplier;
+import com.google.errorprone.apply.DiffApplierMetrics;
+import com.google.errorprone.apply.FileDestination;
+import com.google.errorprone.apply.FsFileDestination;
+import com.google.errorprone.apply.FsFileSource;
+import com.google.errorprone.apply.PatchFileDestination;
+import com.google.errorprone.apply.SourceFile;
+import com.google.errorprone.util.CompilationUnitTokens;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.util.TreePath;
+import com.sun.tools.javac.api.JavacTaskImpl;
+import com.sun.tools.javac.api.JavacTool;
+import com.sun.tools.javac.file.JavacFileManager;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import com.sun.tools.javac.util.Context;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaFileObject;
+
+/**
+ * Applies compiled Refaster rules to every Java source file under a directory.
+ *
+ * <p>Source files are partitioned into batches, each of which is parsed and attributed by its own
+ * javac task on a fork-join pool, so that batches share no compiler state.  Types from other
+ * batches are resolved from the source directory, which is on each task's source path.  The
+ * resulting edits are streamed through a {@link DiffApplier}, either back to the source files or
+ * to a single unified patch file.  Once all the edits for a batch have been written successfully,
+ * the batch is recorded in an optional checkpoint file, identified by the hash of its files'
+ * paths and contents; a later run with the same checkpoint file skips recorded batches whose
+ * files haven't changed since, so an interrupted migration can be resumed.
+ *
+ * <p>When writing a patch, each batch's edits are collected in memory and appended to the patch
+ * in one piece as the batch is recorded, and the checkpoint records the patch's length after each
+ * batch.  A resumed run truncates the patch to the length recorded for the last batch, discarding
+ * any edits of a batch that was interrupted before it was recorded, which it then redoes.
+ *
+ * <p>Usage: {@code RefasterDriver --rules <file.analyzer> --sources <dir> [--classpath <path>]
+ * [--batch-size <n>] [--threads <n>] [--patch <file>] [--checkpoint <file>] [--metrics <file>]
+ * [--statistics <file>] [--rule-budget-ms <n>] [javac options...]}
+ *
+ * <p>If {@code --metrics} is given, a JSON summary of the {@link DiffApplierMetrics} of the run is
+ * written to the file as the run progresses and once it completes.
+ *
+ * <p>If {@code --statistics} is given, {@link RefasterStatistics} are collected for each rule, and
+ * their summary is written to the file at the end of the run.  {@code --rule-budget-ms} limits the
+ * time each rule may spend on a compilation unit, and implies collecting statistics.
+ */
+public final class RefasterDriver {
+  private static final Logger logger = Logger.getLogger(RefasterDriver.class.toString());
+
+  private static final int DEFAULT_BATCH_SIZE = 50;
+
+  public static void main(String[] args) throws Exception {
+    System.exit(fromArgs(args).run() == 0 ? 0 : 1);
+  }
+
+  /** Creates a driver configured by command-line arguments. */
+  static RefasterDriver fromArgs(String[] args) throws IOException, ClassNotFoundException {
+    RefasterDriver driver = new RefasterDriver();
+    long ruleBudgetMillis = 0;
+    List<String> javacOptions = new ArrayList<>();
+    for (int i = 0; i < args.length; i++) {
+      switch (args[i]) {
+        case "--rules":
+          driver.rules = loadRules(Paths.get(args[++i]));
+          break;
+        case "--sources":
+          driver.sourceRoot = Paths.get(args[++i]).toAbsolutePath();
+          break;
+        case "--classpath":
+          javacOptions.add("-classpath");
+          javacOptions.add(args[++i]);
+          break;
+        case "--batch-size":
+          driver.batchSize = Integer.parseInt(args[++i]);
+          break;
+        case "--threads":
+          driver.threads = Integer.parseInt(args[++i]);
+          break;
+        case "--patch":
+          driver.patchFile = Paths.get(args[++i]);
+          break;
+        case "--checkpoint":
+          driver.checkpointFile = Paths.get(args[++i]);
+          break;
+        case "--metrics":
+          driver.metricsFile = Paths.get(args[++i]);
+          break;
+        case "--statistics":
+          driver.statisticsFile = Paths.get(args[++i]);
+          break;
+        case "--rule-budget-ms":
+          ruleBudgetMillis = Long.parseLong(args[++i]);
+          break;
+        default:
+          javacOptions.add(args[i]);
+      }
+    }
+    checkArgument(driver.rules != null, "--rules is required");
+    checkArgument(driver.sourceRoot != null, "--sources is required");
+    driver.javacOptions = ImmutableList.copyOf(javacOptions);
+    if (driver.statisticsFile != null || ruleBudgetMillis > 0) {
+      driver.statistics = RefasterStatistics.create(ruleBudgetMillis, TimeUnit.MILLISECONDS);
+    }
+    return driver;
+  }
+
+  /** Loads a rule bundle written by {@link RefasterRuleCompiler}. */
+  static CodeTransformer loadRules(Path path) throws IOException, ClassNotFoundException {
+    try (InputStream in = Files.newInputStream(path);
+        ObjectInputStream ois = new ObjectInputStream(in)) {
+      return (CodeTransformer) ois.readObject();
+    }
+  }
+
+  private CodeTransformer rules;
+  private Path sourceRoot;
+  private ImmutableList<String> javacOptions = ImmutableList.of();
+  private int batchSize = DEFAULT_BATCH_SIZE;
+  private int threads = Runtime.getRuntime().availableProcessors();
+  private Path patchFile;
+  private Path checkpointFile;
+  private Path metricsFile;
+  private Path statisticsFile;
+  // Collected across all batches, or null if not enabled.
+  private RefasterStatistics statistics;
+  // The length of the patch after the last batch recorded in the checkpoint, or -1 if unknown.
+  private long recordedPatchLength = -1;
+
+  private RefasterDriver() {}
+
+  /**
+   * Applies the rules to all batches not yet checkpointed, returning the number that failed.  The
+   * statistics summary, if enabled, is written once all batches have finished.
+   */
+  int run() throws IOException, InterruptedException {
+    checkArgument(batchSize > 0, "Batch size must be positive but was %s", batchSize);
+    checkArgument(threads > 0, "Thread count must be positive but was %s", threads);
+    Set<String> completedBatches = readCheckpoint();
+    FileDestination destination;
+    if (patchFile == null) {
+      destination = new FsFileDestination(sourceRoot);
+    } else {
+      // When resuming, the patch already holds the edits of the completed batches, followed by
+      // those of any batch that was interrupted before it was recorded.
+      truncatePatch(completedBatches.isEmpty() ? 0 : recordedPatchLength);
+      destination = new BatchPatches();
+    }
+    DiffApplier applier = new DiffApplier(threads, new FsFileSource(sourceRoot), destination);
+    if (metricsFile != null) {
+      applier.addMetricsListener(new DiffApplierMetrics.Listener() {
+        @Override
+        public void onProgress(DiffApplierMetrics metrics) {
+          writeMetrics(metrics);
+        }
+      });
+    }
+    applier.startAsync().awaitRunning();
+
+    List<List<Path>> batches = Lists.partition(findSources(sourceRoot), batchSize);
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    List<ForkJoinTask<Boolean>> tasks = new ArrayList<>();
+    int skipped = 0;
+    try {
+      for (List<Path> batch : batches) {
+        if (completedBatches.contains(batchId(batch))) {
+          skipped++;
+          continue;
+        }
+        tasks.add(pool.submit(new Batch(batch, applier, destination)));
+      }
+      logger.log(Level.INFO, String.format(
+          "Applying Refaster rules to %d batches, skipping %d already completed",
+          tasks.size(), skipped));
+      int failed = 0;
+      for (ForkJoinTask<Boolean> task : tasks) {
+        try {
+          if (!task.get()) {
+            failed++;
+          }
+        } catch (ExecutionException e) {
+          logger.log(Level.SEVERE, "Batch failed", e.getCause());
+          failed++;
+        }
+      }
+      return failed;
+    } finally {
+      pool.shutdown();
+      applier.stopAsync().awaitTerminated();
+      if (destination instanceof Closeable) {
+        ((Closeable) destination).close();
+      }
+      writeStatistics();
+    }
+  }
+
+  private void writeStatistics() throws IOException {
+    if (statistics == null) {
+      return;
+    }
+    if (statisticsFile == null) {
+      StringBuilder summary = new StringBuilder();
+      statistics.writeSummary(summary);
+      logger.log(Level.INFO, summary.toString());
+      return;
+    }
+    try (Writer writer = Files.newBufferedWriter(statisticsFile, UTF_8)) {
+      statistics.writeSummary(writer);
+    }
+  }
+
+  private final class Batch implements Callable<Boolean> {
+    private final List<Path> files;
+    private final DiffApplier applier;
+    private final FileDestination destination;
+
+    Batch(List<Path> files, DiffApplier applier, FileDestination destination) {
+      this.files = files;
+      this.applier = applier;
+      this.destination = destination;
+    }
+
+    @Override
+    public Boolean call() throws Exception {
+      BatchPatches patches =
+          (destination instanceof BatchPatches) ? (BatchPatches) destination : null;
+      StringWriter patch = (patches != null) ? patches.start(files) : null;
+      try {
+        return apply(patch);
+      } finally {
+        if (patches != null) {
+          patches.finish(files);
+        }
+      }
+    }
+
+    private boolean apply(@Nullable StringWriter patch) throws Exception {
+      DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+      JavacTool tool = JavacTool.create();
+      List<Future<?>> pending = new ArrayList<>();
+      try (JavacFileManager fileManager =
+          tool.getStandardFileManager(diagnostics, null, UTF_8)) {
+        JavacTaskImpl task = (JavacTaskImpl) tool.getTask(
+            null,
+            fileManager,
+            diagnostics,
+            withSourcePath(javacOptions),
+            null,
+            fileManager.getJavaFileObjectsFromFiles(toFiles(files)));
+        if (statistics != null) {
+          statistics.enableIn(task.getContext());
+        }
+        Iterable<? extends CompilationUnitTree> units = task.parse();
+        task.analyze();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+          if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+            logger.log(Level.SEVERE, String.format(
+                "Skipping batch of %d files starting with %s, which failed to compile: %s",
+                files.size(), files.get(0), diagnostic));
+            return false;
+          }
+        }
+        for (CompilationUnitTree unit : units) {
+          DescriptionBasedDiff diff = DescriptionBasedDiff.create((JCCompilationUnit) unit);
+          rules.apply(new TreePath(unit), unitContext(task.getContext()), diff);
+          if (!diff.isEmpty()) {
+            Future<?> future = applier.put(diff);
+            if (future != null) {
+              pending.add(future);
+            }
+          }
+        }
+      }
+      boolean applied = true;
+      for (Future<?> future : pending) {
+        try {
+          future.get();
+        } catch (ExecutionException e) {
+          // The applier has logged the failure; leave the batch to be retried.
+          applied = false;
+        }
+      }
+      destination.flush();
+      if (!applied) {
+        return false;
+      }
+      // Identify the batch by its files' contents once its edits have been written, so that a
+      // resumed run skips it unless the files change again.
+      recordBatch(batchId(files), (patch != null) ? patch.toString() : null);
+      return true;
+    }
+  }
+
+  /**
+   * Collects the edits of each running batch in a patch of its own, so that they can be appended
+   * to the patch file all at once when the batch is recorded.
+   */
+  private final class BatchPatches implements FileDestination {
+    private final ConcurrentMap<Path, PatchFileDestination> byFile = new ConcurrentHashMap<>();
+
+    /** Starts collecting the edits to a batch's files, returning the batch's patch. */
+    StringWriter start(List<Path> files) {
+      StringWriter patch = new StringWriter();
+      PatchFileDestination destination = new PatchFileDestination(sourceRoot, patch);
+      for (Path file : files) {
+        byFile.put(file.normalize(), destination);
+      }
+      return patch;
+    }
+
+    void finish(List<Path> files) {
+      for (Path file : files) {
+        byFile.remove(file.normalize());
+      }
+    }
+
+    @Override
+    public void writeFile(SourceFile file) throws IOException {
+      PatchFileDestination destination = byFile.get(Paths.get(file.getPath()).normalize());
+      checkState(destination != null, "No running batch contains %s", file.getPath());
+      destination.writeFile(file);
+    }
+
+    @Override
+    public void flush() {}
+  }
+
+  /**
+   * Returns a context for applying the rules to a single compilation unit, in which the unit's
+   * tokens are lexed at most once and shared by all the rules, and released with the context.
+   */
+  private static Context unitContext(Context taskContext) {
+    Context unitContext = new SubContext(taskContext);
+    CompilationUnitTokens.preRegister(unitContext);
+    return unitContext;
+  }
+
+  /**
+   * Adds the source directory to the source path, so that files can refer to types in other
+   * batches, unless the javac options already set a source path.
+   */
+  private List<String> withSourcePath(List<String> options) {
+    if (options.contains("-sourcepath")) {
+      return options;
+    }
+    return ImmutableList.<String>builder()
+        .addAll(options)
+        .add("-sourcepath", sourceRoot.toString())
+        .build();
+  }
+
+  private synchronized void writeMetrics(DiffApplierMetrics metrics) {
+    try (Writer writer = Files.newBufferedWriter(metricsFile, UTF_8)) {
+      metrics.writeJson(writer);
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Failed to write metrics to " + metricsFile, e);
+    }
+  }
+
+  private static List<File> toFiles(List<Path> paths) {
+    List<File> files = new ArrayList<>(paths.size());
+    for (Path path : paths) {
+      files.add(path.toFile());
+    }
+    return files;
+  }
+
+  /** Returns all Java source files under {@code root}, in a stable order. */
+  private static List<Path> findSources(Path root) throws IOException {
+    final List<Path> sources = new ArrayList<>();
+    Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+        if (file.getFileName().toString().endsWith(".java")) {
+          sources.add(file);
+        }
+        return FileVisitResult.CONTINUE;
+      }
+    });
+    Collections.sort(sources);
+    return sources;
+  }
+
+  /**
+   * Identifies a batch by its files' paths and contents, so checkpoints survive reordering of the
+   * batches but not changes to their files.
+   */
+  private static String batchId(List<Path> batch) throws IOException {
+    Hasher hasher = Hashing.murmur3_128().newHasher();
+    for (Path path : batch) {
+      hasher.putString(path.toString(), UTF_8).putByte((byte) 0);
+      byte[] contents = Files.readAllBytes(path);
+      hasher.putInt(contents.length).putBytes(contents);
+    }
+    return hasher.hash().toString();
+  }
+
+  /**
+   * Reads the ids of the recorded batches, and the length of the patch after the last of them,
+   * if it was recorded.
+   */
+  private Set<String> readCheckpoint() throws IOException {
+    Set<String> completed = new HashSet<>();
+    if (checkpointFile != null && Files.exists(checkpointFile)) {
+      for (String line : Files.readAllLines(checkpointFile, UTF_8)) {
+        if (line.isEmpty()) {
+          continue;
+        }
+        List<String> fields = Splitter.on(' ').splitToList(line);
+        completed.add(fields.get(0));
+        recordedPatchLength = (fields.size() > 1) ? Long.parseLong(fields.get(1)) : -1;
+      }
+    }
+    return completed;
+  }
+
+  /** Truncates the patch to {@code length} bytes, unless the length is unknown. */
+  private void truncatePatch(long length) throws IOException {
+    if (length < 0) {
+      return;
+    }
+    try (FileChannel channel = FileChannel.open(
+        patchFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+      channel.truncate(length);
+    }
+  }
+
+  /**
+   * Appends a batch's edits to the patch, if writing one, and then records the batch in the
+   * checkpoint, with the length of the patch that includes its edits.
+   */
+  private synchronized void recordBatch(String batchId, @Nullable String patch)
+      throws IOException {
+    String entry = batchId;
+    if (patch != null) {
+      Files.write(patchFile, patch.getBytes(UTF_8),
+          StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+      entry += " " + Files.size(patchFile);
+    }
+    if (checkpointFile == null) {
+      return;
+    }
+    try (Writer writer = Files.newBufferedWriter(checkpointFile, UTF_8,
+        StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+      writer.write(entry);
+      writer.write('\n');
+    }
+  }
+}
@@ -120,6 +120,10 @@ public abstract class RefasterRule<M extends TemplateMatch, T extends Template<M
     context.put(JCCompilationUnit.class, compilationUnit);
     context.put(PackageSymbol.class, compilationUnit.packge);
     context.put(RULE_TYPE_VARS, typeVariables());
+    RefasterStatistics statistics = RefasterStatistics.instance(context);
+    if (statistics != null) {
+      statistics.startApplication(context, this);
+    }
     return context;
   }
 
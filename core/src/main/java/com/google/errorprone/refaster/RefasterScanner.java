@@ -16,12 +16,15 @@
 
 package com.google.errorprone.refaster;
 
+import static java.util.logging.Level.WARNING;
+
 import com.google.auto.value.AutoValue;
 import com.google.errorprone.BugPattern.SeverityLevel;
 import com.google.errorprone.DescriptionListener;
 import com.google.errorprone.fixes.SuggestedFix;
 import com.google.errorprone.matchers.Description;
 import com.google.errorprone.util.ASTHelpers;
+import com.google.errorprone.util.CompilationUnitTokens;
 import com.sun.source.tree.ClassTree;
 import com.sun.source.tree.DoWhileLoopTree;
 import com.sun.source.tree.IfTree;
@@ -32,17 +35,16 @@ import com.sun.source.tree.WhileLoopTree;
 import com.sun.source.util.SimpleTreeVisitor;
 import com.sun.source.util.TreeScanner;
 import com.sun.tools.javac.code.Symbol;
-import com.sun.tools.javac.parser.JavaTokenizer;
-import com.sun.tools.javac.parser.ScannerFactory;
-import com.sun.tools.javac.parser.Tokens.Token;
-import com.sun.tools.javac.parser.Tokens.TokenKind;
 import com.sun.tools.javac.tree.JCTree;
 import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
 import com.sun.tools.javac.tree.JCTree.JCStatement;
 import com.sun.tools.javac.tree.TreeMaker;
 import com.sun.tools.javac.util.Context;
 import com.sun.tools.javac.util.ListBuffer;
-import java.nio.CharBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
 
 /**
  * Scanner that outputs suggested fixes generated by a {@code RefasterMatcher}.
@@ -52,6 +54,8 @@ import java.nio.CharBuffer;
 @AutoValue
 abstract class RefasterScanner<M extends TemplateMatch, T extends Template<M>> 
     extends TreeScanner<Void, Context> {
+  private static final Logger logger = Logger.getLogger(RefasterScanner.class.toString());
+
   static <M extends TemplateMatch, T extends Template<M>> RefasterScanner<M, T> create(
       RefasterRule<M, T> rule, DescriptionListener listener) {
     return new AutoValue_RefasterScanner<>(rule, listener);
@@ -80,22 +84,25 @@ abstract class RefasterScanner<M extends TemplateMatch, T extends Template<M>>
 
   @Override
   public Void scan(Tree tree, Context context) {
-    if (tree == null) {
+    // Statistics for the application of this rule to this compilation unit, if enabled.
+    RefasterStatistics.RuleApplication application = RefasterStatistics.application(context);
+    if (tree == null || (application != null && application.exceededBudget())) {
       return null;
     }
     JCCompilationUnit compilationUnit = context.get(JCCompilationUnit.class);
-    for (T beforeTemplate : rule().beforeTemplates()) {
-      matchLoop: for (M match : beforeTemplate.match((JCTree) tree, context)) {
-        if (rule().rejectMatchesWithComments()) {
-          String matchContents = match.getRange(compilationUnit);
-          JavaTokenizer tokenizer = new JavaTokenizer(ScannerFactory.instance(context), 
-              CharBuffer.wrap(matchContents)) {};
-          for (Token token = tokenizer.readToken(); token.kind != TokenKind.EOF;
-              token = tokenizer.readToken()) {
-            if (token.comments != null && !token.comments.isEmpty()) {
-              continue matchLoop;
-            }
-          }
+    AtomicLong stepCounter = context.get(Unifier.STEP_COUNTER_KEY);
+    List<T> beforeTemplates = rule().beforeTemplates();
+    for (int i = 0; i < beforeTemplates.size(); i++) {
+      T beforeTemplate = beforeTemplates.get(i);
+      long startNanos = (application != null) ? System.nanoTime() : 0;
+      long startSteps = (stepCounter != null) ? stepCounter.get() : 0;
+      int matches = 0;
+      for (M match : beforeTemplate.match((JCTree) tree, context)) {
+        if (rule().rejectMatchesWithComments()
+            && CompilationUnitTokens.instance(context, compilationUnit)
+                .containsComments(
+                    match.getStartPosition(), match.getEndPosition(compilationUnit))) {
+          continue;
         }
         Description.Builder builder = Description.builder(match.getLocation(),
             rule().qualifiedTemplateClass(), "", SeverityLevel.WARNING, "");
@@ -108,7 +115,23 @@ abstract class RefasterScanner<M extends TemplateMatch, T extends Template<M>>
           }
         }
         listener().onDescribed(builder.build());
+        matches++;
       }
+      if (application != null) {
+        long nanos = System.nanoTime() - startNanos;
+        long steps = (stepCounter != null) ? stepCounter.get() - startSteps : 0;
+        application.record(i, steps, matches, nanos);
+      }
+    }
+    if (application != null && application.checkBudget()) {
+      logger.log(WARNING, String.format(
+          "Refaster rule %s exceeded its budget of %d ms in %s; skipping it for the rest of the "
+              + "compilation unit",
+          rule(),
+          TimeUnit.NANOSECONDS.toMillis(
+              RefasterStatistics.instance(context).ruleBudgetNanos()),
+          compilationUnit.getSourceFile().getName()));
+      return null;
     }
     return super.scan(tree, context);
   }
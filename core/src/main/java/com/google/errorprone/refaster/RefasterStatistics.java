@@ -0,0 +1,295 @@
+/*
+ * Copyright 2016 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.refaster;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.collect.ImmutableList;
+import com.sun.tools.javac.util.Context;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+
+/**
+ * Statistics on the Refaster rules applied in a {@link Context}: for each rule and each of its
+ * before templates, the number of candidate nodes tried, unification steps taken, matches found
+ * and time spent.
+ *
+ * <p>Statistics are only collected once {@link #enable enabled}. Optionally, each rule may also be
+ * given a time budget per compilation unit; a rule that exceeds it is skipped for the rest of that
+ * compilation unit, with a warning.  The same statistics may be enabled in several contexts, e.g.
+ * by {@link RefasterDriver}'s {@code --statistics} flag, to collect them for a whole run.
+ */
+public final class RefasterStatistics {
+  private static final Context.Key<RefasterStatistics> KEY = new Context.Key<>();
+
+  private static final Context.Key<RuleApplication> APPLICATION_KEY = new Context.Key<>();
+
+  /** Enables collection of statistics for Refaster rules applied in {@code context}. */
+  public static RefasterStatistics enable(Context context) {
+    return enable(context, 0, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Enables collection of statistics for Refaster rules applied in {@code context}, skipping any
+   * rule for the rest of a compilation unit once it has spent {@code ruleBudget} on it.  A budget
+   * of zero means no budget.
+   */
+  public static RefasterStatistics enable(Context context, long ruleBudget, TimeUnit unit) {
+    RefasterStatistics statistics = create(ruleBudget, unit);
+    statistics.enableIn(context);
+    return statistics;
+  }
+
+  /**
+   * Creates statistics that may be {@linkplain #enableIn enabled} in any number of contexts, with
+   * the given budget per rule and compilation unit.  A budget of zero means no budget.
+   */
+  public static RefasterStatistics create(long ruleBudget, TimeUnit unit) {
+    checkArgument(ruleBudget >= 0, "Rule budget must not be negative but was %s", ruleBudget);
+    return new RefasterStatistics(unit.toNanos(ruleBudget));
+  }
+
+  /** Collects statistics for the Refaster rules applied in {@code context}. */
+  public void enableIn(Context context) {
+    context.put(KEY, this);
+  }
+
+  /** Returns the statistics enabled in {@code context}, or {@code null} if none are. */
+  @Nullable
+  public static RefasterStatistics instance(Context context) {
+    return context.get(KEY);
+  }
+
+  /**
+   * Starts collecting statistics for the application of {@code rule} to a single compilation
+   * unit, whose state is kept in {@code context}.
+   */
+  void startApplication(Context context, RefasterRule<?, ?> rule) {
+    context.put(Unifier.STEP_COUNTER_KEY, new AtomicLong());
+    context.put(APPLICATION_KEY, new RuleApplication(forRule(rule)));
+  }
+
+  /**
+   * Returns the application of a rule to a compilation unit whose state is kept in {@code
+   * context}, or {@code null} if statistics aren't enabled.
+   */
+  @Nullable
+  static RuleApplication application(Context context) {
+    return context.get(APPLICATION_KEY);
+  }
+
+  private final long ruleBudgetNanos;
+  private final ConcurrentMap<String, RuleStatistics> rules = new ConcurrentHashMap<>();
+
+  private RefasterStatistics(long ruleBudgetNanos) {
+    this.ruleBudgetNanos = ruleBudgetNanos;
+  }
+
+  /** Returns whether a rule that has spent {@code nanos} on a compilation unit is skipped. */
+  boolean exceedsBudget(long nanos) {
+    return ruleBudgetNanos > 0 && nanos > ruleBudgetNanos;
+  }
+
+  long ruleBudgetNanos() {
+    return ruleBudgetNanos;
+  }
+
+  RuleStatistics forRule(RefasterRule<?, ?> rule) {
+    String name = rule.qualifiedTemplateClass();
+    RuleStatistics result = rules.get(name);
+    if (result == null) {
+      RuleStatistics created = new RuleStatistics(name, rule.beforeTemplates().size());
+      result = rules.putIfAbsent(name, created);
+      if (result == null) {
+        result = created;
+      }
+    }
+    return result;
+  }
+
+  /** Returns the statistics for every rule applied so far. */
+  public ImmutableList<RuleStatistics> rules() {
+    return ImmutableList.copyOf(rules.values());
+  }
+
+  /**
+   * Writes a summary of the statistics to {@code out}, one line per template, slowest rules
+   * first.  Rules that have never matched are marked, as candidates for pruning.
+   */
+  public void writeSummary(Appendable out) throws IOException {
+    List<RuleStatistics> sorted = new ArrayList<>(rules.values());
+    Collections.sort(sorted, new Comparator<RuleStatistics>() {
+      @Override
+      public int compare(RuleStatistics left, RuleStatistics right) {
+        return Long.compare(right.elapsedNanos(), left.elapsedNanos());
+      }
+    });
+    out.append(String.format("Refaster statistics for %d rules%n", sorted.size()));
+    for (RuleStatistics rule : sorted) {
+      out.append(String.format("%s: %d ms, %d matches%s%s%n",
+          rule.name(),
+          TimeUnit.NANOSECONDS.toMillis(rule.elapsedNanos()),
+          rule.matches(),
+          rule.matches() == 0 ? " (never matched)" : "",
+          rule.compilationUnitsSkipped() > 0
+              ? String.format(", skipped in %d compilation units after exceeding its budget",
+                  rule.compilationUnitsSkipped())
+              : ""));
+      for (int i = 0; i < rule.templates().size(); i++) {
+        TemplateStatistics template = rule.templates().get(i);
+        out.append(String.format(
+            "  before template %d: %d candidates, %d unification steps, %d matches, %d ms%n",
+            i,
+            template.candidates(),
+            template.unificationSteps(),
+            template.matches(),
+            TimeUnit.NANOSECONDS.toMillis(template.elapsedNanos())));
+      }
+    }
+  }
+
+  /** The statistics of one application of a rule to a compilation unit. */
+  final class RuleApplication {
+    private final RuleStatistics rule;
+    private long elapsedNanos = 0;
+    private boolean exceededBudget = false;
+
+    private RuleApplication(RuleStatistics rule) {
+      this.rule = rule;
+    }
+
+    /** Records a try of the rule's {@code template}th before template. */
+    void record(int template, long unificationSteps, long matches, long nanos) {
+      rule.templates().get(template).record(unificationSteps, matches, nanos);
+      elapsedNanos += nanos;
+    }
+
+    /** Returns whether the rule has exceeded its budget for this compilation unit. */
+    boolean exceededBudget() {
+      return exceededBudget;
+    }
+
+    /**
+     * Returns true, and records the rule as skipped, the first time the rule's time on the
+     * compilation unit exceeds its budget.
+     */
+    boolean checkBudget() {
+      if (exceededBudget || !exceedsBudget(elapsedNanos)) {
+        return false;
+      }
+      exceededBudget = true;
+      rule.recordSkipped();
+      return true;
+    }
+  }
+
+  /** Statistics for a single Refaster rule. */
+  public static final class RuleStatistics {
+    private final String name;
+    private final ImmutableList<TemplateStatistics> templates;
+    private final AtomicLong compilationUnitsSkipped = new AtomicLong();
+
+    RuleStatistics(String name, int beforeTemplates) {
+      this.name = name;
+      ImmutableList.Builder<TemplateStatistics> builder = ImmutableList.builder();
+      for (int i = 0; i < beforeTemplates; i++) {
+        builder.add(new TemplateStatistics());
+      }
+      this.templates = builder.build();
+    }
+
+    /** The qualified name of the class defining the rule. */
+    public String name() {
+      return name;
+    }
+
+    /** Statistics for each of the rule's before templates, in declaration order. */
+    public ImmutableList<TemplateStatistics> templates() {
+      return templates;
+    }
+
+    /** The number of compilation units in which the rule exceeded its time budget. */
+    public long compilationUnitsSkipped() {
+      return compilationUnitsSkipped.get();
+    }
+
+    public long matches() {
+      long result = 0;
+      for (TemplateStatistics template : templates) {
+        result += template.matches();
+      }
+      return result;
+    }
+
+    public long elapsedNanos() {
+      long result = 0;
+      for (TemplateStatistics template : templates) {
+        result += template.elapsedNanos();
+      }
+      return result;
+    }
+
+    void recordSkipped() {
+      compilationUnitsSkipped.incrementAndGet();
+    }
+  }
+
+  /** Statistics for a single before template of a Refaster rule. */
+  public static final class TemplateStatistics {
+    private final AtomicLong candidates = new AtomicLong();
+    private final AtomicLong unificationSteps = new AtomicLong();
+    private final AtomicLong matches = new AtomicLong();
+    private final AtomicLong elapsedNanos = new AtomicLong();
+
+    TemplateStatistics() {}
+
+    /** The number of trees the template was tried against. */
+    public long candidates() {
+      return candidates.get();
+    }
+
+    /** The number of unification steps taken while trying the template. */
+    public long unificationSteps() {
+      return unificationSteps.get();
+    }
+
+    /** The number of matches reported for the template. */
+    public long matches() {
+      return matches.get();
+    }
+
+    /** The time spent trying the template and generating fixes for its matches. */
+    public long elapsedNanos() {
+      return elapsedNanos.get();
+    }
+
+    void record(long unificationSteps, long matches, long elapsedNanos) {
+      this.candidates.incrementAndGet();
+      this.unificationSteps.addAndGet(unificationSteps);
+      this.matches.addAndGet(matches);
+      this.elapsedNanos.addAndGet(elapsedNanos);
+    }
+  }
+}
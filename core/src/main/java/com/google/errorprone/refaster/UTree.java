@@ -30,9 +30,14 @@ import javax.annotation.Nullable;
  */
 public abstract class UTree<T extends JCTree> extends SimpleTreeVisitor<Choice<Unifier>, Unifier>
     implements Unifiable<Tree>, Inlineable<T>, Tree {
+  /**
+   * Unifies this template with {@code target}.  Every call goes through the memo table of
+   * {@code unifier}, so retrying the same template and target with the same bindings while
+   * backtracking replays the earlier result instead of visiting the trees again.
+   */
   @Override
   public Choice<Unifier> unify(@Nullable Tree target, Unifier unifier) {
-    return (target != null) ? target.accept(this, unifier) : Choice.<Unifier>none();
+    return (target != null) ? unifier.unifyMemoized(this, target) : Choice.<Unifier>none();
   }
 
   @Override
@@ -17,10 +17,13 @@ package com.google.errorprone.refaster;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
+import com.google.common.base.Objects;
 import com.google.common.base.Optional;
 import com.google.errorprone.SubContext;
 import com.google.errorprone.refaster.Bindings.Key;
+import com.sun.source.tree.Tree;
 import com.sun.tools.javac.code.Type;
 import com.sun.tools.javac.code.Types;
 import com.sun.tools.javac.tree.JCTree;
@@ -28,7 +31,10 @@ import com.sun.tools.javac.tree.JCTree.JCExpression;
 import com.sun.tools.javac.tree.TreeMaker;
 import com.sun.tools.javac.util.Context;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.annotation.Nullable;
 
 /**
@@ -38,18 +44,56 @@ import javax.annotation.Nullable;
  * @author Louis Wasserman
  */
 public final class Unifier {
+  /**
+   * The default maximum number of unification steps a single match attempt may take before it is
+   * abandoned.
+   */
+  public static final int DEFAULT_SEARCH_BUDGET = 100000;
+
+  private static final Context.Key<Integer> SEARCH_BUDGET_KEY = new Context.Key<>();
+
+  /**
+   * Sets the maximum number of unification steps a single match attempt in {@code context} may
+   * take, overriding {@link #DEFAULT_SEARCH_BUDGET}.  A match attempt that exceeds its budget is
+   * abandoned with a {@link SearchBudgetExceededException}.
+   */
+  public static void setSearchBudget(Context context, int maxSteps) {
+    checkArgument(maxSteps > 0, "Search budget must be positive but was %s", maxSteps);
+    context.put(SEARCH_BUDGET_KEY, maxSteps);
+  }
+
+  /**
+   * If present, counts the unification steps taken by every match attempt in a context, for
+   * {@link RefasterStatistics}.
+   */
+  static final Context.Key<AtomicLong> STEP_COUNTER_KEY = new Context.Key<>();
+
+  private static int searchBudget(Context context) {
+    Integer result = context.get(SEARCH_BUDGET_KEY);
+    return (result == null) ? DEFAULT_SEARCH_BUDGET : result;
+  }
+
   private final Bindings bindings;
 
   private final Context context;
 
+  private final Memo memo;
+
+  /** A snapshot of {@link #bindings} for the memo table, or null if they have changed since. */
+  @Nullable private BindingsSnapshot snapshot;
+
   public Unifier(Context context) {
     this.bindings = Bindings.create();
     this.context = checkNotNull(context);
+    this.memo = new Memo(searchBudget(context), context.get(STEP_COUNTER_KEY));
   }
 
-  private Unifier(Context context, Bindings bindings) {
+  private Unifier(
+      Context context, Bindings bindings, @Nullable BindingsSnapshot snapshot, Memo memo) {
     this.context = new SubContext(context);
     this.bindings = Bindings.create(bindings);
+    this.snapshot = snapshot;
+    this.memo = memo;
   }
 
   /**
@@ -57,7 +101,7 @@ public final class Unifier {
    * succeed or fail independently of this {@code Unifier}.
    */
   public Unifier fork() {
-    return new Unifier(context, bindings);
+    return new Unifier(context, bindings, snapshot, memo);
   }
 
   public Types types() {
@@ -79,15 +123,18 @@ public final class Unifier {
 
   public <V> V putBinding(Key<V> key, V value) {
     checkArgument(!bindings.containsKey(key), "Cannot bind %s more than once", key);
+    snapshot = null;
     return bindings.putBinding(key, value);
   }
 
   public <V> V replaceBinding(Key<V> key, V value) {
     checkArgument(bindings.containsKey(key), "Binding for %s does not exist", key);
+    snapshot = null;
     return bindings.putBinding(key, value);
   }
   
   public void clearBinding(Key<?> key) {
+    snapshot = null;
     bindings.remove(key);
   }
 
@@ -203,4 +250,152 @@ public final class Unifier {
     }
     return choice;
   }
+
+  /**
+   * Unifies {@code template} with {@code target} through the memo table shared by this {@code
+   * Unifier} and its forks, charging one step against the search budget.  Called by {@link
+   * UTree#unify} for every template node.
+   */
+  Choice<Unifier> unifyMemoized(UTree<?> template, Tree target) {
+    return memo.unify(template, target, this);
+  }
+
+  /** Returns the number of unifications answered from the memo table so far in this match. */
+  @VisibleForTesting
+  int memoHits() {
+    return memo.hits;
+  }
+
+  private BindingsSnapshot snapshot() {
+    if (snapshot == null) {
+      snapshot = new BindingsSnapshot(Bindings.create(bindings));
+    }
+    return snapshot;
+  }
+
+  /**
+   * Thrown when a single match attempt exceeds its search budget, as configured by
+   * {@link #setSearchBudget}.
+   */
+  public static final class SearchBudgetExceededException extends RuntimeException {
+    SearchBudgetExceededException(int budget) {
+      super(String.format("Exceeded the search budget of %d unification steps", budget));
+    }
+  }
+
+  /**
+   * State shared between a {@code Unifier} and all of its forks: the results of every unification
+   * attempted so far, and the number of steps taken against the search budget.
+   *
+   * <p>Backtracking frequently retries the same template subtree against the same target subtree
+   * with the same bindings, e.g. after a failed alternative of a commutative operator or a
+   * placeholder; the memo table answers those retries from the first attempt.  Entries are keyed
+   * on the identity of the template and the target, and on a snapshot of all current bindings.
+   * A {@code Unifier} only takes a new snapshot after its bindings change, so lookups that follow
+   * each other without new bindings, and the unifiers replayed from the table, share one.
+   */
+  private static final class Memo {
+    private final Map<MemoKey, Choice<BindingsSnapshot>> results = new HashMap<>();
+    private final int budget;
+    @Nullable private final AtomicLong stepCounter;
+    private int steps = 0;
+    private int hits = 0;
+
+    Memo(int budget, @Nullable AtomicLong stepCounter) {
+      this.budget = budget;
+      this.stepCounter = stepCounter;
+    }
+
+    Choice<Unifier> unify(UTree<?> template, Tree target, final Unifier unifier) {
+      if (stepCounter != null) {
+        stepCounter.incrementAndGet();
+      }
+      if (++steps > budget) {
+        throw new SearchBudgetExceededException(budget);
+      }
+      MemoKey key = new MemoKey(template, target, unifier.snapshot());
+      Choice<BindingsSnapshot> choice = results.get(key);
+      if (choice == null) {
+        // Unify against a fork, so that the options can be replayed from a clean state, and
+        // snapshot each option as it is produced, before any consumer can add to its bindings.
+        choice = target.accept(template, unifier.fork()).transform(SNAPSHOT).memoize();
+        results.put(key, choice);
+      } else {
+        hits++;
+      }
+      return choice.transform(new Function<BindingsSnapshot, Unifier>() {
+        @Override
+        public Unifier apply(BindingsSnapshot snapshot) {
+          return new Unifier(unifier.context, snapshot.bindings, snapshot, Memo.this);
+        }
+      });
+    }
+
+    private static final Function<Unifier, BindingsSnapshot> SNAPSHOT =
+        new Function<Unifier, BindingsSnapshot>() {
+          @Override
+          public BindingsSnapshot apply(Unifier unifier) {
+            return unifier.snapshot();
+          }
+        };
+  }
+
+  /**
+   * A copy of a {@code Unifier}'s bindings, which is never modified, with its hash code computed
+   * once.
+   */
+  private static final class BindingsSnapshot {
+    private final Bindings bindings;
+    private final int hashCode;
+
+    BindingsSnapshot(Bindings bindings) {
+      this.bindings = bindings;
+      this.hashCode = bindings.hashCode();
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj) {
+      if (this == obj) {
+        return true;
+      } else if (obj instanceof BindingsSnapshot) {
+        BindingsSnapshot other = (BindingsSnapshot) obj;
+        return hashCode == other.hashCode && bindings.equals(other.bindings);
+      }
+      return false;
+    }
+  }
+
+  private static final class MemoKey {
+    private final Object template;
+    private final Object target;
+    private final BindingsSnapshot bindings;
+
+    MemoKey(Object template, Object target, BindingsSnapshot bindings) {
+      this.template = template;
+      this.target = target;
+      this.bindings = bindings;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(
+          System.identityHashCode(template), System.identityHashCode(target), bindings);
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj) {
+      if (obj instanceof MemoKey) {
+        MemoKey other = (MemoKey) obj;
+        return template == other.template
+            && target == other.target
+            && bindings.equals(other.bindings);
+      }
+      return false;
+    }
+  }
 }
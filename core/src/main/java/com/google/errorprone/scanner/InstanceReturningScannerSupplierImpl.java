@@ -17,6 +17,7 @@
 package com.google.errorprone.scanner;
 
 import com.google.common.collect.ImmutableBiMap;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.errorprone.BugCheckerInfo;
@@ -59,4 +60,15 @@ class InstanceReturningScannerSupplierImpl extends ScannerSupplier {
   public ImmutableSet<BugCheckerInfo> getEnabledChecks() {
     throw new UnsupportedOperationException();
   }
+
+  /** The checks of the scanner are unknown, so are all assumed to require attribution. */
+  @Override
+  public ScannerSupplier attributedChecks() {
+    return this;
+  }
+
+  @Override
+  public ScannerSupplier parseChecks() {
+    return ScannerSupplier.fromBugCheckerInfos(ImmutableList.<BugCheckerInfo>of());
+  }
 }
@@ -17,6 +17,7 @@
 package com.google.errorprone.scanner;
 
 import com.google.errorprone.BugPattern.SeverityLevel;
+import com.google.errorprone.ChangedLines;
 import com.google.errorprone.SuppressionHelper;
 import com.google.errorprone.VisitorState;
 import com.google.errorprone.matchers.Description;
@@ -80,7 +81,7 @@ public class Scanner extends TreePathScanner<Void, VisitorState> {
    */
   @Override
   public Void scan(Tree tree, VisitorState state) {
-    if (tree == null) {
+    if (tree == null || !inScope(tree, state)) {
       return null;
     }
 
@@ -95,6 +96,25 @@ public class Scanner extends TreePathScanner<Void, VisitorState> {
     }
   }
 
+  /**
+   * Returns false for methods and classes that contain no changed lines, if only changed lines are
+   * being analyzed.
+   */
+  private static boolean inScope(Tree tree, VisitorState state) {
+    switch (tree.getKind()) {
+      case METHOD:
+      case CLASS:
+      case INTERFACE:
+      case ENUM:
+      case ANNOTATION_TYPE:
+        ChangedLines.Scope scope =
+            state.context != null ? state.context.get(ChangedLines.Scope.class) : null;
+        return scope == null || scope.intersects(tree);
+      default:
+        return true;
+    }
+  }
+
   /**
    * Updates current suppression state with information for the given {@code tree}.  Returns
    * the previous suppression state so that it can be restored when going up the tree.
@@ -122,6 +142,20 @@ public class Scanner extends TreePathScanner<Void, VisitorState> {
         customSuppressions = newSuppressions.customSuppressions;
       }
       inGeneratedCode = newSuppressions.inGeneratedCode;
+    } else {
+      // Before attribution declarations have no symbols, so read their suppressions from source.
+      Set<String> newSuppressions = SuppressionHelper.suppressionsFromSource(tree);
+      if (!newSuppressions.isEmpty()) {
+        newSuppressions.addAll(suppressions);
+        suppressions = newSuppressions;
+      }
+      Set<Class<? extends Annotation>> newCustomSuppressions =
+          suppressionHelper.customSuppressionsFromSource(tree);
+      if (!newCustomSuppressions.isEmpty()) {
+        newCustomSuppressions.addAll(customSuppressions);
+        customSuppressions = newCustomSuppressions;
+      }
+      inGeneratedCode = inGeneratedCode || SuppressionHelper.isGeneratedFromSource(tree);
     }
 
     return prevSuppressionInfo;
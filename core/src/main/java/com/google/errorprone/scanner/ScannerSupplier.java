@@ -18,6 +18,7 @@ package com.google.errorprone.scanner;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
 import com.google.common.base.Supplier;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableBiMap;
@@ -228,6 +229,38 @@ public abstract class ScannerSupplier implements Supplier<Scanner> {
     return new ScannerSupplierImpl(combinedAllChecks, combinedSeverities, disabled);
   }
 
+  /**
+   * Returns a {@link ScannerSupplier} with only the enabled checks that require attribution
+   * enabled.
+   */
+  @CheckReturnValue
+  public ScannerSupplier attributedChecks() {
+    return filterEnabled(REQUIRES_ATTRIBUTION);
+  }
+
+  /**
+   * Returns a {@link ScannerSupplier} with only the enabled checks that don't require attribution
+   * enabled, which may be run as soon as a file has been parsed.
+   *
+   * @see BugPattern#requiresAttribution
+   */
+  @CheckReturnValue
+  public ScannerSupplier parseChecks() {
+    return filterEnabled(Predicates.not(REQUIRES_ATTRIBUTION));
+  }
+
+  private static final Predicate<BugCheckerInfo> REQUIRES_ATTRIBUTION =
+      new Predicate<BugCheckerInfo>() {
+        @Override
+        public boolean apply(BugCheckerInfo input) {
+          return input.requiresAttribution();
+        }
+      };
+
+  private ScannerSupplier filterEnabled(Predicate<BugCheckerInfo> predicate) {
+    return filter(Predicates.and(Predicates.in(getEnabledChecks()), predicate));
+  }
+
   /**
    * Filters this {@link ScannerSupplier} based on the provided predicate. Returns a
    * {@link ScannerSupplier} with only the checks enabled that satisfy the predicate.
@@ -57,18 +57,34 @@ class ScannerSupplierImpl extends ScannerSupplier implements Serializable {
     this.disabled = disabled;
   }
 
+  // Stateless checkers are instantiated once, and shared by all scanners.  (Keyed by a ClassValue
+  // so that the instances don't keep the classes of plugin checks from being unloaded.)
+  private static final ClassValue<BugChecker> SHARED_CHECKERS =
+      new ClassValue<BugChecker>() {
+        @Override
+        protected BugChecker computeValue(Class<?> checkerClass) {
+          return instantiate(checkerClass.asSubclass(BugChecker.class));
+        }
+      };
+
   private static final Function<BugCheckerInfo, BugChecker> INSTANTIATE_CHECKER =
       new Function<BugCheckerInfo, BugChecker>() {
         @Override
         public BugChecker apply(BugCheckerInfo checkerClass) {
-          try {
-            return checkerClass.checkerClass().getConstructor().newInstance();
-          } catch (ReflectiveOperationException e) {
-            throw new LinkageError("Could not instantiate BugChecker.", e);
-          }
+          return checkerClass.isStateless()
+              ? SHARED_CHECKERS.get(checkerClass.checkerClass())
+              : instantiate(checkerClass.checkerClass());
         }
       };
 
+  private static BugChecker instantiate(Class<? extends BugChecker> checkerClass) {
+    try {
+      return checkerClass.getConstructor().newInstance();
+    } catch (ReflectiveOperationException e) {
+      throw new LinkageError("Could not instantiate BugChecker.", e);
+    }
+  }
+
   @Override
   public ErrorProneScanner get() {
     return new ErrorProneScanner(
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.util;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.ImmutableList;
+import com.google.errorprone.util.ErrorProneTokens.CommentWithTextAndPosition;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.tools.javac.parser.Tokens.Comment;
+import com.sun.tools.javac.parser.Tokens.Token;
+import com.sun.tools.javac.parser.Tokens.TokenKind;
+import com.sun.tools.javac.util.Context;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The tokens of a single compilation unit, including comments.
+ *
+ * <p>The compilation unit is lexed lazily, at most once, and the result is shared through the
+ * {@link Context} by everything analyzing that compilation unit. Queries for the tokens or
+ * comments within a range of source positions are then answered without re-lexing.
+ */
+public final class CompilationUnitTokens {
+
+  private static final Context.Key<Holder> KEY = new Context.Key<>();
+
+  /** Holds the tokens of the compilation unit most recently requested from a context. */
+  private static final class Holder {
+    CompilationUnitTokens tokens;
+  }
+
+  /**
+   * Registers a holder for compilation unit tokens in {@code context}, so that the tokens are
+   * shared by all contexts layered on top of it, rather than lexed separately in each.
+   */
+  public static void preRegister(Context context) {
+    context.put(KEY, new Holder());
+  }
+
+  /** Returns the tokens of {@code compilationUnit}, lexing it if it has not been already. */
+  public static CompilationUnitTokens instance(
+      Context context, CompilationUnitTree compilationUnit) {
+    Holder holder = context.get(KEY);
+    if (holder == null) {
+      holder = new Holder();
+      context.put(KEY, holder);
+    }
+    if (holder.tokens == null || holder.tokens.compilationUnit != compilationUnit) {
+      holder.tokens = new CompilationUnitTokens(compilationUnit, context);
+    }
+    return holder.tokens;
+  }
+
+  private final CompilationUnitTree compilationUnit;
+  private final Context context;
+
+  // Lazily initialized by lex().
+  private List<Token> tokens;
+  private int[] tokenStarts;
+  private int[] commentStarts;
+
+  private CompilationUnitTokens(CompilationUnitTree compilationUnit, Context context) {
+    this.compilationUnit = checkNotNull(compilationUnit);
+    this.context = checkNotNull(context);
+  }
+
+  private void lex() {
+    if (tokens != null) {
+      return;
+    }
+    String source;
+    try {
+      source = compilationUnit.getSourceFile().getCharContent(false).toString();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    List<Token> lexed = ErrorProneTokens.lex(source, context);
+    int[] starts = new int[lexed.size()];
+    List<Integer> comments = new ArrayList<>();
+    for (int i = 0; i < lexed.size(); i++) {
+      Token token = lexed.get(i);
+      starts[i] = token.pos;
+      if (token.comments != null) {
+        for (Comment comment : token.comments) {
+          if (comment instanceof CommentWithTextAndPosition) {
+            comments.add(((CommentWithTextAndPosition) comment).getPos());
+          }
+        }
+      }
+    }
+    int[] sortedComments = new int[comments.size()];
+    for (int i = 0; i < sortedComments.length; i++) {
+      sortedComments[i] = comments.get(i);
+    }
+    // javac attaches comments to tokens in reverse declaration order
+    Arrays.sort(sortedComments);
+    this.tokenStarts = starts;
+    this.commentStarts = sortedComments;
+    this.tokens = lexed;
+  }
+
+  /** Returns whether any comment starts in the range of source positions [start, end). */
+  public boolean containsComments(int start, int end) {
+    lex();
+    int index = firstIndexAtOrAfter(commentStarts, start);
+    return index < commentStarts.length && commentStarts[index] < end;
+  }
+
+  /**
+   * Returns the tokens lying entirely within the range of source positions [start, end).
+   *
+   * <p>The result is the same as lexing just the source text in that range: token and comment
+   * positions are relative to {@code start}, and comments before {@code start} are omitted.
+   */
+  public ImmutableList<ErrorProneToken> getTokens(int start, int end) {
+    lex();
+    ImmutableList.Builder<ErrorProneToken> result = ImmutableList.builder();
+    for (int i = firstIndexAtOrAfter(tokenStarts, start); i < tokens.size(); i++) {
+      Token token = tokens.get(i);
+      if (token.kind == TokenKind.EOF || token.endPos > end) {
+        break;
+      }
+      result.add(new ErrorProneToken(token, start));
+    }
+    return result.build();
+  }
+
+  /** Returns the index of the first element of the sorted array that is at least {@code key}. */
+  private static int firstIndexAtOrAfter(int[] sorted, int key) {
+    int index = Arrays.binarySearch(sorted, key);
+    if (index < 0) {
+      return -index - 1;
+    }
+    // step back over any duplicates
+    while (index > 0 && sorted[index - 1] == key) {
+      index--;
+    }
+    return index;
+  }
+}
@@ -17,10 +17,12 @@
 package com.google.errorprone.util;
 
 import com.google.common.collect.Lists;
+import com.google.errorprone.util.ErrorProneTokens.CommentWithTextAndPosition;
 import com.sun.tools.javac.parser.Tokens.Comment;
 import com.sun.tools.javac.parser.Tokens.Token;
 import com.sun.tools.javac.parser.Tokens.TokenKind;
 import com.sun.tools.javac.util.Name;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -28,9 +30,19 @@ import java.util.List;
 public class ErrorProneToken {
 
   private final Token token;
+  private final int offset;
 
   ErrorProneToken(Token token) {
+    this(token, 0);
+  }
+
+  /**
+   * Wraps a token lexed from a larger source text, so that its positions are relative to
+   * {@code offset} and comments that start before {@code offset} are omitted.
+   */
+  ErrorProneToken(Token token, int offset) {
     this.token = token;
+    this.offset = offset;
   }
 
   public TokenKind kind() {
@@ -38,19 +50,35 @@ public class ErrorProneToken {
   }
 
   public int pos() {
-    return token.pos;
+    return token.pos - offset;
   }
 
   public int endPos() {
-    return token.endPos;
+    return token.endPos - offset;
   }
 
   public List<Comment> comments() {
+    if (token.comments == null) {
+      return Collections.<Comment>emptyList();
+    }
     // javac stores the comments in reverse declaration order because appending to linked
     // lists is expensive
-    return token.comments == null
-        ? Collections.<Comment>emptyList()
-        : Lists.reverse(token.comments);
+    List<Comment> comments = Lists.reverse(token.comments);
+    if (offset == 0) {
+      return comments;
+    }
+    List<Comment> result = new ArrayList<>();
+    for (Comment comment : comments) {
+      if (comment instanceof CommentWithTextAndPosition) {
+        CommentWithTextAndPosition positioned = (CommentWithTextAndPosition) comment;
+        if (positioned.getPos() >= offset) {
+          result.add(positioned.relativeTo(offset));
+        }
+      } else {
+        result.add(comment);
+      }
+    }
+    return result;
   }
 
   public Name name() {
@@ -24,6 +24,7 @@ import com.sun.tools.javac.parser.Scanner;
 import com.sun.tools.javac.parser.ScannerFactory;
 import com.sun.tools.javac.parser.Tokens.Comment;
 import com.sun.tools.javac.parser.Tokens.Comment.CommentStyle;
+import com.sun.tools.javac.parser.Tokens.Token;
 import com.sun.tools.javac.parser.Tokens.TokenKind;
 import com.sun.tools.javac.parser.UnicodeReader;
 import com.sun.tools.javac.util.Context;
@@ -36,15 +37,30 @@ public class ErrorProneTokens {
     if (source == null) {
       return ImmutableList.of();
     }
+    ImmutableList.Builder<ErrorProneToken> tokens = ImmutableList.builder();
+    for (Token token : lex(source, context)) {
+      if (token.kind != TokenKind.EOF) {
+        tokens.add(new ErrorProneToken(token));
+      }
+    }
+    return tokens.build();
+  }
+
+  /**
+   * Returns the raw tokens for the given source text, with comments attached, ending with the
+   * {@link TokenKind#EOF} token that carries any trailing comments.
+   */
+  static ImmutableList<Token> lex(String source, Context context) {
     ScannerFactory fac = ScannerFactory.instance(context);
     char[] buffer = source.toCharArray();
     Scanner scanner =
         new AccessibleScanner(fac, new CommentSavingTokenizer(fac, buffer, buffer.length));
-    ImmutableList.Builder<ErrorProneToken> tokens = ImmutableList.builder();
+    ImmutableList.Builder<Token> tokens = ImmutableList.builder();
     while (scanner.token().kind != TokenKind.EOF) {
-      tokens.add(new ErrorProneToken(scanner.token()));
+      tokens.add(scanner.token());
       scanner.nextToken();
     }
+    tokens.add(scanner.token());
     return tokens.build();
   }
 
@@ -97,6 +113,24 @@ public class ErrorProneTokens {
       return pos + index;
     }
 
+    /** Returns the source position of the start of this comment. */
+    int getPos() {
+      return pos;
+    }
+
+    /** Returns the source position just past the end of this comment. */
+    int getEndPos() {
+      return endPos;
+    }
+
+    /**
+     * Returns a copy of this comment with its positions made relative to {@code offset}, as if
+     * it had been lexed from source text starting at that position.
+     */
+    CommentWithTextAndPosition relativeTo(int offset) {
+      return new CommentWithTextAndPosition(pos - offset, endPos - offset, reader, style);
+    }
+
     @Override
     public CommentStyle getStyle() {
       return style;
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2016 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.util;
+
+import java.util.Arrays;
+
+/**
+ * The offsets of the lines of a piece of source text, computed once so that mapping between
+ * positions and line numbers takes logarithmic time.
+ *
+ * <p>Lines are terminated by {@code \n}, {@code \r\n} or {@code \r}, as for {@link
+ * java.io.BufferedReader#readLine}. Line numbers start at 1. Text ending in a line terminator is
+ * followed by an empty final line.
+ */
+public final class LineOffsets {
+
+  /** Computes the line offsets of {@code text}. */
+  public static LineOffsets create(CharSequence text) {
+    int[] starts = new int[16];
+    int[] ends = new int[16];
+    int count = 0;
+    int start = 0;
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c != '\n' && c != '\r') {
+        continue;
+      }
+      if (count + 1 >= starts.length) {
+        starts = Arrays.copyOf(starts, starts.length * 2);
+        ends = Arrays.copyOf(ends, ends.length * 2);
+      }
+      starts[count] = start;
+      ends[count] = i;
+      count++;
+      if (c == '\r' && i + 1 < text.length() && text.charAt(i + 1) == '\n') {
+        i++;
+      }
+      start = i + 1;
+    }
+    starts[count] = start;
+    ends[count] = text.length();
+    count++;
+    return new LineOffsets(Arrays.copyOf(starts, count), Arrays.copyOf(ends, count));
+  }
+
+  private final int[] starts;
+  private final int[] ends;
+
+  private LineOffsets(int[] starts, int[] ends) {
+    this.starts = starts;
+    this.ends = ends;
+  }
+
+  /** Returns the number of lines, including any empty final line. */
+  public int getLineCount() {
+    return starts.length;
+  }
+
+  /** Returns the position of the first character of the given line. */
+  public int getLineStart(int lineNumber) {
+    return starts[lineNumber - 1];
+  }
+
+  /** Returns the position just past the last character of the given line, before its terminator. */
+  public int getLineEnd(int lineNumber) {
+    return ends[lineNumber - 1];
+  }
+
+  /** Returns the number of the line containing {@code position}. */
+  public int getLineNumber(int position) {
+    int index = Arrays.binarySearch(starts, position);
+    return index >= 0 ? index + 1 : -index - 1;
+  }
+}
@@ -191,8 +191,8 @@ public class BugCheckerRefactoringTestHelper {
             new DescriptionListener() {
               @Override
               public void onDescribed(Description description) {
-                if (!description.fixes.isEmpty()) {
-                  diff.handleFix(fixChooser.choose(description.fixes));
+                if (!description.getFixes().isEmpty()) {
+                  diff.handleFix(fixChooser.choose(description.getFixes()));
                 }
               }
             });
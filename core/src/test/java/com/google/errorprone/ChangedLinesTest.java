@@ -0,0 +1,134 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assume.assumeNoException;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeSet;
+import com.google.common.io.ByteStreams;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link ChangedLines}. */
+@RunWith(JUnit4.class)
+public class ChangedLinesTest {
+
+  @Rule public final TemporaryFolder tmpFolder = new TemporaryFolder();
+
+  private static JavaFileObject source(String path) {
+    return new SimpleJavaFileObject(URI.create("file://" + path), JavaFileObject.Kind.SOURCE) {};
+  }
+
+  @Test
+  public void entries() {
+    ChangedLines changes =
+        ChangedLines.parse(ImmutableList.of("src/a/A.java:3,10-12", "", "src/a/A.java:20"));
+    RangeSet<Integer> lines = changes.forFile(source("/work/src/a/A.java"));
+    assertThat(lines.asRanges())
+        .containsExactly(Range.singleton(3), Range.closed(10, 12), Range.singleton(20))
+        .inOrder();
+    assertThat(changes.forFile(source("/work/src/a/B.java"))).isNull();
+    // Path elements are matched whole.
+    assertThat(changes.forFile(source("/work/xsrc/a/A.java"))).isNull();
+  }
+
+  @Test
+  public void unifiedDiff() {
+    ChangedLines changes =
+        ChangedLines.parse(
+            ImmutableList.of(
+                "diff --git a/src/A.java b/src/A.java",
+                "index 1234567..89abcde 100644",
+                "--- a/src/A.java",
+                "+++ b/src/A.java",
+                "@@ -3 +3 @@ class A {",
+                "-  int x;",
+                "+  long x;",
+                "@@ -10,0 +11,2 @@ class A {",
+                "+  int y;",
+                "+  int z;",
+                "@@ -20,2 +22,0 @@ class A {",
+                "-  void f() {}",
+                "-  void g() {}",
+                "diff --git a/src/Gone.java b/src/Gone.java",
+                "deleted file mode 100644",
+                "--- a/src/Gone.java",
+                "+++ /dev/null",
+                "@@ -1 +0,0 @@",
+                "-class Gone {}"));
+    assertThat(changes.forFile(source("/work/src/A.java")).asRanges())
+        .containsExactly(Range.singleton(3), Range.closed(11, 12), Range.closed(22, 23))
+        .inOrder();
+    assertThat(changes.forFile(source("/work/src/Gone.java"))).isNull();
+  }
+
+  private static void git(File dir, String... args) throws Exception {
+    List<String> command = new ArrayList<>();
+    command.add("git");
+    command.addAll(Arrays.asList(args));
+    Process process;
+    try {
+      process = new ProcessBuilder(command).directory(dir).redirectErrorStream(true).start();
+    } catch (IOException e) {
+      assumeNoException("git is not available", e);
+      return;
+    }
+    ByteStreams.copy(process.getInputStream(), ByteStreams.nullOutputStream());
+    assertThat(process.waitFor()).named("git " + args[0]).isEqualTo(0);
+  }
+
+  @Test
+  public void fromGit() throws Exception {
+    File repo = tmpFolder.newFolder();
+    File src = new File(repo, "src");
+    Files.createDirectories(src.toPath());
+    Files.write(new File(src, "A.java").toPath(), Arrays.asList("class A {", "}"), UTF_8);
+    git(repo, "init", "-q");
+    // Changes are still found when the user's configuration drops the a/ and b/ prefixes.
+    git(repo, "config", "diff.noprefix", "true");
+    git(repo, "add", ".");
+    git(repo, "-c", "user.name=test", "-c", "user.email=test@example.com", "commit", "-q",
+        "-m", "initial");
+    Files.write(
+        new File(src, "A.java").toPath(), Arrays.asList("class A {", "  int x;", "}"), UTF_8);
+    Files.write(new File(repo, "B.java").toPath(), Arrays.asList("class B {}"), UTF_8);
+
+    // Run from a subdirectory, so that untracked files elsewhere in the repository are included.
+    ChangedLines changes = ChangedLines.fromGit(src);
+    assertThat(changes.forFile(source("/work/src/A.java")).asRanges())
+        .containsExactly(Range.singleton(2));
+    RangeSet<Integer> untracked = changes.forFile(source("/work/B.java"));
+    assertThat(untracked.contains(1)).isTrue();
+    assertThat(untracked.contains(1000)).isTrue();
+  }
+}
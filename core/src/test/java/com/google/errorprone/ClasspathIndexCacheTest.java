@@ -0,0 +1,164 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableList;
+import com.sun.tools.javac.file.JavacFileManager;
+import com.sun.tools.javac.file.ZipFileIndexCache;
+import com.sun.tools.javac.util.Context;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import javax.tools.StandardLocation;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link ClasspathIndexCache}. */
+@RunWith(JUnit4.class)
+public class ClasspathIndexCacheTest {
+
+  @Rule public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private final ZipFileIndexCache indexes = new ZipFileIndexCache();
+
+  private final ClasspathIndexCache cache = new ClasspathIndexCache(indexes);
+
+  private static void writeJar(File file, String... classes) throws IOException {
+    try (JarOutputStream out = new JarOutputStream(new FileOutputStream(file))) {
+      for (String name : classes) {
+        out.putNextEntry(new JarEntry(name + ".class"));
+        out.closeEntry();
+      }
+    }
+  }
+
+  private File jar(String name) throws IOException {
+    File file = tempFolder.newFile(name);
+    writeJar(file, "p/A");
+    return file;
+  }
+
+  /** Starts a compilation with the given classpath, without opening any of it. */
+  private Context startCompilation(File... classpath) throws IOException {
+    Context context = new Context();
+    JavacFileManager fileManager = new JavacFileManager(context, true, UTF_8);
+    fileManager.setLocation(StandardLocation.PLATFORM_CLASS_PATH, ImmutableList.<File>of());
+    fileManager.setLocation(StandardLocation.CLASS_PATH, Arrays.asList(classpath));
+    cache.beforeCompilation(context);
+    return context;
+  }
+
+  /** Opens jars as javac does, indexing them if they aren't already. */
+  private void open(File... jars) throws IOException {
+    for (File jar : jars) {
+      indexes.getZipFileIndex(jar, null, false, null, false);
+    }
+  }
+
+  /** Runs a compilation that opens every jar on its classpath. */
+  private void compile(File... classpath) throws IOException {
+    Context context = startCompilation(classpath);
+    open(classpath);
+    ClasspathIndexCache.afterCompilation(context);
+  }
+
+  @Test
+  public void countsReusedIndexes() throws Exception {
+    File a = jar("a.jar");
+    File b = jar("b.jar");
+    compile(a);
+    compile(a, b);
+    assertThat(cache.hits()).isEqualTo(1);
+    assertThat(cache.misses()).isEqualTo(2);
+    assertThat(cache.size()).isEqualTo(2);
+  }
+
+  @Test
+  public void unopenedJarIsNeitherHitNorMiss() throws Exception {
+    File a = jar("a.jar");
+    File b = jar("b.jar");
+    Context context = startCompilation(a, b);
+    open(a);
+    ClasspathIndexCache.afterCompilation(context);
+    assertThat(cache.hits()).isEqualTo(0);
+    assertThat(cache.misses()).isEqualTo(1);
+    assertThat(cache.size()).isEqualTo(2);
+  }
+
+  @Test
+  public void changedJarIsAMiss() throws Exception {
+    File a = jar("a.jar");
+    compile(a);
+    writeJar(a, "p/A", "p/B");
+    compile(a);
+    assertThat(cache.hits()).isEqualTo(0);
+    assertThat(cache.misses()).isEqualTo(2);
+    assertThat(cache.evictions()).isEqualTo(1);
+  }
+
+  @Test
+  public void unrecordedIndexIsNotDropped() throws Exception {
+    File a = jar("a.jar");
+    File b = jar("b.jar");
+    // As if by a compilation that is still running.
+    open(a);
+    compile(b);
+    assertThat(cache.evictions()).isEqualTo(0);
+    assertThat(indexes.getZipFileIndexes()).hasSize(2);
+  }
+
+  @Test
+  public void evictsLeastRecentlyUsed() throws Exception {
+    File a = jar("a.jar");
+    File b = jar("b.jar");
+    File c = jar("c.jar");
+    cache.setMaxArchives(2);
+    compile(a, b);
+    compile(a);
+    compile(c);
+    assertThat(cache.evictions()).isEqualTo(1);
+    compile(a);
+    assertThat(cache.hits()).isEqualTo(2);
+    compile(b);
+    assertThat(cache.misses()).isEqualTo(4);
+  }
+
+  @Test
+  public void defersEvictionWhileCompiling() throws Exception {
+    File a = jar("a.jar");
+    File b = jar("b.jar");
+    cache.setMaxArchives(1);
+    Context first = startCompilation(a, b);
+    Context second = startCompilation(a);
+    open(a, b);
+    ClasspathIndexCache.afterCompilation(first);
+    // The second compilation may be using the indexes.
+    assertThat(cache.evictions()).isEqualTo(0);
+    ClasspathIndexCache.afterCompilation(second);
+    assertThat(cache.evictions()).isEqualTo(1);
+    assertThat(cache.size()).isEqualTo(1);
+  }
+}
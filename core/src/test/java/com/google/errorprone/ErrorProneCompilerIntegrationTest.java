@@ -38,6 +38,7 @@ import com.google.errorprone.bugpatterns.BugChecker.ExpressionStatementTreeMatch
 import com.google.errorprone.bugpatterns.BugChecker.MethodInvocationTreeMatcher;
 import com.google.errorprone.bugpatterns.BugChecker.MethodTreeMatcher;
 import com.google.errorprone.bugpatterns.BugChecker.ReturnTreeMatcher;
+import com.google.errorprone.bugpatterns.LongLiteralLowerCaseSuffix;
 import com.google.errorprone.bugpatterns.NonAtomicVolatileUpdate;
 import com.google.errorprone.matchers.Description;
 import com.google.errorprone.scanner.ScannerSupplier;
@@ -49,10 +50,12 @@ import com.sun.source.tree.MethodTree;
 import com.sun.source.tree.ReturnTree;
 import com.sun.source.tree.Tree;
 import com.sun.tools.javac.main.Main.Result;
+import java.io.File;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -576,6 +579,131 @@ public class ErrorProneCompilerIntegrationTest {
     assertThat(output).doesNotContain("Using 'return' is considered harmful");
   }
 
+  @Test
+  public void parseChecksRunDespiteErrors() throws Exception {
+    compilerBuilder.report(
+        ScannerSupplier.fromBugCheckerClasses(LongLiteralLowerCaseSuffix.class, CPSChecker.class));
+    compiler = compilerBuilder.build();
+    compiler.compile(
+        Arrays.asList(
+            compiler
+                .fileManager()
+                .forSourceLines(
+                    "Test.java",
+                    "package test;",
+                    "public class Test {",
+                    "  long x = 1l;",
+                    "  @SuppressWarnings(\"LongLiteralLowerCaseSuffix\") long y = 2l;",
+                    "  Object f() { return new NoSuch(); }",
+                    "}")));
+    outputStream.flush();
+    String output = diagnosticHelper.getDiagnostics().toString();
+    assertThat(output).contains("error: cannot find symbol");
+    // The check that requires attribution doesn't run, but the parse check does, and honors
+    // @SuppressWarnings.  Since javac never analyzes the file, its finding is reported once the
+    // compilation finishes.
+    assertThat(output).doesNotContain("Using 'return' is considered harmful");
+    List<Long> lines = new ArrayList<>();
+    for (Diagnostic<? extends JavaFileObject> diagnostic : diagnosticHelper.getDiagnostics()) {
+      if (diagnostic.getMessage(Locale.ENGLISH).contains("[LongLiteralLowerCaseSuffix]")) {
+        lines.add(diagnostic.getLineNumber());
+      }
+    }
+    assertThat(lines).containsExactly(3L);
+  }
+
+  @Test
+  public void parseCheckErrorsDontStopAttribution() throws Exception {
+    compilerBuilder.report(
+        ScannerSupplier.fromBugCheckerClasses(LongLiteralLowerCaseSuffix.class, CPSChecker.class));
+    compiler = compilerBuilder.build();
+    Result exitCode =
+        compiler.compile(
+            Arrays.asList(
+                compiler
+                    .fileManager()
+                    .forSourceLines(
+                        "Test.java",
+                        "package test;",
+                        "public class Test {",
+                        "  long x = 1l;",
+                        "  Object f() { return null; }",
+                        "}")));
+    outputStream.flush();
+    String output = diagnosticHelper.getDiagnostics().toString();
+    assertThat(outputStream.toString(), exitCode, is(Result.ERROR));
+    // The error from the parse check is held until the file is analyzed, so the check that
+    // requires attribution still runs.
+    assertThat(output).contains("[LongLiteralLowerCaseSuffix]");
+    assertThat(output).contains("Using 'return' is considered harmful");
+  }
+
+  @Test
+  public void parseChecksHonorGeneratedCode() throws Exception {
+    compilerBuilder.report(
+        ScannerSupplier.fromBugCheckerClasses(LongLiteralLowerCaseSuffix.class));
+    compiler = compilerBuilder.build();
+    compiler.compile(
+        new String[] {"-XepDisableWarningsInGeneratedCode"},
+        Arrays.asList(
+            compiler
+                .fileManager()
+                .forSourceLines(
+                    "Test.java",
+                    "package test;",
+                    "import javax.annotation.Generated;",
+                    "public class Test {",
+                    "  long x = 1l;",
+                    "  @Generated(\"generator\")",
+                    "  class Inner {",
+                    "    long y = 2l;",
+                    "    Object f() { return new NoSuch(); }",
+                    "  }",
+                    "}")));
+    outputStream.flush();
+    List<Long> lines = new ArrayList<>();
+    for (Diagnostic<? extends JavaFileObject> diagnostic : diagnosticHelper.getDiagnostics()) {
+      if (diagnostic.getMessage(Locale.ENGLISH).contains("[LongLiteralLowerCaseSuffix]")) {
+        lines.add(diagnostic.getLineNumber());
+      }
+    }
+    assertThat(lines).containsExactly(4L);
+  }
+
+  @Test
+  public void changedLines() throws Exception {
+    Path changes = tmpFolder.newFile("changes").toPath();
+    Files.write(changes, Arrays.asList("test/Test.java:6"), UTF_8);
+    compilerBuilder.report(ScannerSupplier.fromBugCheckerClasses(CPSChecker.class));
+    compiler = compilerBuilder.build();
+    Result exitCode =
+        compiler.compile(
+            new String[] {"-XepChangedLines:" + changes},
+            Arrays.asList(
+                compiler
+                    .fileManager()
+                    .forSourceLines(
+                        "test/Test.java",
+                        "package test;",
+                        "public class Test {",
+                        "  int f() {",
+                        "    return 1;",
+                        "  }",
+                        "  int g() { return 2; }",
+                        "  class Inner {",
+                        "    int h() { return 3; }",
+                        "  }",
+                        "}")));
+    outputStream.flush();
+    assertThat(exitCode).isEqualTo(Result.ERROR);
+    // Only the finding in the changed method is reported.
+    List<Long> lines = new ArrayList<>();
+    for (Diagnostic<? extends JavaFileObject> diagnostic : diagnosticHelper.getDiagnostics()) {
+      lines.add(diagnostic.getLineNumber());
+    }
+    assertThat(lines).containsExactly(6L);
+  }
+
   @Test
   public void plugin() throws Exception {
 
@@ -623,4 +751,128 @@ public class ErrorProneCompilerIntegrationTest {
       assertThat(result).isEqualTo(Result.ERROR);
     }
   }
+
+  @Test
+  public void pluginIndex() throws Exception {
+    Path base = tmpFolder.newFolder().toPath();
+    Path source = base.resolve("test/Test.java");
+    Files.createDirectories(source.getParent());
+    Files.write(
+        source,
+        Arrays.asList(
+            "package test;", //
+            "public class Test {",
+            "  int f() { return 42; }",
+            "}"),
+        UTF_8);
+
+    // A jar without service descriptors, whose checks are only found through the index.
+    Path jar = base.resolve("libproc.jar");
+    try (JarOutputStream jos = new JarOutputStream(Files.newOutputStream(jar))) {
+      String classFile = CPSChecker.class.getName().replace('.', '/') + ".class";
+      jos.putNextEntry(new JarEntry(classFile));
+      ByteStreams.copy(getClass().getClassLoader().getResourceAsStream(classFile), jos);
+    }
+    Path index = base.resolve("plugins.index");
+    Files.write(index, Arrays.asList("# plugins", CPSChecker.class.getName()), UTF_8);
+
+    List<String> args =
+        ImmutableList.of(
+            source.toAbsolutePath().toString(),
+            "-processorpath",
+            jar.toAbsolutePath().toString(),
+            "-XepPluginIndex:" + index);
+    // The second compilation uses the cached plugins.
+    for (int i = 0; i < 2; i++) {
+      StringWriter out = new StringWriter();
+      Result result =
+          ErrorProneCompiler.compile(args.toArray(new String[0]), new PrintWriter(out, true));
+      assertThat(out.toString()).contains("Using 'return' is considered harmful");
+      assertThat(result).isEqualTo(Result.ERROR);
+    }
+  }
+
+  @Test
+  public void badPluginIndex() throws Exception {
+    Path base = tmpFolder.newFolder().toPath();
+    Path source = base.resolve("test/Test.java");
+    Files.createDirectories(source.getParent());
+    Files.write(source, Arrays.asList("package test;", "public class Test {}"), UTF_8);
+    Path jar = base.resolve("libproc.jar");
+    try (JarOutputStream jos = new JarOutputStream(Files.newOutputStream(jar))) {
+      jos.putNextEntry(new JarEntry("META-INF/"));
+    }
+    Path index = base.resolve("plugins.index");
+    Files.write(index, Arrays.asList("com.example.NoSuchChecker"), UTF_8);
+
+    StringWriter out = new StringWriter();
+    Result result =
+        ErrorProneCompiler.compile(
+            new String[] {
+              source.toAbsolutePath().toString(),
+              "-processorpath",
+              jar.toAbsolutePath().toString(),
+              "-XepPluginIndex:" + index
+            },
+            new PrintWriter(out, true));
+    assertThat(out.toString()).contains("could not load plugins from index");
+    assertThat(result).isEqualTo(Result.CMDERR);
+  }
+
+  private Path writeLongLiteralSource(Path dir, String className) throws Exception {
+    Path source = dir.resolve(className + ".java");
+    Files.write(
+        source, Arrays.asList("public class " + className + " {", "  long x = 1l;", "}"), UTF_8);
+    return source;
+  }
+
+  private void compileWithPatchLocation(String location, Path... sources) throws Exception {
+    compilerBuilder.report(
+        ScannerSupplier.fromBugCheckerClasses(LongLiteralLowerCaseSuffix.class));
+    compiler = compilerBuilder.build();
+    List<File> files = new ArrayList<>();
+    for (Path source : sources) {
+      files.add(source.toFile());
+    }
+    compiler.compile(
+        new String[] {
+          "-XepPatchLocation:" + location, "-d", tmpFolder.newFolder().getAbsolutePath()
+        },
+        ImmutableList.<JavaFileObject>copyOf(
+            compiler.fileManager().getJavaFileObjectsFromFiles(files)));
+  }
+
+  @Test
+  public void patchInPlace() throws Exception {
+    Path source = writeLongLiteralSource(tmpFolder.newFolder().toPath(), "Test");
+    compileWithPatchLocation("IN_PLACE", source);
+    assertThat(new String(Files.readAllBytes(source), UTF_8)).contains("long x = 1L;");
+  }
+
+  @Test
+  public void patchFile() throws Exception {
+    Path dir = tmpFolder.newFolder().toPath();
+    Path first = writeLongLiteralSource(dir, "First");
+    Path second = writeLongLiteralSource(dir, "Second");
+    Path patch = dir.resolve("fixes.patch");
+    Files.write(patch, Arrays.asList("left over from an earlier run"), UTF_8);
+
+    // Each compilation unit's fixes are appended to the patch, which replaces the earlier one.
+    compileWithPatchLocation(patch.toString(), first, second);
+
+    String diff = new String(Files.readAllBytes(patch), UTF_8);
+    assertThat(diff).doesNotContain("left over from an earlier run");
+    assertThat(diff).contains("First.java");
+    assertThat(diff).contains("Second.java");
+    assertThat(diff).contains("+  long x = 1L;");
+    // The sources themselves are left untouched.
+    assertThat(new String(Files.readAllBytes(first), UTF_8)).contains("long x = 1l;");
+    assertThat(new String(Files.readAllBytes(second), UTF_8)).contains("long x = 1l;");
+
+    // A later compilation writes a patch of its own.
+    compileWithPatchLocation(patch.toString(), second);
+    diff = new String(Files.readAllBytes(patch), UTF_8);
+    assertThat(diff).doesNotContain("First.java");
+    assertThat(diff).contains("Second.java");
+  }
 }
@@ -21,6 +21,7 @@ import static org.junit.Assert.fail;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.errorprone.ErrorProneOptions.Severity;
+import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -106,4 +107,83 @@ public class ErrorProneOptionsTest {
         .build();
     assertThat(options.getSeverityMap()).isEqualTo(expectedSeverityMap);
   }
+
+  @Test
+  public void patchLocation() throws Exception {
+    ErrorProneOptions options = ErrorProneOptions.processArgs(new String[] {"-Xep:Check1"});
+    assertThat(options.isPatchMode()).isFalse();
+
+    options = ErrorProneOptions.processArgs(new String[] {"-XepPatchLocation:IN_PLACE"});
+    assertThat(options.isPatchMode()).isTrue();
+    assertThat(options.patchInPlace()).isTrue();
+    assertThat(options.patchFile()).isNull();
+
+    options = ErrorProneOptions.processArgs(new String[] {"-XepPatchLocation:/tmp/fixes.patch"});
+    assertThat(options.isPatchMode()).isTrue();
+    assertThat(options.patchInPlace()).isFalse();
+    assertThat(options.patchFile()).isEqualTo(Paths.get("/tmp/fixes.patch"));
+    assertThat(options.getRemainingArgs()).isEmpty();
+    assertThat(ErrorProneOptions.isSupportedOption("-XepPatchLocation:IN_PLACE")).isEqualTo(0);
+  }
+
+  @Test
+  public void patchPriority() throws Exception {
+    ErrorProneOptions options = ErrorProneOptions.processArgs(new String[] {"-Xep:Check1"});
+    assertThat(options.patchPriority()).isEmpty();
+
+    options = ErrorProneOptions.processArgs(new String[] {"-XepPatchPriority:Check2, Check1"});
+    assertThat(options.patchPriority()).containsExactly("Check2", "Check1").inOrder();
+    assertThat(options.getRemainingArgs()).isEmpty();
+    assertThat(ErrorProneOptions.isSupportedOption("-XepPatchPriority:Check1")).isEqualTo(0);
+  }
+
+  @Test
+  public void sharedClasspathCache() throws Exception {
+    ErrorProneOptions options = ErrorProneOptions.processArgs(new String[] {"-Xep:Check1"});
+    assertThat(options.sharedClasspathCache()).isFalse();
+
+    options = ErrorProneOptions.processArgs(new String[] {"-XepSharedClasspathCache"});
+    assertThat(options.sharedClasspathCache()).isTrue();
+    assertThat(options.getRemainingArgs()).isEmpty();
+    assertThat(ErrorProneOptions.isSupportedOption("-XepSharedClasspathCache")).isEqualTo(0);
+  }
+
+  @Test
+  public void pluginIndex() throws Exception {
+    ErrorProneOptions options = ErrorProneOptions.processArgs(new String[] {"-Xep:Check1"});
+    assertThat(options.pluginIndex()).isNull();
+
+    options = ErrorProneOptions.processArgs(new String[] {"-XepPluginIndex:plugins.index"});
+    assertThat(options.pluginIndex()).isEqualTo(Paths.get("plugins.index"));
+    assertThat(options.getRemainingArgs()).isEmpty();
+    assertThat(ErrorProneOptions.isSupportedOption("-XepPluginIndex:plugins.index")).isEqualTo(0);
+  }
+
+  @Test
+  public void changedLines() throws Exception {
+    ErrorProneOptions options = ErrorProneOptions.processArgs(new String[] {"-Xep:Check1"});
+    assertThat(options.isDiffScoped()).isFalse();
+    assertThat(options.changedLinesFile()).isNull();
+
+    options = ErrorProneOptions.processArgs(new String[] {"-XepChangedLines:changes.diff"});
+    assertThat(options.isDiffScoped()).isTrue();
+    assertThat(options.changedLinesFromGit()).isFalse();
+    assertThat(options.changedLinesFile()).isEqualTo(Paths.get("changes.diff"));
+    assertThat(options.getRemainingArgs()).isEmpty();
+    assertThat(ErrorProneOptions.isSupportedOption("-XepChangedLines:GIT")).isEqualTo(0);
+
+    options = ErrorProneOptions.processArgs(new String[] {"-XepChangedLines:GIT"});
+    assertThat(options.changedLinesFromGit()).isTrue();
+    assertThat(options.changedLinesFile()).isNull();
+  }
+
+  @Test
+  public void emptyPatchLocationThrows() throws Exception {
+    try {
+      ErrorProneOptions.processArgs(new String[] {"-XepPatchLocation:"});
+      fail();
+    } catch (InvalidCommandLineOptionException expected) {
+      assertThat(expected.getMessage()).contains("invalid flag");
+    }
+  }
 }
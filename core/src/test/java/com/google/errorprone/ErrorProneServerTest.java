@@ -0,0 +1,161 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableList;
+import com.google.errorprone.bugpatterns.EmptyIfStatement;
+import com.google.errorprone.matchers.Finding;
+import com.google.errorprone.scanner.ScannerSupplier;
+import com.sun.tools.javac.main.Main.Result;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link ErrorProneServer}.
+ */
+@RunWith(JUnit4.class)
+public class ErrorProneServerTest {
+
+  @Rule public final TemporaryFolder tempDir = new TemporaryFolder();
+
+  private ErrorProneServer server;
+
+  @Before
+  public void setUp() throws Exception {
+    server =
+        new ErrorProneServer(
+            ScannerSupplier.fromBugCheckerClasses(EmptyIfStatement.class), 0, /* threads= */ 1);
+    Thread thread =
+        new Thread(
+            new Runnable() {
+              @Override
+              public void run() {
+                try {
+                  server.serve();
+                } catch (Exception e) {
+                  throw new RuntimeException(e);
+                }
+              }
+            });
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    server.close();
+  }
+
+  @Test
+  public void streamsFindings() throws Exception {
+    File source = tempDir.newFile("Test.java");
+    Files.write(source.toPath(), "class Test { void f() { if (true); } }".getBytes(UTF_8));
+    File classes = tempDir.newFolder("classes");
+    ImmutableList<String> args = ImmutableList.of("-d", classes.getPath(), source.getPath());
+
+    try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+      DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+      DataInputStream in = new DataInputStream(socket.getInputStream());
+      ErrorProneServer.writeToken(out, server.getToken());
+      // Both requests are served over the same connection.
+      for (int i = 0; i < 2; i++) {
+        ErrorProneWorker.writeRequest(out, args);
+        out.flush();
+        final List<Finding> findings = new ArrayList<>();
+        ErrorProneWorker.Response response =
+            ErrorProneServer.readResponse(
+                in,
+                new FindingListener() {
+                  @Override
+                  public void onFinding(Finding finding) {
+                    findings.add(finding);
+                  }
+                });
+        assertThat(response.exitCode()).isEqualTo(Result.ERROR.exitCode);
+        assertThat(response.diagnostics()).hasSize(1);
+        assertThat(findings).hasSize(1);
+        Finding finding = findings.get(0);
+        assertThat(finding.checkName()).isEqualTo("EmptyIf");
+        assertThat(finding.sourcePath()).isEqualTo(source.getPath());
+        assertThat(finding.fixes()).hasSize(1);
+        assertThat(finding.fixes().get(0).getReplacements(null)).isNotEmpty();
+      }
+    }
+  }
+
+  @Test
+  public void idleConnectionsDontBlockCompilations() throws Exception {
+    File source = tempDir.newFile("Test.java");
+    Files.write(source.toPath(), "class Test {}".getBytes(UTF_8));
+    File classes = tempDir.newFolder("classes");
+
+    // The server only runs one compilation at a time, but neither a connection that hasn't sent
+    // the token yet nor one that sends no requests holds up other connections.
+    try (Socket unauthenticated = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+        Socket idle = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+      DataOutputStream idleOut = new DataOutputStream(idle.getOutputStream());
+      ErrorProneServer.writeToken(idleOut, server.getToken());
+      idleOut.flush();
+
+      socket.setSoTimeout(60_000);
+      DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+      DataInputStream in = new DataInputStream(socket.getInputStream());
+      ErrorProneServer.writeToken(out, server.getToken());
+      ErrorProneWorker.writeRequest(
+          out, ImmutableList.of("-d", classes.getPath(), source.getPath()));
+      out.flush();
+      ErrorProneWorker.Response response =
+          ErrorProneServer.readResponse(
+              in,
+              new FindingListener() {
+                @Override
+                public void onFinding(Finding finding) {}
+              });
+      assertThat(response.exitCode()).isEqualTo(Result.OK.exitCode);
+    }
+  }
+
+  @Test
+  public void rejectsWrongToken() throws Exception {
+    try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+      DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+      DataInputStream in = new DataInputStream(socket.getInputStream());
+      ErrorProneServer.writeToken(out, "not-the-token");
+      ErrorProneWorker.writeRequest(out, ImmutableList.of("-version"));
+      out.flush();
+      // The server closes the connection without serving the request.
+      assertThat(in.read()).isEqualTo(-1);
+    }
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2016 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableList;
+import com.google.errorprone.bugpatterns.EmptyIfStatement;
+import com.google.errorprone.scanner.ScannerSupplier;
+import com.sun.tools.javac.main.Main.Result;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import javax.tools.Diagnostic;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link ErrorProneWorker}.
+ */
+@RunWith(JUnit4.class)
+public class ErrorProneWorkerTest {
+
+  @Rule public final TemporaryFolder tempDir = new TemporaryFolder();
+
+  @Test
+  public void serve() throws Exception {
+    File source = tempDir.newFile("Test.java");
+    Files.write(source.toPath(), "class Test { void f() { if (true); } }".getBytes(UTF_8));
+    File classes = tempDir.newFolder("classes");
+    ImmutableList<String> args = ImmutableList.of("-d", classes.getPath(), source.getPath());
+
+    ByteArrayOutputStream requests = new ByteArrayOutputStream();
+    DataOutputStream requestsOut = new DataOutputStream(requests);
+    ErrorProneWorker.writeRequest(requestsOut, args);
+    ErrorProneWorker.writeRequest(requestsOut, args);
+    requestsOut.flush();
+
+    ByteArrayOutputStream responses = new ByteArrayOutputStream();
+    new ErrorProneWorker(ScannerSupplier.fromBugCheckerClasses(EmptyIfStatement.class))
+        .serve(
+            new DataInputStream(new ByteArrayInputStream(requests.toByteArray())),
+            new DataOutputStream(responses));
+
+    DataInputStream responsesIn =
+        new DataInputStream(new ByteArrayInputStream(responses.toByteArray()));
+    ErrorProneWorker.Response first = ErrorProneWorker.readResponse(responsesIn);
+    assertThat(first.exitCode()).isEqualTo(Result.ERROR.exitCode);
+    assertThat(first.willExit()).isFalse();
+    assertThat(first.diagnostics()).hasSize(1);
+    ErrorProneWorker.WorkerDiagnostic diagnostic = first.diagnostics().get(0);
+    assertThat(diagnostic.kind()).isEqualTo(Diagnostic.Kind.ERROR);
+    assertThat(diagnostic.source()).isEqualTo(source.getPath());
+    assertThat(diagnostic.line()).isEqualTo(1);
+    assertThat(diagnostic.message()).contains("[EmptyIf]");
+    assertThat(diagnostic.format()).startsWith(source.getPath() + ":1: error: [EmptyIf]");
+    // The worker is reused for the second request.
+    assertThat(ErrorProneWorker.readResponse(responsesIn)).isEqualTo(first);
+    assertThat(responsesIn.available()).isEqualTo(0);
+  }
+
+  @Test
+  public void maxRequests() throws Exception {
+    ByteArrayOutputStream requests = new ByteArrayOutputStream();
+    DataOutputStream requestsOut = new DataOutputStream(requests);
+    for (int i = 0; i < 3; i++) {
+      ErrorProneWorker.writeRequest(requestsOut, ImmutableList.of("-version"));
+    }
+    requestsOut.flush();
+
+    ByteArrayOutputStream responses = new ByteArrayOutputStream();
+    new ErrorProneWorker(ScannerSupplier.fromBugCheckerClasses(EmptyIfStatement.class), 2)
+        .serve(
+            new DataInputStream(new ByteArrayInputStream(requests.toByteArray())),
+            new DataOutputStream(responses));
+
+    DataInputStream responsesIn =
+        new DataInputStream(new ByteArrayInputStream(responses.toByteArray()));
+    assertThat(ErrorProneWorker.readResponse(responsesIn).willExit()).isFalse();
+    assertThat(ErrorProneWorker.readResponse(responsesIn).willExit()).isTrue();
+    assertThat(responsesIn.available()).isEqualTo(0);
+  }
+
+  @Test
+  public void noRequests() throws Exception {
+    assertThat(ErrorProneWorker.readRequest(
+            new DataInputStream(new ByteArrayInputStream(new byte[0]))))
+        .isNull();
+  }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.analysis;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.errorprone.BugPattern.Category.ONE_OFF;
+import static com.google.errorprone.BugPattern.MaturityLevel.MATURE;
+import static com.google.errorprone.BugPattern.SeverityLevel.ERROR;
+import static com.google.errorprone.BugPattern.SeverityLevel.WARNING;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.CharStreams;
+import com.google.errorprone.BugPattern;
+import com.google.errorprone.DescriptionListener;
+import com.google.errorprone.ErrorProneOptions;
+import com.google.errorprone.VisitorState;
+import com.google.errorprone.bugpatterns.BugChecker;
+import com.google.errorprone.bugpatterns.BugChecker.CompilationUnitTreeMatcher;
+import com.google.errorprone.bugpatterns.BugChecker.LiteralTreeMatcher;
+import com.google.errorprone.bugpatterns.BugChecker.MethodTreeMatcher;
+import com.google.errorprone.matchers.Description;
+import com.google.testing.compile.JavaFileObjects;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.LiteralTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.tools.javac.api.JavacTaskImpl;
+import com.sun.tools.javac.api.JavacTool;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import com.sun.tools.javac.util.Context;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link FusedLocalAnalysis}, comparing its results with running each analysis in a
+ * traversal of its own.
+ */
+@RunWith(JUnit4.class)
+public class FusedLocalAnalysisTest {
+
+  @BugPattern(
+    name = "LiteralChecker",
+    summary = "Literal",
+    explanation = "Literal",
+    category = ONE_OFF,
+    maturity = MATURE,
+    severity = WARNING
+  )
+  public static class LiteralChecker extends BugChecker implements LiteralTreeMatcher {
+    @Override
+    public Description matchLiteral(LiteralTree tree, VisitorState state) {
+      return describeMatch(tree);
+    }
+  }
+
+  @BugPattern(
+    name = "MethodChecker",
+    summary = "Method",
+    explanation = "Method",
+    category = ONE_OFF,
+    maturity = MATURE,
+    severity = ERROR
+  )
+  public static class MethodChecker extends BugChecker implements MethodTreeMatcher {
+    @Override
+    public Description matchMethod(MethodTree tree, VisitorState state) {
+      return describeMatch(tree);
+    }
+  }
+
+  @BugPattern(
+    name = "UnitChecker",
+    summary = "Unit",
+    explanation = "Unit",
+    category = ONE_OFF,
+    maturity = MATURE,
+    severity = WARNING
+  )
+  public static class UnitChecker extends BugChecker implements CompilationUnitTreeMatcher {
+    @Override
+    public Description matchCompilationUnit(CompilationUnitTree tree, VisitorState state) {
+      return describeMatch(tree);
+    }
+  }
+
+  private static final String SOURCE =
+      Joiner.on('\n')
+          .join(
+              "class Test {",
+              "  long a = 1L;",
+              "  @SuppressWarnings(\"LiteralChecker\")",
+              "  long b = 2L;",
+              "  @SuppressWarnings(\"MethodChecker\")",
+              "  void f() { long c = 3L; }",
+              "  @SuppressWarnings({\"LiteralChecker\", \"MethodChecker\"})",
+              "  class Inner {",
+              "    void g() { long d = 4L; }",
+              "  }",
+              "  void h() { long e = 5L; }",
+              "}");
+
+  private JCCompilationUnit compilationUnit;
+  private Context context;
+
+  @Before
+  public void compile() throws Exception {
+    JavacTool tool = JavacTool.create();
+    JavacTaskImpl task = (JavacTaskImpl) tool.getTask(
+        CharStreams.nullWriter(),
+        tool.getStandardFileManager(null, Locale.ENGLISH, UTF_8),
+        null,
+        ImmutableList.<String>of(),
+        null,
+        ImmutableList.of(JavaFileObjects.forSourceString("Test", SOURCE)));
+    compilationUnit = (JCCompilationUnit) task.parse().iterator().next();
+    task.analyze();
+    context = task.getContext();
+  }
+
+  private static ImmutableList<TopLevelAnalysis> analyses() {
+    ImmutableList.Builder<TopLevelAnalysis> analyses = ImmutableList.builder();
+    for (BugChecker checker :
+        ImmutableList.of(new LiteralChecker(), new MethodChecker(), new UnitChecker())) {
+      analyses.add(
+          TopLevelAnalysisWithSeverity.wrap(
+              checker.canonicalName(),
+              true,
+              checker.defaultSeverity(),
+              checker.suppressibility().disableable(),
+              LocalAnalysisAsTopLevelAnalysis.wrap(new BugCheckerLocalAnalysis(checker))));
+    }
+    return analyses.build();
+  }
+
+  /** Returns each finding as {@code check:severity:line}. */
+  private List<String> findings(TopLevelAnalysis analysis, String... args) {
+    final List<String> result = new ArrayList<>();
+    analysis.analyze(
+        compilationUnit,
+        context,
+        AnalysesConfig.create(ErrorProneOptions.processArgs(args)),
+        new DescriptionListener() {
+          @Override
+          public void onDescribed(Description description) {
+            long line =
+                compilationUnit
+                    .getLineMap()
+                    .getLineNumber(((JCTree) description.node).getStartPosition());
+            result.add(description.checkName + ":" + description.severity + ":" + line);
+          }
+        });
+    return result;
+  }
+
+  /** Checks that fused and unfused analyses agree under {@code args}, and returns the findings. */
+  private List<String> fusedFindings(String... args) {
+    List<String> fused = findings(FusedLocalAnalysis.fuse(analyses()), args);
+    List<String> unfused = findings(SumTopLevelAnalysis.create(analyses()), args);
+    assertThat(fused).containsExactlyElementsIn(unfused);
+    return fused;
+  }
+
+  @Test
+  public void suppressWarningsScoping() {
+    List<String> findings = fusedFindings();
+    assertThat(findings)
+        .containsAllOf(
+            "UnitChecker:WARNING:1",
+            "LiteralChecker:WARNING:2",
+            "LiteralChecker:WARNING:6",
+            "LiteralChecker:WARNING:11",
+            "MethodChecker:ERROR:11");
+    assertThat(findings).containsNoneOf("LiteralChecker:WARNING:4", "MethodChecker:ERROR:6");
+    for (String finding : findings) {
+      assertThat(finding).doesNotContain(":9");
+    }
+  }
+
+  @Test
+  public void disabledCheck() {
+    List<String> findings = fusedFindings("-Xep:MethodChecker:OFF");
+    assertThat(findings).contains("LiteralChecker:WARNING:11");
+    for (String finding : findings) {
+      assertThat(finding).doesNotContain("MethodChecker");
+    }
+  }
+
+  @Test
+  public void severityOverride() {
+    List<String> findings = fusedFindings("-Xep:LiteralChecker:ERROR", "-Xep:MethodChecker:WARN");
+    assertThat(findings)
+        .containsAllOf(
+            "LiteralChecker:ERROR:2", "MethodChecker:WARNING:11", "UnitChecker:WARNING:1");
+    for (String finding : findings) {
+      assertThat(finding).doesNotContain("LiteralChecker:WARNING");
+      assertThat(finding).doesNotContain("MethodChecker:ERROR");
+    }
+  }
+
+  @Test
+  public void eachNodeAnalyzedOnce() {
+    List<String> findings = fusedFindings();
+    assertThat(findings).containsNoDuplicates();
+  }
+}
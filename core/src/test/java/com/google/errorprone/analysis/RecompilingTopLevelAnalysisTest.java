@@ -0,0 +1,218 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.analysis;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.CharStreams;
+import com.google.errorprone.BugPattern.SeverityLevel;
+import com.google.errorprone.DescriptionListener;
+import com.google.errorprone.ErrorProneOptions;
+import com.google.errorprone.fixes.Fix;
+import com.google.errorprone.fixes.Replacement;
+import com.google.errorprone.fixes.SuggestedFix;
+import com.google.errorprone.matchers.Description;
+import com.google.testing.compile.JavaFileObjects;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.tools.javac.api.JavacTaskImpl;
+import com.sun.tools.javac.api.JavacTool;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import com.sun.tools.javac.util.Context;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import javax.tools.ForwardingJavaFileObject;
+import javax.tools.JavaFileObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link RecompilingTopLevelAnalysis}.
+ */
+@RunWith(JUnit4.class)
+public class RecompilingTopLevelAnalysisTest {
+
+  private static final String SOURCE =
+      "class Test {\n  int a = 1;\n  int b = 2;\n  int c = 3;\n  int d = 4;\n}\n";
+
+  /** The test source, counting how often it is read, which is once per compilation. */
+  private static class CountingFileObject extends ForwardingJavaFileObject<JavaFileObject> {
+    int reads = 0;
+
+    CountingFileObject(JavaFileObject fileObject) {
+      super(fileObject);
+    }
+
+    @Override
+    public CharSequence getCharContent(boolean ignoreEncodingErrors) throws IOException {
+      reads++;
+      return super.getCharContent(ignoreEncodingErrors);
+    }
+  }
+
+  /** Reports one finding for each of the given lists of alternative fixes, in order. */
+  private static class FixingAnalysis implements TopLevelAnalysis {
+    private final List<List<Fix>> findings;
+
+    FixingAnalysis(List<List<Fix>> findings) {
+      this.findings = findings;
+    }
+
+    @Override
+    public void analyze(CompilationUnitTree compilationUnit, Context context,
+        AnalysesConfig configuration, DescriptionListener listener) {
+      for (List<Fix> fixes : findings) {
+        Description.Builder description =
+            Description.builder(compilationUnit, "Fixing", null, SeverityLevel.WARNING, "message");
+        for (Fix fix : fixes) {
+          description.addFix(fix);
+        }
+        listener.onDescribed(description.build());
+      }
+    }
+
+    @Override
+    public Set<String> knownAnalysisNames() {
+      return ImmutableSet.of("Fixing");
+    }
+  }
+
+  private CountingFileObject input;
+  private JCCompilationUnit compilationUnit;
+  private Context context;
+
+  @Before
+  public void compile() throws Exception {
+    JavacTool tool = JavacTool.create();
+    input = new CountingFileObject(JavaFileObjects.forSourceString("Test", SOURCE));
+    JavacTaskImpl task = (JavacTaskImpl) tool.getTask(
+        CharStreams.nullWriter(),
+        tool.getStandardFileManager(null, Locale.ENGLISH, UTF_8),
+        null,
+        ImmutableList.<String>of(),
+        null,
+        ImmutableList.<JavaFileObject>of(input));
+    compilationUnit = (JCCompilationUnit) task.parse().iterator().next();
+    task.analyze();
+    context = task.getContext();
+    input.reads = 0;
+  }
+
+  private static Fix replace(String target, String replaceWith) {
+    int start = SOURCE.indexOf(target);
+    return SuggestedFix.builder().replace(start, start + target.length(), replaceWith).build();
+  }
+
+  /**
+   * Runs the analysis with one finding for each fix, returning the replacement text of each fix
+   * that survived, or null for a finding whose fix was dropped.
+   */
+  private List<String> verifiedFixes(Fix... fixes) {
+    List<List<Fix>> findings = new ArrayList<>();
+    for (Fix fix : fixes) {
+      findings.add(ImmutableList.of(fix));
+    }
+    return verifiedFindings(findings);
+  }
+
+  private List<String> verifiedFindings(List<List<Fix>> findings) {
+    final List<String> result = new ArrayList<>();
+    RecompilingTopLevelAnalysis.create(new FixingAnalysis(findings))
+        .analyze(
+            compilationUnit,
+            context,
+            AnalysesConfig.create(ErrorProneOptions.empty()),
+            new DescriptionListener() {
+              @Override
+              public void onDescribed(Description description) {
+                if (description.getFixes().isEmpty()) {
+                  result.add(null);
+                  return;
+                }
+                for (Fix fix : description.getFixes()) {
+                  for (Replacement replacement :
+                      fix.getReplacements(compilationUnit.endPositions)) {
+                    result.add(replacement.replaceWith());
+                  }
+                }
+              }
+            });
+    return result;
+  }
+
+  @Test
+  public void compilingFixesVerifiedTogether() {
+    assertThat(
+            verifiedFixes(
+                replace("1", "10"), replace("2", "20"), replace("3", "30"), replace("4", "40")))
+        .containsExactly("10", "20", "30", "40")
+        .inOrder();
+    assertThat(input.reads).isEqualTo(1);
+  }
+
+  @Test
+  public void verifiesEachFixOfFailingBatch() {
+    assertThat(
+            verifiedFixes(
+                replace("1", "10"),
+                replace("2", "\"two\""),
+                replace("3", "30"),
+                replace("4", "\"four\"")))
+        .containsExactly("10", null, "30", null)
+        .inOrder();
+    // Once for the batch, and once for each of its fixes.
+    assertThat(input.reads).isEqualTo(5);
+  }
+
+  @Test
+  public void alternativeFixesVerifiedInSeparateBatches() {
+    // The alternatives don't overlap, but are never meant to be applied together, so the second
+    // one is verified in a batch of its own.
+    assertThat(
+            verifiedFindings(
+                ImmutableList.<List<Fix>>of(
+                    ImmutableList.of(replace("1", "10"), replace("2", "20")),
+                    ImmutableList.of(replace("3", "30")))))
+        .containsExactly("10", "20", "30")
+        .inOrder();
+    assertThat(input.reads).isEqualTo(2);
+  }
+
+  @Test
+  public void overlappingFixesVerifiedInSeparateBatches() {
+    // Alternative fixes for the same literal can't be applied together, so each is verified in a
+    // batch of its own.
+    assertThat(verifiedFixes(replace("1", "10"), replace("1", "11"), replace("2", "20")))
+        .containsExactly("10", "11", "20")
+        .inOrder();
+    assertThat(input.reads).isEqualTo(2);
+  }
+
+  @Test
+  public void overlappingFixThatDoesNotCompileIsDropped() {
+    assertThat(verifiedFixes(replace("1", "\"one\""), replace("1", "10"), replace("2", "20")))
+        .containsExactly(null, "10", "20")
+        .inOrder();
+  }
+}
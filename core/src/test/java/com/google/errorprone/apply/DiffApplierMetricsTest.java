@@ -0,0 +1,124 @@
+/*
+ * Copyright 2016 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.apply;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.FileNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link DiffApplierMetrics}.
+ */
+@RunWith(JUnit4.class)
+public class DiffApplierMetricsTest {
+
+  private static final FileSource IN_MEMORY_SOURCE =
+      new FileSource() {
+        @Override
+        public SourceFile readFile(String path) {
+          return new SourceFile(path, "class T {}");
+        }
+      };
+
+  @Rule public final TemporaryFolder tempDir = new TemporaryFolder();
+
+  private final ThreadPoolExecutor executor =
+      new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+
+  @After
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+  @Test
+  public void latencyBuckets() {
+    assertThat(DiffApplierMetrics.latencyBucket(TimeUnit.MICROSECONDS.toNanos(500))).isEqualTo(0);
+    assertThat(DiffApplierMetrics.latencyBucket(TimeUnit.MILLISECONDS.toNanos(1))).isEqualTo(1);
+    assertThat(DiffApplierMetrics.latencyBucket(TimeUnit.MILLISECONDS.toNanos(3))).isEqualTo(2);
+    assertThat(DiffApplierMetrics.latencyBucket(TimeUnit.MILLISECONDS.toNanos(4))).isEqualTo(3);
+    assertThat(DiffApplierMetrics.latencyBucket(Long.MAX_VALUE))
+        .isEqualTo(DiffApplierMetrics.LATENCY_BUCKETS - 1);
+  }
+
+  private DiffApplierMetrics metrics(FileSource source, FileDestination destination) {
+    return new DiffApplierMetrics(executor, new Semaphore(1), source, destination);
+  }
+
+  @Test
+  public void counts() {
+    DiffApplierMetrics metrics = metrics(IN_MEMORY_SOURCE, new DiscardingFileDestination());
+    metrics.recordRead(10);
+    metrics.recordApply(20);
+    metrics.recordWrite(30);
+    metrics.recordFlush(40);
+    metrics.recordCompleted(TimeUnit.MILLISECONDS.toNanos(3));
+    metrics.recordFailure(new FileNotFoundException());
+    metrics.recordFailure(new FileNotFoundException());
+
+    assertThat(metrics.filesCompleted()).isEqualTo(1);
+    assertThat(metrics.filesFailed()).isEqualTo(2);
+    assertThat(metrics.readTime(TimeUnit.NANOSECONDS)).isEqualTo(10);
+    assertThat(metrics.writeTime(TimeUnit.NANOSECONDS)).isEqualTo(30);
+    assertThat(metrics.flushTime(TimeUnit.NANOSECONDS)).isEqualTo(40);
+    assertThat(metrics.latencyHistogram().get(4L)).isEqualTo(1);
+    assertThat(metrics.failuresByType()).containsEntry("java.io.FileNotFoundException", 2L);
+  }
+
+  @Test
+  public void bytesAreCountedByFileSystemSourceAndDestination() throws Exception {
+    Path root = tempDir.getRoot().toPath();
+    Files.write(root.resolve("A.java"), "class A {}".getBytes(UTF_8));
+    FsFileSource source = new FsFileSource(root);
+    FsFileDestination destination = new FsFileDestination(root);
+    DiffApplierMetrics metrics = metrics(source, destination);
+    SourceFile file = source.readFile("A.java");
+    file.setSourceText(file.getSourceText() + " // \u00e9");
+    destination.writeFile(file);
+    assertThat(metrics.bytesRead()).isEqualTo(10);
+    assertThat(metrics.bytesWritten()).isEqualTo(16);
+
+    DiffApplierMetrics inMemory = metrics(IN_MEMORY_SOURCE, new DiscardingFileDestination());
+    assertThat(inMemory.bytesRead()).isEqualTo(0);
+    assertThat(inMemory.bytesWritten()).isEqualTo(0);
+  }
+
+  @Test
+  public void json() throws Exception {
+    DiffApplierMetrics metrics = metrics(IN_MEMORY_SOURCE, new DiscardingFileDestination());
+    metrics.recordCompleted(0);
+    metrics.recordFailure(new FileNotFoundException());
+    StringBuilder json = new StringBuilder();
+    metrics.writeJson(json);
+    assertThat(json.toString()).contains("\"filesCompleted\": 1,");
+    assertThat(json.toString()).contains("\"latencyHistogram\": {\"<1ms\": 1, \"<2ms\": 0,");
+    assertThat(json.toString())
+        .contains("\"failuresByType\": {\"java.io.FileNotFoundException\": 1}");
+  }
+}
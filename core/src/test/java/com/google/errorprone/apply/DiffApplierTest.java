@@ -0,0 +1,181 @@
+/*
+ * Copyright 2016 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.apply;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link DiffApplier}.
+ */
+@RunWith(JUnit4.class)
+public class DiffApplierTest {
+
+  private final Map<String, String> written = new ConcurrentHashMap<>();
+  private final AtomicInteger flushes = new AtomicInteger();
+
+  private final FileSource source =
+      new FileSource() {
+        @Override
+        public SourceFile readFile(String path) throws IOException {
+          return new SourceFile(path, "class " + path + " {}");
+        }
+      };
+
+  private final FileDestination destination =
+      new FileDestination() {
+        @Override
+        public void writeFile(SourceFile file) {
+          written.put(file.getPath(), file.getSourceText());
+        }
+
+        @Override
+        public void flush() {
+          flushes.incrementAndGet();
+        }
+      };
+
+  private static Diff diff(final String path, final boolean applicable) {
+    return new Diff() {
+      @Override
+      public String getRelevantFileName() {
+        return path;
+      }
+
+      @Override
+      public void applyDifferences(SourceFile sourceFile) throws DiffNotApplicableException {
+        if (!applicable) {
+          throw new DiffNotApplicableException("conflict in " + path);
+        }
+        sourceFile.setSourceText("final " + sourceFile.getSourceText());
+      }
+    };
+  }
+
+  @Test
+  public void failedDiffFailsItsFuture() throws Exception {
+    DiffApplier applier = new DiffApplier(1, source, destination);
+    applier.startAsync().awaitRunning();
+    Future<?> good = applier.put(diff("A", true));
+    Future<?> bad = applier.put(diff("B", false));
+    good.get();
+    try {
+      bad.get();
+      fail();
+    } catch (ExecutionException expected) {
+      assertThat(expected.getCause()).isInstanceOf(DiffNotApplicableException.class);
+    }
+    applier.stopAsync().awaitTerminated();
+    assertThat(written).isEqualTo(ImmutableMap.of("A", "final class A {}"));
+    assertThat(applier.getMetrics().filesFailed()).isEqualTo(1L);
+  }
+
+  @Test
+  public void secondDiffForFileIsIgnored() throws Exception {
+    DiffApplier applier = new DiffApplier(1, source, destination);
+    applier.startAsync().awaitRunning();
+    assertThat(applier.put(diff("A", true))).isNotNull();
+    assertThat(applier.put(diff("A", true))).isNull();
+    applier.stopAsync().awaitTerminated();
+  }
+
+  @Test(timeout = 10000)
+  public void putBlocksWhileTooManyDiffsAreQueued() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    FileSource blockingSource =
+        new FileSource() {
+          @Override
+          public SourceFile readFile(String path) throws IOException {
+            Uninterruptibles.awaitUninterruptibly(release);
+            return source.readFile(path);
+          }
+        };
+    final DiffApplier applier = new DiffApplier(1, blockingSource, destination);
+    applier.startAsync().awaitRunning();
+    for (int i = 0; i < DiffApplier.QUEUED_DIFFS_PER_WORKER; i++) {
+      applier.put(diff("A" + i, true));
+    }
+    Thread producer =
+        new Thread() {
+          @Override
+          public void run() {
+            applier.put(diff("B", true));
+          }
+        };
+    producer.start();
+    while (applier.getMetrics().blockedProducers() == 0) {
+      Thread.sleep(10);
+    }
+    assertThat(producer.isAlive()).isTrue();
+    release.countDown();
+    producer.join();
+    applier.stopAsync().awaitTerminated();
+    assertThat(written.size()).isEqualTo(DiffApplier.QUEUED_DIFFS_PER_WORKER + 1);
+    assertThat(written.get("B")).isEqualTo("final class B {}");
+  }
+
+  @Test
+  public void flushesPeriodically() throws Exception {
+    DiffApplier applier = new DiffApplier(1, source, destination);
+    applier.startAsync().awaitRunning();
+    Future<?> last = null;
+    for (int i = 0; i < DiffApplier.FLUSH_INTERVAL; i++) {
+      last = applier.put(diff("A" + i, true));
+    }
+    last.get();
+    assertThat(flushes.get()).isEqualTo(1);
+    applier.stopAsync().awaitTerminated();
+    assertThat(flushes.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void failedFlushFailsApplier() throws Exception {
+    FileDestination failingDestination =
+        new FileDestination() {
+          @Override
+          public void writeFile(SourceFile file) {}
+
+          @Override
+          public void flush() throws IOException {
+            throw new IOException("disk full");
+          }
+        };
+    DiffApplier applier = new DiffApplier(1, source, failingDestination);
+    applier.startAsync().awaitRunning();
+    applier.put(diff("A", true)).get();
+    applier.stopAsync();
+    try {
+      applier.awaitTerminated();
+      fail();
+    } catch (IllegalStateException expected) {
+      assertThat(applier.failureCause().getMessage()).isEqualTo("disk full");
+    }
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2016 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.apply;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.CharStreams;
+import com.google.errorprone.BugPattern.SeverityLevel;
+import com.google.errorprone.fixes.Fix;
+import com.google.errorprone.fixes.Replacement;
+import com.google.errorprone.fixes.SuggestedFix;
+import com.google.errorprone.matchers.Description;
+import com.google.errorprone.matchers.Finding;
+import com.google.testing.compile.JavaFileObjects;
+import com.sun.tools.javac.api.JavacTaskImpl;
+import com.sun.tools.javac.api.JavacTool;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import javax.tools.JavaFileObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link FixMerger}.
+ */
+@RunWith(JUnit4.class)
+public class FixMergerTest {
+
+  private static final String SOURCE = "class Test { int x = foo(1, 2); }\n";
+
+  private JCCompilationUnit compilationUnit;
+
+  @Before
+  public void parse() throws Exception {
+    JavacTool tool = JavacTool.create();
+    JavaFileObject input = JavaFileObjects.forSourceString("Test", SOURCE);
+    JavacTaskImpl task = (JavacTaskImpl) tool.getTask(
+        CharStreams.nullWriter(),
+        tool.getStandardFileManager(null, Locale.ENGLISH, UTF_8),
+        null,
+        ImmutableList.<String>of(),
+        null,
+        ImmutableList.of(input));
+    compilationUnit = (JCCompilationUnit) task.parse().iterator().next();
+  }
+
+  private Description finding(String checkName, Fix... fixes) {
+    Description.Builder builder =
+        Description.builder(compilationUnit, checkName, null, SeverityLevel.WARNING, "message");
+    for (Fix fix : fixes) {
+      builder.addFix(fix);
+    }
+    return builder.build();
+  }
+
+  private static Fix replace(String target, String replaceWith) {
+    int start = SOURCE.indexOf(target);
+    return SuggestedFix.builder().replace(start, start + target.length(), replaceWith).build();
+  }
+
+  private static List<String> checkNames(List<Finding> findings) {
+    List<String> result = new ArrayList<>();
+    for (Finding finding : findings) {
+      result.add(finding.checkName());
+    }
+    return result;
+  }
+
+  private String apply(FixMerger.Result result) throws Exception {
+    DescriptionBasedDiff diff = DescriptionBasedDiff.create(compilationUnit);
+    diff.handleFix(result.fix());
+    SourceFile file = new SourceFile("Test.java", SOURCE);
+    diff.applyDifferences(file);
+    return file.getSourceText();
+  }
+
+  @Test
+  public void trim() {
+    assertThat(FixMerger.trim(Replacement.create(21, 30, "foo(1, 3)"), SOURCE))
+        .isEqualTo(Replacement.create(28, 29, "3"));
+    assertThat(FixMerger.trim(Replacement.create(21, 30, "foo(1, 2)"), SOURCE)).isNull();
+    assertThat(FixMerger.trim(Replacement.create(21, 24, "foo()"), SOURCE))
+        .isEqualTo(Replacement.create(24, 24, "()"));
+  }
+
+  @Test
+  public void nestedEditsCompose() throws Exception {
+    FixMerger merger = FixMerger.create(compilationUnit, ImmutableList.<String>of());
+    merger.onDescribed(finding("Outer", replace("foo(1, 2)", "bar(1, 2)")));
+    merger.onDescribed(finding("Inner", replace("2", "3")));
+    FixMerger.Result result = merger.merge();
+    assertThat(result.dropped()).isEmpty();
+    assertThat(apply(result)).isEqualTo("class Test { int x = bar(1, 3); }\n");
+  }
+
+  @Test
+  public void conflictsDroppedByPriority() throws Exception {
+    FixMerger merger = FixMerger.create(compilationUnit, ImmutableList.of("Preferred"));
+    merger.onDescribed(finding("Other", replace("1", "one")));
+    merger.onDescribed(finding("Preferred", replace("1", "uno")));
+    FixMerger.Result result = merger.merge();
+    assertThat(checkNames(result.applied())).containsExactly("Preferred");
+    assertThat(checkNames(result.dropped())).containsExactly("Other");
+    assertThat(apply(result)).isEqualTo("class Test { int x = foo(uno, 2); }\n");
+  }
+
+  @Test
+  public void conflictsOfEqualPriorityDroppedByReportOrder() throws Exception {
+    FixMerger merger = FixMerger.create(compilationUnit, ImmutableList.<String>of());
+    merger.onDescribed(finding("Zebra", replace("1", "one")));
+    merger.onDescribed(finding("Apple", replace("1", "uno")));
+    FixMerger.Result result = merger.merge();
+    assertThat(checkNames(result.applied())).containsExactly("Zebra");
+    assertThat(checkNames(result.dropped())).containsExactly("Apple");
+    assertThat(apply(result)).isEqualTo("class Test { int x = foo(one, 2); }\n");
+  }
+
+  @Test
+  public void compatibleAlternativePreferred() throws Exception {
+    FixMerger merger = FixMerger.create(compilationUnit, ImmutableList.<String>of());
+    merger.onDescribed(finding("A", replace("1", "one")));
+    merger.onDescribed(finding("B", replace("1", "uno"), replace("x", "y")));
+    FixMerger.Result result = merger.merge();
+    assertThat(result.dropped()).isEmpty();
+    assertThat(apply(result)).isEqualTo("class Test { int y = foo(one, 2); }\n");
+  }
+
+  @Test
+  public void identicalReplacementsAppliedOnce() throws Exception {
+    FixMerger merger = FixMerger.create(compilationUnit, ImmutableList.<String>of());
+    merger.onDescribed(finding("A", replace("int", "long")));
+    merger.onDescribed(finding("B", replace("int", "long")));
+    FixMerger.Result result = merger.merge();
+    assertThat(result.dropped()).isEmpty();
+    assertThat(apply(result)).isEqualTo("class Test { long x = foo(1, 2); }\n");
+  }
+
+  @Test
+  public void conflictingImports() throws Exception {
+    FixMerger merger = FixMerger.create(compilationUnit, ImmutableList.<String>of());
+    merger.onDescribed(finding("A", SuggestedFix.builder().addImport("java.util.List").build()));
+    merger.onDescribed(
+        finding("B", SuggestedFix.builder().removeImport("java.util.List").build()));
+    FixMerger.Result result = merger.merge();
+    assertThat(checkNames(result.applied())).containsExactly("A");
+    assertThat(checkNames(result.dropped())).containsExactly("B");
+  }
+}
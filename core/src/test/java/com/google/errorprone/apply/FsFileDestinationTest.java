@@ -0,0 +1,106 @@
+/*
+ * Copyright 2016 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.apply;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.CharacterCodingException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link FsFileDestination}.
+ */
+@RunWith(JUnit4.class)
+public class FsFileDestinationTest {
+
+  @Rule public final TemporaryFolder tempDir = new TemporaryFolder();
+
+  private Path root;
+  private FsFileDestination destination;
+
+  @Before
+  public void setUp() {
+    root = tempDir.getRoot().toPath();
+    destination = new FsFileDestination(root);
+  }
+
+  private String read(String path) throws IOException {
+    return new String(Files.readAllBytes(root.resolve(path)), UTF_8);
+  }
+
+  @Test
+  public void changesOnlyVisibleAfterFlush() throws Exception {
+    Files.write(root.resolve("A.java"), "class A {}".getBytes(UTF_8));
+    destination.writeFile(new SourceFile("A.java", "final class A {}"));
+    assertThat(read("A.java")).isEqualTo("class A {}");
+    destination.flush();
+    assertThat(read("A.java")).isEqualTo("final class A {}");
+    assertThat(Arrays.asList(tempDir.getRoot().list())).containsExactly("A.java");
+  }
+
+  @Test
+  public void countsEncodedBytes() throws Exception {
+    // The e-acute takes two bytes in UTF-8.
+    destination.writeFile(new SourceFile("A.java", "class A { String s = \"\u00e9\"; }"));
+    assertThat(destination.bytesWritten()).isEqualTo(28);
+  }
+
+  @Test
+  public void failedFlushDeletesTemporaryFiles() throws Exception {
+    Files.write(root.resolve("A.java"), "class A {}".getBytes(UTF_8));
+    // A non-empty directory can't be replaced by a file, so the flush fails on B.java.
+    Files.createDirectories(root.resolve("B.java/sub"));
+    Files.write(root.resolve("C.java"), "class C {}".getBytes(UTF_8));
+    destination.writeFile(new SourceFile("A.java", "final class A {}"));
+    destination.writeFile(new SourceFile("B.java", "final class B {}"));
+    destination.writeFile(new SourceFile("C.java", "final class C {}"));
+    try {
+      destination.flush();
+      fail();
+    } catch (IOException expected) {
+    }
+    assertThat(read("A.java")).isEqualTo("final class A {}");
+    assertThat(read("C.java")).isEqualTo("class C {}");
+    assertThat(Arrays.asList(tempDir.getRoot().list()))
+        .containsExactly("A.java", "B.java", "C.java");
+  }
+
+  @Test
+  public void unencodableFileFailsToWrite() throws Exception {
+    Files.write(root.resolve("A.java"), "class A {}".getBytes(UTF_8));
+    try {
+      // An unpaired surrogate can't be encoded in UTF-8.
+      destination.writeFile(new SourceFile("A.java", "class A { char c = '\ud800'; }"));
+      fail();
+    } catch (CharacterCodingException expected) {
+    }
+    destination.flush();
+    assertThat(read("A.java")).isEqualTo("class A {}");
+    assertThat(Arrays.asList(tempDir.getRoot().list())).containsExactly("A.java");
+  }
+}
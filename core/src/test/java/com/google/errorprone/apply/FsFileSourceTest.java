@@ -0,0 +1,73 @@
+/*
+ * Copyright 2016 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.apply;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link FsFileSource}.
+ */
+@RunWith(JUnit4.class)
+public class FsFileSourceTest {
+
+  @Rule public final TemporaryFolder tempDir = new TemporaryFolder();
+
+  @Test
+  public void readsUtf8() throws Exception {
+    Path root = tempDir.getRoot().toPath();
+    Files.write(root.resolve("A.java"), "class A { String s = \"\u00e9\"; }".getBytes(UTF_8));
+    assertThat(new FsFileSource(root).readFile("A.java").getSourceText())
+        .isEqualTo("class A { String s = \"\u00e9\"; }");
+  }
+
+  @Test
+  public void countsBytesRead() throws Exception {
+    Path root = tempDir.getRoot().toPath();
+    Files.write(root.resolve("A.java"), "class A { String s = \"\u00e9\"; }".getBytes(UTF_8));
+    FsFileSource source = new FsFileSource(root);
+    source.readFile("A.java");
+    source.readFile("A.java");
+    // The e-acute takes two bytes in UTF-8.
+    assertThat(source.bytesRead()).isEqualTo(56);
+  }
+
+  @Test
+  public void malformedFileFailsToRead() throws Exception {
+    Path root = tempDir.getRoot().toPath();
+    // A Latin-1 encoded e-acute isn't valid UTF-8.
+    Files.write(
+        root.resolve("A.java"),
+        "class A { String s = \"\u00e9\"; }".getBytes(StandardCharsets.ISO_8859_1));
+    try {
+      new FsFileSource(root).readFile("A.java");
+      fail();
+    } catch (CharacterCodingException expected) {
+    }
+  }
+}
@@ -82,6 +82,27 @@ public class SourceFileTest {
         sourceFile.getLines().get(0));
   }
   
+  @Test
+  public void replaceChars_many() {
+    StringBuilder expected = new StringBuilder(SOURCE_TEXT);
+    for (int position = SOURCE_TEXT.length() - 4; position >= 0; position -= 7) {
+      sourceFile.replaceChars(position, position + 2, "\n");
+      expected.replace(position, position + 2, "\n");
+    }
+    assertEquals(expected.toString(), sourceFile.getSourceText());
+    assertEquals(expected.toString().split("\n", -1).length - 1, sourceFile.getLines().size());
+    assertEquals(expected.toString().substring(0, expected.indexOf("\n") + 1),
+        sourceFile.getFragmentByLines(1, 1));
+  }
+
+  @Test
+  public void replaceChars_afterGetLines() {
+    assertEquals(8, sourceFile.getLines().size());
+    sourceFile.replaceChars(0, 0, "// new first line\n");
+    assertEquals(9, sourceFile.getLines().size());
+    assertEquals("// new first line", sourceFile.getLines().get(0));
+  }
+
   @Test
   public void replaceLines() {
     sourceFile.replaceLines(Arrays.asList("Line1", "Line2"));
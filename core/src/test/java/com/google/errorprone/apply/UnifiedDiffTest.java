@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.apply;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.base.Joiner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link UnifiedDiff}.
+ */
+@RunWith(JUnit4.class)
+public class UnifiedDiffTest {
+
+  private static String lines(String... lines) {
+    return Joiner.on('\n').join(lines) + "\n";
+  }
+
+  @Test
+  public void identical() {
+    assertThat(UnifiedDiff.format("a/F", "b/F", lines("x", "y"), lines("x", "y"), 3)).isEmpty();
+  }
+
+  @Test
+  public void singleReplacement() {
+    String original = lines("1", "2", "3", "4", "5", "6", "7", "8", "9");
+    String revised = lines("1", "2", "3", "4", "five", "6", "7", "8", "9");
+    assertThat(UnifiedDiff.format("a/F", "b/F", original, revised, 3))
+        .isEqualTo(lines(
+            "--- a/F",
+            "+++ b/F",
+            "@@ -2,7 +2,7 @@",
+            " 2",
+            " 3",
+            " 4",
+            "-5",
+            "+five",
+            " 6",
+            " 7",
+            " 8"));
+  }
+
+  @Test
+  public void distantChangesInSeparateHunks() {
+    String original = lines("1", "2", "3", "4", "5", "6", "7", "8", "9", "10");
+    String revised = lines("2", "3", "4", "5", "6", "7", "8", "9", "10", "11");
+    assertThat(UnifiedDiff.format("a/F", "b/F", original, revised, 1))
+        .isEqualTo(lines(
+            "--- a/F",
+            "+++ b/F",
+            "@@ -1,2 +1 @@",
+            "-1",
+            " 2",
+            "@@ -10 +9,2 @@",
+            " 10",
+            "+11"));
+  }
+
+  @Test
+  public void insertionIntoEmptyFile() {
+    assertThat(UnifiedDiff.format("a/F", "b/F", "", lines("x"), 3))
+        .isEqualTo(lines("--- a/F", "+++ b/F", "@@ -0,0 +1 @@", "+x"));
+  }
+
+  @Test
+  public void missingNewlineAtEndOfFile() {
+    assertThat(UnifiedDiff.format("a/F", "b/F", lines("x"), "x", 3))
+        .isEqualTo(lines(
+            "--- a/F",
+            "+++ b/F",
+            "@@ -1 +1 @@",
+            "-x",
+            "+x",
+            "\\ No newline at end of file"));
+  }
+}
@@ -165,7 +165,7 @@ public class MissingFailTest {
 
   private Fix getOnlyFix(TestScanner scanner) {
     Description warning = Iterables.getOnlyElement(scanner.suggestedChanges);
-    return Iterables.getOnlyElement(warning.fixes);
+    return Iterables.getOnlyElement(warning.getFixes());
   }
 
   private static class TestScanner extends Scanner {
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.bugpatterns.threadsafety;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.errorprone.BugPattern.Category.JDK;
+import static com.google.errorprone.BugPattern.MaturityLevel.EXPERIMENTAL;
+import static com.google.errorprone.BugPattern.SeverityLevel.ERROR;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.errorprone.BugCheckerInfo;
+import com.google.errorprone.BugPattern;
+import com.google.errorprone.bugpatterns.BugChecker;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link StatelessCheckerVerifier}. */
+@RunWith(JUnit4.class)
+public class StatelessCheckerVerifierTest {
+
+  @BugPattern(name = "Stateless", summary = "", explanation = "", category = JDK, severity = ERROR,
+      maturity = EXPERIMENTAL)
+  public static class StatelessChecker extends BugChecker {
+    private static int count;
+    private final int limit = 10;
+    private final String prefix = "";
+    private final ImmutableMap<String, ImmutableList<Integer>> table = ImmutableMap.of();
+    private final Class<?> type = Object.class;
+  }
+
+  @BugPattern(name = "NonFinalField", summary = "", explanation = "", category = JDK,
+      severity = ERROR, maturity = EXPERIMENTAL)
+  public static class NonFinalFieldChecker extends BugChecker {
+    private int count;
+  }
+
+  @BugPattern(name = "MutableField", summary = "", explanation = "", category = JDK,
+      severity = ERROR, maturity = EXPERIMENTAL)
+  public static class MutableFieldChecker extends BugChecker {
+    private final List<String> seen = new ArrayList<>();
+  }
+
+  @BugPattern(name = "MutableElements", summary = "", explanation = "", category = JDK,
+      severity = ERROR, maturity = EXPERIMENTAL)
+  public static class MutableElementsChecker extends BugChecker {
+    private final ImmutableList<List<String>> seen = ImmutableList.of();
+  }
+
+  @BugPattern(name = "MutableSuperclass", summary = "", explanation = "", category = JDK,
+      severity = ERROR, maturity = EXPERIMENTAL)
+  public static class MutableSuperclassChecker extends NonFinalFieldChecker {}
+
+  @Test
+  public void stateless() {
+    assertThat(StatelessCheckerVerifier.violations(StatelessChecker.class)).isEmpty();
+    assertThat(BugCheckerInfo.create(StatelessChecker.class).isStateless()).isTrue();
+  }
+
+  @Test
+  public void nonFinalField() {
+    assertThat(StatelessCheckerVerifier.violations(NonFinalFieldChecker.class))
+        .containsExactly("'" + NonFinalFieldChecker.class.getName() + ".count' is not final");
+    assertThat(BugCheckerInfo.create(NonFinalFieldChecker.class).isStateless()).isFalse();
+  }
+
+  @Test
+  public void mutableField() {
+    assertThat(StatelessCheckerVerifier.isStateless(MutableFieldChecker.class)).isFalse();
+  }
+
+  @Test
+  public void mutableElements() {
+    assertThat(StatelessCheckerVerifier.isStateless(MutableElementsChecker.class)).isFalse();
+  }
+
+  @Test
+  public void mutableSuperclass() {
+    assertThat(StatelessCheckerVerifier.isStateless(MutableSuperclassChecker.class)).isFalse();
+  }
+}
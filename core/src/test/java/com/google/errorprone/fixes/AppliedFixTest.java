@@ -92,6 +92,22 @@ public class AppliedFixTest {
     assertThat(fix.getNewCodeSnippet().toString(), equalTo("int three3tres;"));
   }
 
+  @Test
+  public void shouldReportOnlyTheFirstLineOfAMultiLineReplacement() {
+    when(node.getStartPosition()).thenReturn(25);
+    when(node.getEndPosition(same(endPositions))).thenReturn(26);
+
+    AppliedFix.Applier applier = AppliedFix.fromSource(
+        "public class Foo {\n" +
+        "  int 3;\n" +
+        "}", endPositions);
+    AppliedFix fix = applier.apply(SuggestedFix.replace(node, "three;\n  int four"));
+    assertThat(fix.getNewCodeSnippet().toString(), equalTo("int three;"));
+    // the applier can be reused for further fixes to the same source
+    fix = applier.apply(SuggestedFix.replace(node, "tres"));
+    assertThat(fix.getNewCodeSnippet().toString(), equalTo("int tres;"));
+  }
+
   @Test(expected = IllegalStateException.class)
   public void shouldThrowExceptionOnEmptyFix() {
     AppliedFix.fromSource(
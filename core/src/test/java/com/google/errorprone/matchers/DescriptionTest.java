@@ -21,9 +21,18 @@ import static com.google.errorprone.BugPattern.LinkType.CUSTOM;
 import static com.google.errorprone.BugPattern.MaturityLevel.EXPERIMENTAL;
 import static com.google.errorprone.BugPattern.SeverityLevel.ERROR;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
+import com.google.common.base.Predicates;
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
 import com.google.errorprone.BugPattern;
+import com.google.errorprone.BugPattern.SeverityLevel;
 import com.google.errorprone.bugpatterns.BugChecker;
+import com.google.errorprone.fixes.Fix;
+import com.google.errorprone.fixes.SuggestedFix;
 import com.sun.source.tree.Tree;
 import com.sun.source.tree.TreeVisitor;
 import org.junit.Test;
@@ -106,4 +115,73 @@ public class DescriptionTest {
         "[CustomLinkChecker] custom message\n  (see https://www.google.com/)",
         description.getMessage());
   }
+
+  @Test
+  public void testLazyFixes() {
+    final Fix fix = SuggestedFix.builder().addImport("java.util.List").build();
+    final int[] computed = {0};
+    Description description =
+        BugChecker.buildDescriptionFromChecker(new MockTree(), new MyChecker())
+            .addLazyFix(new Supplier<Fix>() {
+              @Override
+              public Fix get() {
+                computed[0]++;
+                return fix;
+              }
+            })
+            .addLazyFix(new Supplier<Fix>() {
+              @Override
+              public Fix get() {
+                return null;
+              }
+            })
+            .build()
+            .applySeverityOverride(SeverityLevel.WARNING);
+    assertEquals(0, computed[0]);
+    Description filtered = description.filterFixes(Predicates.alwaysFalse());
+    assertEquals(0, computed[0]);
+
+    assertEquals(ImmutableList.of(fix), description.getFixes());
+    assertEquals(ImmutableList.of(fix), description.getFixes());
+    assertEquals(1, computed[0]);
+    assertTrue(filtered.getFixes().isEmpty());
+    assertFalse(description.getFixes().isEmpty());
+  }
+
+  @Test
+  @SuppressWarnings("deprecation") // testing the deprecated field
+  public void testDeprecatedFixesField() {
+    final Fix eager = SuggestedFix.builder().addImport("java.util.List").build();
+    final Fix lazy = SuggestedFix.builder().addImport("java.util.Map").build();
+    final int[] computed = {0};
+    Description description =
+        BugChecker.buildDescriptionFromChecker(new MockTree(), new MyChecker())
+            .addFix(eager)
+            .addLazyFix(new Supplier<Fix>() {
+              @Override
+              public Fix get() {
+                computed[0]++;
+                return lazy;
+              }
+            })
+            .build();
+    assertEquals(ImmutableList.of(eager), description.fixes);
+    assertEquals(0, computed[0]);
+    assertEquals(ImmutableList.of(eager, lazy), description.getFixes());
+    assertEquals(1, computed[0]);
+    assertEquals(
+        ImmutableList.of(eager), description.filterFixes(Predicates.alwaysTrue()).fixes);
+  }
+
+  @Test
+  @SuppressWarnings("deprecation") // testing the deprecated field
+  public void testEagerFixesShareList() {
+    Fix fix = SuggestedFix.builder().addImport("java.util.List").build();
+    Description description =
+        BugChecker.buildDescriptionFromChecker(new MockTree(), new MyChecker())
+            .addFix(fix)
+            .build();
+    assertEquals(ImmutableList.of(fix), description.fixes);
+    assertSame(description.fixes, description.getFixes());
+  }
 }
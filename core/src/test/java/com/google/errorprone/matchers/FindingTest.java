@@ -0,0 +1,78 @@
+/*
+ * Copyright 2016 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.matchers;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.CharStreams;
+import com.google.errorprone.BugPattern.SeverityLevel;
+import com.google.errorprone.fixes.PrecomputedFix;
+import com.google.errorprone.fixes.Replacement;
+import com.google.errorprone.fixes.SuggestedFix;
+import com.google.testing.compile.JavaFileObjects;
+import com.sun.tools.javac.api.JavacTaskImpl;
+import com.sun.tools.javac.api.JavacTool;
+import com.sun.tools.javac.tree.JCTree.JCClassDecl;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import java.util.Locale;
+import javax.tools.JavaFileObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link Finding}.
+ */
+@RunWith(JUnit4.class)
+public class FindingTest {
+
+  @Test
+  public void create() throws Exception {
+    String source = "/** Test. */ class Test {}\n";
+    JavacTool tool = JavacTool.create();
+    JavaFileObject input = JavaFileObjects.forSourceString("Test", source);
+    JavacTaskImpl task = (JavacTaskImpl) tool.getTask(
+        CharStreams.nullWriter(),
+        tool.getStandardFileManager(null, Locale.ENGLISH, UTF_8),
+        null,
+        ImmutableList.<String>of(),
+        null,
+        ImmutableList.of(input));
+    JCCompilationUnit compilationUnit = (JCCompilationUnit) task.parse().iterator().next();
+    JCClassDecl classDecl = (JCClassDecl) compilationUnit.getTypeDecls().get(0);
+
+    Description description =
+        Description.builder(classDecl, "Check", null, SeverityLevel.WARNING, "message")
+            .addFix(SuggestedFix.replace(classDecl, "interface Test {}"))
+            .build();
+    Finding finding = Finding.create(description, compilationUnit);
+
+    assertThat(finding.checkName()).isEqualTo("Check");
+    assertThat(finding.severity()).isEqualTo(SeverityLevel.WARNING);
+    assertThat(finding.message()).isEqualTo(description.getMessage());
+    assertThat(finding.startPosition()).isEqualTo(source.indexOf("class"));
+    assertThat(finding.endPosition()).isEqualTo(source.indexOf('\n'));
+    assertThat(finding.preferredPosition()).isEqualTo(classDecl.getPreferredPosition());
+    assertThat(finding.fixes()).hasSize(1);
+    assertThat(finding.fixes().get(0)).isInstanceOf(PrecomputedFix.class);
+    assertThat(finding.fixes().get(0).getReplacements(null))
+        .containsExactly(
+            Replacement.create(source.indexOf("class"), source.indexOf('\n'), "interface Test {}"));
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2016 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.errorprone.refaster;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.sun.source.tree.Tree.Kind;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link BlockIndex}.
+ */
+@RunWith(JUnit4.class)
+public class BlockIndexTest extends CompilerBasedTest {
+
+  private BlockIndex index;
+
+  @Before
+  public void setUp() {
+    compile(
+        "import java.util.List;",
+        "class BlockIndexTestInput {",
+        "  int example(List<String> list) {",
+        "    list.add(\"a\");", // 0
+        "    list.clear();", // 1
+        "    list.add(\"b\");", // 2
+        "    String s = list.get(0);", // 3
+        "    list.remove(s);", // 4
+        "    if (s == null) {}", // 5
+        "    return list.size();", // 6
+        "  }",
+        "}");
+    index = BlockIndex.create(getMethodDeclaration("example").getBody().getStatements());
+  }
+
+  private static UStatement invoke(String method, UExpression... arguments) {
+    return UExpressionStatement.create(invocation(method, arguments));
+  }
+
+  private static UExpression invocation(String method, UExpression... arguments) {
+    return UMethodInvocation.create(
+        UMemberSelect.create(
+            UFreeIdent.create("list"),
+            method,
+            UMethodType.create(UPrimitiveType.BOOLEAN, UClassType.create("java.lang.Object"))),
+        arguments);
+  }
+
+  private static BlockIndex.Shape shape(UStatement... statements) {
+    return BlockIndex.Shape.create(ImmutableList.copyOf(statements));
+  }
+
+  @Test
+  public void anchors() {
+    assertThat(BlockIndex.Anchor.forTemplateStatement(invoke("add", UFreeIdent.create("x"))))
+        .isEqualTo(BlockIndex.Anchor.create(Kind.EXPRESSION_STATEMENT, "add"));
+    assertThat(BlockIndex.Anchor.forTemplateStatement(UReturn.create(invocation("size"))))
+        .isEqualTo(BlockIndex.Anchor.create(Kind.RETURN, "size"));
+    assertThat(
+            BlockIndex.Anchor.forTemplateStatement(
+                UVariableDecl.create(
+                    "s", UClassIdent.create("java.lang.String"), invocation("get"))))
+        .isEqualTo(BlockIndex.Anchor.create(Kind.VARIABLE, "get"));
+    assertThat(BlockIndex.Anchor.forTemplateStatement(UReturn.create(ULiteral.intLit(0))))
+        .isEqualTo(BlockIndex.Anchor.create(Kind.RETURN, null));
+    assertThat(BlockIndex.Anchor.forTemplateStatement(UBlank.create()))
+        .isEqualTo(BlockIndex.Anchor.UNCONSTRAINED);
+  }
+
+  @Test
+  public void satisfies() {
+    BlockIndex.Anchor add = BlockIndex.Anchor.create(Kind.EXPRESSION_STATEMENT, "add");
+    assertThat(index.satisfies(0, add)).isTrue();
+    assertThat(index.satisfies(1, add)).isFalse();
+    assertThat(index.satisfies(3, add)).isFalse();
+    assertThat(index.satisfies(3, BlockIndex.Anchor.create(Kind.VARIABLE, "get"))).isTrue();
+    assertThat(index.satisfies(5, BlockIndex.Anchor.create(Kind.IF, null))).isTrue();
+    assertThat(index.satisfies(6, BlockIndex.Anchor.create(Kind.RETURN, "size"))).isTrue();
+    assertThat(index.satisfies(5, BlockIndex.Anchor.UNCONSTRAINED)).isTrue();
+  }
+
+  @Test
+  public void fixedLengthShape() {
+    BlockIndex.Shape shape = shape(invoke("add", UFreeIdent.create("x")), invoke("clear"));
+    assertThat(shape.minLength()).isEqualTo(2);
+    assertThat(shape.fixedLength()).isTrue();
+    // Only the first add is followed immediately by a clear.
+    assertThat(index.candidateStarts(0, shape)).containsExactly(0);
+    assertThat(index.candidateStarts(1, shape)).isEmpty();
+  }
+
+  @Test
+  public void variableLengthShape() {
+    BlockIndex.Shape shape =
+        shape(invoke("add", UFreeIdent.create("x")), UBlank.create(), invoke("remove"));
+    assertThat(shape.minLength()).isEqualTo(2);
+    assertThat(shape.fixedLength()).isFalse();
+    // Either add may begin a match, since a remove follows both.
+    assertThat(index.candidateStarts(0, shape)).containsExactly(0, 2).inOrder();
+    assertThat(index.candidateStarts(1, shape)).containsExactly(2);
+    assertThat(index.candidateStarts(3, shape)).isEmpty();
+  }
+
+  @Test
+  public void lastAnchorMustFollow() {
+    // No clear follows the second add.
+    BlockIndex.Shape shape =
+        shape(invoke("add", UFreeIdent.create("x")), UBlank.create(), invoke("clear"));
+    assertThat(index.candidateStarts(0, shape)).containsExactly(0);
+  }
+
+  @Test
+  public void unconstrainedShape() {
+    BlockIndex.Shape empty = shape();
+    assertThat(empty.minLength()).isEqualTo(0);
+    assertThat(index.candidateStarts(4, empty)).containsExactly(4, 5, 6).inOrder();
+
+    BlockIndex.Shape blank = shape(UBlank.create());
+    assertThat(blank.first()).isEqualTo(BlockIndex.Anchor.UNCONSTRAINED);
+    assertThat(index.candidateStarts(5, blank)).containsExactly(5, 6).inOrder();
+  }
+
+  @Test
+  public void tooLong() {
+    UStatement statement = invoke("add", UFreeIdent.create("x"));
+    BlockIndex.Shape shape =
+        shape(statement, statement, statement, statement, statement, statement, statement,
+            statement);
+    assertThat(index.candidateStarts(0, shape)).isEmpty();
+  }
+}
@@ -16,11 +16,13 @@ package com.google.errorprone.refaster;
 
 import static com.google.common.truth.Truth.assertThat;
 
+import com.google.common.base.Function;
 import com.google.common.base.Functions;
 import com.google.common.base.Optional;
 import com.google.common.base.Predicates;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -60,4 +62,23 @@ public class ChoiceTest {
     assertThat(Choice.of(2).or(Choice.from(ImmutableList.of(1, 3))).asIterable())
         .containsExactly(2, 1, 3).inOrder();
   }
+
+  @Test
+  public void testMemoize() {
+    final AtomicInteger evaluations = new AtomicInteger();
+    Choice<Integer> memoized = Choice.from(ImmutableList.of(1, 2, 3))
+        .transform(new Function<Integer, Integer>() {
+          @Override
+          public Integer apply(Integer i) {
+            evaluations.incrementAndGet();
+            return i * 10;
+          }
+        })
+        .memoize();
+    assertThat(memoized.first()).hasValue(10);
+    assertThat(evaluations.get()).isEqualTo(1);
+    assertThat(memoized.asIterable()).containsExactly(10, 20, 30).inOrder();
+    assertThat(memoized.asIterable()).containsExactly(10, 20, 30).inOrder();
+    assertThat(evaluations.get()).isEqualTo(3);
+  }
 }
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2016 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.refaster;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableList;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link RefasterDriver}.
+ */
+@RunWith(JUnit4.class)
+public class RefasterDriverTest {
+
+  @Rule public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Test
+  public void statistics() throws Exception {
+    Path base = tempFolder.getRoot().toPath();
+    Path rules = base.resolve("rules.analyzer");
+    try (OutputStream out = Files.newOutputStream(rules);
+        ObjectOutputStream objects = new ObjectOutputStream(out)) {
+      objects.writeObject(
+          RefasterRule.create(
+              "com.example.OneRule",
+              ImmutableList.of(ExpressionTemplate.create(ULiteral.intLit(1), UPrimitiveType.INT)),
+              ImmutableList.<Template<?>>of()));
+    }
+    Path sources = base.resolve("src");
+    Files.createDirectories(sources.resolve("test"));
+    Files.write(
+        sources.resolve("test/A.java"),
+        Arrays.asList("package test;", "class A {", "  int x = 1;", "}"),
+        UTF_8);
+    // B refers to A, which is in another batch.
+    Files.write(
+        sources.resolve("test/B.java"),
+        Arrays.asList("package test;", "class B {", "  A a;", "  int y = 1;", "}"),
+        UTF_8);
+    Path patch = base.resolve("refaster.patch");
+    Path statistics = base.resolve("statistics.txt");
+
+    int failed =
+        RefasterDriver.fromArgs(
+                new String[] {
+                  "--rules", rules.toString(),
+                  "--sources", sources.toString(),
+                  "--batch-size", "1",
+                  "--threads", "1",
+                  "--patch", patch.toString(),
+                  "--statistics", statistics.toString()
+                })
+            .run();
+
+    assertThat(failed).isEqualTo(0);
+    String diff = new String(Files.readAllBytes(patch), UTF_8);
+    assertThat(diff).contains("+  int x = /* match found */ 1;");
+    assertThat(diff).contains("+  int y = /* match found */ 1;");
+    String summary = new String(Files.readAllBytes(statistics), UTF_8);
+    assertThat(summary).contains("Refaster statistics for 1 rules");
+    assertThat(summary).contains("com.example.OneRule: ");
+    assertThat(summary).contains(", 2 matches");
+  }
+
+  @Test
+  public void resumeDiscardsEditsOfUnrecordedBatch() throws Exception {
+    Path base = tempFolder.getRoot().toPath();
+    Path rules = base.resolve("rules.analyzer");
+    try (OutputStream out = Files.newOutputStream(rules);
+        ObjectOutputStream objects = new ObjectOutputStream(out)) {
+      objects.writeObject(
+          RefasterRule.create(
+              "com.example.OneRule",
+              ImmutableList.of(ExpressionTemplate.create(ULiteral.intLit(1), UPrimitiveType.INT)),
+              ImmutableList.<Template<?>>of()));
+    }
+    Path sources = base.resolve("src");
+    Files.createDirectories(sources.resolve("test"));
+    Files.write(
+        sources.resolve("test/A.java"),
+        Arrays.asList("package test;", "class A {", "  int x = 1;", "}"),
+        UTF_8);
+    Files.write(
+        sources.resolve("test/B.java"),
+        Arrays.asList("package test;", "class B {", "  int y = 1;", "}"),
+        UTF_8);
+    Path patch = base.resolve("refaster.patch");
+    Path checkpoint = base.resolve("refaster.checkpoint");
+    String[] args = {
+      "--rules", rules.toString(),
+      "--sources", sources.toString(),
+      "--batch-size", "1",
+      "--threads", "1",
+      "--patch", patch.toString(),
+      "--checkpoint", checkpoint.toString()
+    };
+    assertThat(RefasterDriver.fromArgs(args).run()).isEqualTo(0);
+    String complete = new String(Files.readAllBytes(patch), UTF_8);
+
+    // Simulate a run that was interrupted after writing part of the last batch's edits, but
+    // before recording it.
+    List<String> recorded = Files.readAllLines(checkpoint, UTF_8);
+    Files.write(checkpoint, recorded.subList(0, 1), UTF_8);
+    Files.write(patch, "--- a/test/B.java".getBytes(UTF_8), StandardOpenOption.APPEND);
+
+    assertThat(RefasterDriver.fromArgs(args).run()).isEqualTo(0);
+    assertThat(new String(Files.readAllBytes(patch), UTF_8)).isEqualTo(complete);
+    assertThat(Files.readAllLines(checkpoint, UTF_8)).isEqualTo(recorded);
+  }
+}
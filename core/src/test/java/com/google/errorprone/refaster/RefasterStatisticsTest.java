@@ -0,0 +1,74 @@
+/*
+ * Copyright 2016 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.errorprone.refaster;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.sun.tools.javac.util.Context;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@code RefasterStatistics}.
+ */
+@RunWith(JUnit4.class)
+public class RefasterStatisticsTest {
+  private static RefasterRule<?, ?> rule(String name) {
+    ExpressionTemplate template =
+        ExpressionTemplate.create(ULiteral.intLit(1), UPrimitiveType.INT);
+    return RefasterRule.create(
+        name, ImmutableList.of(template, template), ImmutableList.<Template<?>>of());
+  }
+
+  @Test
+  public void disabledByDefault() {
+    assertThat(RefasterStatistics.instance(new Context())).isNull();
+  }
+
+  @Test
+  public void summary() throws Exception {
+    Context context = new Context();
+    RefasterStatistics statistics = RefasterStatistics.enable(context);
+    assertThat(RefasterStatistics.instance(context)).isSameAs(statistics);
+
+    RefasterRule<?, ?> matching = rule("com.example.Matching");
+    statistics.forRule(matching).templates().get(1).record(5, 1, TimeUnit.MILLISECONDS.toNanos(3));
+    statistics.forRule(rule("com.example.NeverMatching")).templates().get(0).record(2, 0, 0);
+
+    RefasterStatistics.RuleStatistics ruleStatistics = statistics.forRule(matching);
+    assertThat(ruleStatistics.matches()).isEqualTo(1);
+    assertThat(ruleStatistics.templates().get(1).candidates()).isEqualTo(1);
+    assertThat(ruleStatistics.templates().get(1).unificationSteps()).isEqualTo(5);
+
+    StringBuilder summary = new StringBuilder();
+    statistics.writeSummary(summary);
+    assertThat(summary.toString()).contains("com.example.Matching: 3 ms, 1 matches");
+    assertThat(summary.toString()).contains("com.example.NeverMatching: 0 ms, 0 matches (never");
+    assertThat(summary.toString().indexOf("com.example.Matching"))
+        .isLessThan(summary.toString().indexOf("com.example.NeverMatching"));
+  }
+
+  @Test
+  public void budget() {
+    RefasterStatistics statistics =
+        RefasterStatistics.enable(new Context(), 10, TimeUnit.MILLISECONDS);
+    assertThat(statistics.exceedsBudget(TimeUnit.MILLISECONDS.toNanos(5))).isFalse();
+    assertThat(statistics.exceedsBudget(TimeUnit.MILLISECONDS.toNanos(11))).isTrue();
+    assertThat(RefasterStatistics.enable(new Context()).exceedsBudget(Long.MAX_VALUE)).isFalse();
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2016 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.errorprone.refaster;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.common.collect.Iterables;
+import com.sun.source.tree.Tree.Kind;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for the memo table and search budget of {@code Unifier}.
+ */
+@RunWith(JUnit4.class)
+public class UnifierTest extends AbstractUTreeTest {
+  // template: anyOf(1, 1) + 3
+  private static UExpression backtrackingTemplate() {
+    return UBinary.create(
+        Kind.PLUS, UAnyOf.create(ULiteral.intLit(1), ULiteral.intLit(1)), ULiteral.intLit(3));
+  }
+
+  @Test
+  public void backtrackingHitsMemo() {
+    // Both alternatives of the anyOf match "1" without binding anything, so the right operand is
+    // retried against "2" with the same bindings after the first alternative fails.
+    assertFalse(
+        backtrackingTemplate().unify(parseExpression("1 + 2"), unifier).first().isPresent());
+    assertThat(unifier.memoHits()).isEqualTo(1);
+  }
+
+  @Test
+  public void replayedResultsStillMatch() {
+    // The second alternative's match of the right operand is replayed from the first one.
+    assertThat(
+            Iterables.size(
+                backtrackingTemplate().unify(parseExpression("1 + 3"), unifier).asIterable()))
+        .isEqualTo(2);
+    assertThat(unifier.memoHits()).isEqualTo(1);
+  }
+
+  @Test
+  public void tinyBudgetAbortsCleanly() {
+    Unifier.setSearchBudget(context, 2);
+    try {
+      backtrackingTemplate().unify(parseExpression("1 + 2"), new Unifier(context)).first();
+      fail("Expected the match attempt to exceed its search budget");
+    } catch (Unifier.SearchBudgetExceededException expected) {
+      assertThat(expected.getMessage()).contains("2 unification steps");
+    }
+    // The budget is per match attempt, so a new attempt in the same context starts afresh.
+    assertTrue(ULiteral.intLit(1).unify(parseExpression("1"), new Unifier(context))
+        .first().isPresent());
+  }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2016 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.errorprone.refaster.testdata;
+
+/**
+ * Test data for {@code AllowCodeBetweenLinesTemplate}.
+ */
+public class AllowCodeBetweenLinesTemplateExample {
+  public void adjacent(StringBuilder sb) {
+    sb.setLength(0);
+    sb.append("a");
+  }
+
+  public int between(StringBuilder sb) {
+    // The match starts at the second of the repeated first statements, since the first can't be
+    // followed by code that uses sb.
+    sb.setLength(0);
+    sb.setLength(0);
+    int unrelated = 1;
+    sb.append("b");
+    return unrelated;
+  }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2016 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.errorprone.refaster.testdata.template;
+
+import com.google.errorprone.refaster.annotation.AfterTemplate;
+import com.google.errorprone.refaster.annotation.AllowCodeBetweenLines;
+import com.google.errorprone.refaster.annotation.BeforeTemplate;
+
+/**
+ * Example of a multi-line template that allows unrelated code between its statements.
+ */
+@AllowCodeBetweenLines
+public class AllowCodeBetweenLinesTemplate {
+  @BeforeTemplate
+  public void clearAndAppend(StringBuilder sb, String str) {
+    sb.setLength(0);
+    sb.append(str);
+  }
+
+  @AfterTemplate
+  public void replace(StringBuilder sb, String str) {
+    sb.replace(0, sb.length(), str);
+  }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.util;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.CharStreams;
+import com.google.errorprone.util.ErrorProneTokens.CommentWithTextAndPosition;
+import com.google.testing.compile.JavaFileObjects;
+import com.sun.tools.javac.api.JavacTaskImpl;
+import com.sun.tools.javac.api.JavacTool;
+import com.sun.tools.javac.parser.Tokens.Comment;
+import com.sun.tools.javac.parser.Tokens.Token;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import com.sun.tools.javac.tree.TreeInfo;
+import com.sun.tools.javac.tree.TreeScanner;
+import com.sun.tools.javac.util.Context;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link CompilationUnitTokens}.
+ */
+@RunWith(JUnit4.class)
+public class CompilationUnitTokensTest {
+
+  private static final String SOURCE =
+      Joiner.on('\n')
+          .join(
+              "package p;",
+              "/** Javadoc. */",
+              "class Test {",
+              "  // leading",
+              "  int x = /* inline */ 1; // trailing",
+              "  /* before method */ void f(/* param */ int y) {",
+              "    f(y /* arg */);",
+              "    // last",
+              "  }",
+              "  int z = 2 /* after */;",
+              "}",
+              "// end");
+
+  private JCCompilationUnit compilationUnit;
+  private Context context;
+
+  @Before
+  public void parse() throws Exception {
+    JavacTool tool = JavacTool.create();
+    JavacTaskImpl task = (JavacTaskImpl) tool.getTask(
+        CharStreams.nullWriter(),
+        tool.getStandardFileManager(null, Locale.ENGLISH, UTF_8),
+        null,
+        ImmutableList.<String>of(),
+        null,
+        ImmutableList.of(JavaFileObjects.forSourceString("p.Test", SOURCE)));
+    compilationUnit = (JCCompilationUnit) task.parse().iterator().next();
+    context = task.getContext();
+  }
+
+  private static List<String> describe(List<ErrorProneToken> tokens) {
+    List<String> result = new ArrayList<>();
+    for (ErrorProneToken token : tokens) {
+      StringBuilder description = new StringBuilder();
+      description.append(token.kind().name()).append('@').append(token.pos()).append('-')
+          .append(token.endPos());
+      for (Comment comment : token.comments()) {
+        description.append(" [").append(comment.getText()).append('@')
+            .append(comment.getSourcePos(0)).append(' ').append(comment.getStyle()).append(']');
+      }
+      result.add(description.toString());
+    }
+    return result;
+  }
+
+  /** Returns the tokens of the range as {@code getTokensForNode} used to: by lexing its text. */
+  private List<String> relexed(int start, int end) {
+    return describe(ErrorProneTokens.getTokens(SOURCE.substring(start, end), context));
+  }
+
+  private List<String> indexed(int start, int end) {
+    return describe(CompilationUnitTokens.instance(context, compilationUnit).getTokens(start, end));
+  }
+
+  @Test
+  public void nodeTokensMatchRelexing() {
+    final List<JCTree> nodes = new ArrayList<>();
+    new TreeScanner() {
+      @Override
+      public void scan(JCTree tree) {
+        if (tree != null) {
+          nodes.add(tree);
+        }
+        super.scan(tree);
+      }
+    }.scan(compilationUnit);
+    int compared = 0;
+    for (JCTree node : nodes) {
+      int start = node.getStartPosition();
+      int end = TreeInfo.getEndPos(node, compilationUnit.endPositions);
+      if (start < 0 || end < start) {
+        continue;
+      }
+      assertThat(indexed(start, end)).named(node.toString()).isEqualTo(relexed(start, end));
+      compared++;
+    }
+    assertThat(compared).isGreaterThan(20);
+  }
+
+  @Test
+  public void commentsAtNodeBoundaries() {
+    // A comment just inside the start of a range is attached to its first token; one just before
+    // it is omitted, as is a comment after the last token in the range.
+    int start = SOURCE.indexOf("/* inline */");
+    int end = SOURCE.indexOf("; // trailing");
+    assertThat(indexed(start, end)).isEqualTo(relexed(start, end));
+    assertThat(indexed(start, end)).containsExactly("INTLITERAL@13-14 [/* inline */@0 BLOCK]");
+
+    start = SOURCE.indexOf("int x");
+    end = SOURCE.indexOf(" // trailing");
+    assertThat(indexed(start, end)).isEqualTo(relexed(start, end));
+    assertThat(indexed(start, end).toString()).doesNotContain("leading");
+    assertThat(indexed(start, end).toString()).doesNotContain("trailing");
+
+    start = SOURCE.indexOf("2 /* after */");
+    end = SOURCE.indexOf(";", start) + 1;
+    assertThat(indexed(start, end)).isEqualTo(relexed(start, end));
+    assertThat(indexed(start, end).get(1)).contains("/* after */@2");
+
+    start = SOURCE.indexOf("class Test");
+    end = SOURCE.length();
+    assertThat(indexed(start, end)).isEqualTo(relexed(start, end));
+  }
+
+  @Test
+  public void containsComments() {
+    CompilationUnitTokens tokens = CompilationUnitTokens.instance(context, compilationUnit);
+    int comment = SOURCE.indexOf("/* arg */");
+    assertThat(tokens.containsComments(comment, comment + 1)).isTrue();
+    assertThat(tokens.containsComments(comment - 1, comment)).isFalse();
+    assertThat(tokens.containsComments(comment + 1, SOURCE.indexOf("// last"))).isFalse();
+    assertThat(tokens.containsComments(0, SOURCE.length())).isTrue();
+  }
+
+  @Test
+  public void sharedThroughContext() {
+    assertThat(CompilationUnitTokens.instance(context, compilationUnit))
+        .isSameAs(CompilationUnitTokens.instance(context, compilationUnit));
+  }
+
+  @Test
+  public void commentRelativeTo() {
+    String source = "int x; /* c */ int y;";
+    CommentWithTextAndPosition comment = null;
+    for (Token token : ErrorProneTokens.lex(source, context)) {
+      if (token.comments != null) {
+        comment = (CommentWithTextAndPosition) token.comments.head;
+      }
+    }
+    int pos = source.indexOf("/* c */");
+    assertThat(comment.getPos()).isEqualTo(pos);
+
+    CommentWithTextAndPosition relative = comment.relativeTo(4);
+    assertThat(relative.getPos()).isEqualTo(pos - 4);
+    assertThat(relative.getEndPos()).isEqualTo(pos - 4 + "/* c */".length());
+    assertThat(relative.getSourcePos(0)).isEqualTo(pos - 4);
+    assertThat(relative.getText()).isEqualTo("/* c */");
+    assertThat(relative.getStyle()).isEqualTo(comment.getStyle());
+    // The positions match lexing the source text from the offset.
+    ErrorProneToken relexed = ErrorProneTokens.getTokens(source.substring(4), context).get(2);
+    assertThat(relexed.comments().get(0).getSourcePos(0)).isEqualTo(relative.getPos());
+  }
+}
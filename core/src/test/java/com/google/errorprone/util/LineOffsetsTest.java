@@ -0,0 +1,67 @@
+/*
+ * Copyright 2016 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.util;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link LineOffsets}.
+ */
+@RunWith(JUnit4.class)
+public class LineOffsetsTest {
+
+  @Test
+  public void mixedLineTerminators() {
+    LineOffsets lines = LineOffsets.create("ab\ncd\r\nef\rgh");
+    assertThat(lines.getLineCount()).isEqualTo(4);
+    assertThat(lines.getLineStart(2)).isEqualTo(3);
+    assertThat(lines.getLineEnd(2)).isEqualTo(5);
+    assertThat(lines.getLineStart(3)).isEqualTo(7);
+    assertThat(lines.getLineStart(4)).isEqualTo(10);
+    assertThat(lines.getLineEnd(4)).isEqualTo(12);
+  }
+
+  @Test
+  public void lineNumbers() {
+    LineOffsets lines = LineOffsets.create("ab\ncd\r\nef\n");
+    assertThat(lines.getLineNumber(0)).isEqualTo(1);
+    assertThat(lines.getLineNumber(2)).isEqualTo(1);
+    assertThat(lines.getLineNumber(3)).isEqualTo(2);
+    assertThat(lines.getLineNumber(6)).isEqualTo(2);
+    assertThat(lines.getLineNumber(7)).isEqualTo(3);
+    assertThat(lines.getLineNumber(10)).isEqualTo(4);
+  }
+
+  @Test
+  public void trailingLineTerminator() {
+    LineOffsets lines = LineOffsets.create("ab\n");
+    assertThat(lines.getLineCount()).isEqualTo(2);
+    assertThat(lines.getLineStart(2)).isEqualTo(3);
+    assertThat(lines.getLineEnd(2)).isEqualTo(3);
+  }
+
+  @Test
+  public void empty() {
+    LineOffsets lines = LineOffsets.create("");
+    assertThat(lines.getLineCount()).isEqualTo(1);
+    assertThat(lines.getLineNumber(0)).isEqualTo(1);
+  }
+}